@@ -0,0 +1,130 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epsilon.etl.EtlModule;
+import org.eclipse.epsilon.etl.dom.TransformationRule;
+import org.eclipse.epsilon.etl.trace.Transformation;
+import org.eclipse.epsilon.etl.trace.TransformationTrace;
+import org.eclipse.epsilon.labs.sigma.executors.etl.TransformationIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the {@link TransformationTrace} and the {@link TransformationIndex} that replaces it
+ * in the {@link org.eclipse.epsilon.labs.sigma.executors.etl.ParallelTransformationStrategy}:
+ * the time (and, with {@code -prof gc}, the allocation) to add the links of a transformation,
+ * and the time to look up the targets of every source, as {@code equivalent()} does. The rules are
+ * parsed, as the hash code of a rule is computed from its source parameter.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar TransformationIndexBenchmark -prof gc}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformationIndexBenchmark {
+
+	@Param({"10000", "100000", "1000000"})
+	private int links;
+
+	@Param({"4"})
+	private int rules;
+
+	private TransformationRule[] ruleArray;
+	private Object[] sources;
+	private List<List<Object>> targets;
+	private TransformationTrace trace;
+	private TransformationIndex index;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		StringBuilder code = new StringBuilder();
+		for (int i = 0; i < rules; i++) {
+			code.append("rule R").append(i).append(" transform s : In!A to t : Out!B {}\n");
+		}
+		EtlModule module = new EtlModule();
+		module.parse(code.toString());
+		ruleArray = module.getTransformationRules().toArray(new TransformationRule[0]);
+		sources = new Object[links];
+		targets = new ArrayList<>(links);
+		for (int i = 0; i < links; i++) {
+			sources[i] = new Object();
+			List<Object> t = new ArrayList<>(1);
+			t.add(new Object());
+			targets.add(t);
+		}
+		trace = buildTrace();
+		index = buildIndex();
+	}
+
+	@Benchmark
+	public TransformationTrace buildTrace() {
+		TransformationTrace result = new TransformationTrace();
+		for (int i = 0; i < links; i++) {
+			result.add(sources[i], targets.get(i), ruleArray[i % rules]);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public TransformationIndex buildIndex() {
+		TransformationIndex result = new TransformationIndex();
+		for (int i = 0; i < links; i++) {
+			result.add(ruleArray[i % rules], sources[i], targets.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Look up the targets as the strategy did before using the index.
+	 */
+	@Benchmark
+	public void lookupTrace(Blackhole bh) {
+		for (int i = 0; i < links; i++) {
+			TransformationRule rule = ruleArray[i % rules];
+			for (Transformation t : trace.getTransformations(sources[i])) {
+				if (t.getRule() == rule) {
+					bh.consume(t.getTargets());
+					break;
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public void lookupIndex(Blackhole bh) {
+		for (int i = 0; i < links; i++) {
+			Collection<Object> t = index.getTargets(ruleArray[i % rules], sources[i]);
+			bh.consume(t);
+		}
+	}
+
+}
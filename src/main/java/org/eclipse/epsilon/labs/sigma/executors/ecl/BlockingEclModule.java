@@ -0,0 +1,275 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.ecl;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.eclipse.epsilon.ecl.EclModule;
+import org.eclipse.epsilon.ecl.dom.MatchRule;
+import org.eclipse.epsilon.ecl.execute.context.IEclContext;
+import org.eclipse.epsilon.ecl.execute.context.concurrent.EclContextParallel;
+import org.eclipse.epsilon.ecl.trace.Match;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.concurrent.IEolContextParallel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The BlockingEclModule matches the models like the {@link EclModule}, but distributes the
+ * comparisons over the threads of a parallel context, and can restrict the comparisons of a
+ * rule to the pairs of elements that share a blocking key.
+ * <p>
+ * The blocking key of a rule is given with a {@code @blockingKey} annotation, with the name of
+ * the property used as key on both sides, or the names of the left and right properties
+ * separated by a comma:
+ * <pre>
+ * {@code
+ * @blockingKey name
+ * rule MatchClasses
+ *   match l : Left!Class
+ *   with r : Right!Class {
+ *   compare: l.name = r.name and l.isAbstract = r.isAbstract
+ * }
+ * }
+ * </pre>
+ * The left and right elements are partitioned by key, and only elements in the same partition
+ * are compared, so the number of comparisons is proportional to the size of the partitions
+ * instead of the product of the sizes of the models. Elements with a null key are compared with
+ * all the elements of the other side. Blocking is only correct if elements with different keys
+ * never match, i.e. if the compare block implies that the keys are equal.
+ * <p>
+ * If a {@link MatchResultCache} is set, the results of the comparisons are looked up in the
+ * cache before evaluating them, and the new results are added to it.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class BlockingEclModule extends EclModule {
+
+	/** The name of the annotation used to set the blocking key of a rule. */
+	public static final String BLOCKING_KEY_ANNOTATION = "blockingKey";
+
+	private static final Logger logger = LoggerFactory.getLogger(BlockingEclModule.class);
+
+	private MatchResultCache matchCache;
+	private String scriptHash;
+
+	/**
+	 * Instantiates a new blocking ECL module that compares the elements sequentially.
+	 */
+	public BlockingEclModule() {
+		super();
+	}
+
+	/**
+	 * Instantiates a new blocking ECL module that distributes the comparisons over the provided
+	 * number of threads.
+	 *
+	 * @param parallelism 			the parallelism to use
+	 */
+	public BlockingEclModule(int parallelism) {
+		super(new EclContextParallel(parallelism));
+	}
+
+	/**
+	 * Set the cache used to reuse the results of the comparisons.
+	 *
+	 * @param matchCache 			the match cache, null to disable caching
+	 * @param scriptHash 			the hash of the script, so results are not reused if the script
+	 * 								changes
+	 */
+	public void setMatchCache(MatchResultCache matchCache, String scriptHash) {
+		this.matchCache = matchCache;
+		this.scriptHash = scriptHash;
+	}
+
+	@Override
+	public void matchModels() throws EolRuntimeException {
+		matchRules(false);
+		matchRules(true);
+	}
+
+	/**
+	 * Match all the rules, as done by {@link EclModule#matchModels()}: first all rules with
+	 * elements of their exact types, then greedy rules with elements of their kinds.
+	 */
+	private void matchRules(boolean greedy) throws EolRuntimeException {
+		IEclContext context = getContext();
+		boolean ofTypeOnly = !greedy;
+		for (MatchRule rule : getMatchRules()) {
+			if (rule.isAbstract(context) || rule.isLazy(context) || (greedy && !rule.isGreedy(context))) {
+				continue;
+			}
+			Collection<?> lefts = rule.getLeftInstances(context, ofTypeOnly);
+			Collection<?> rights = rule.getRightInstances(context, ofTypeOnly);
+			String[] key = blockingKey(rule, context);
+			List<Map.Entry<Object, Collection<?>>> comparisons = new ArrayList<>(lefts.size());
+			if (key == null) {
+				for (Object left : lefts) {
+					comparisons.add(new SimpleImmutableEntry<>(left, rights));
+				}
+			}
+			else {
+				Map<Object, List<Object>> blocks = new HashMap<>();
+				List<Object> unkeyed = new ArrayList<>();
+				for (Object right : rights) {
+					Object value = keyValue(right, key[1], context);
+					if (value == null) {
+						unkeyed.add(right);
+					}
+					else {
+						blocks.computeIfAbsent(value, k -> new ArrayList<>()).add(right);
+					}
+				}
+				long count = 0;
+				for (Object left : lefts) {
+					Object value = keyValue(left, key[0], context);
+					Collection<?> candidates = value == null ? rights : withUnkeyed(blocks.get(value), unkeyed);
+					count += candidates.size();
+					comparisons.add(new SimpleImmutableEntry<>(left, candidates));
+				}
+				logger.debug("Rule {}: {} comparisons with blocking, {} without", rule.getName(), count,
+						(long) lefts.size() * rights.size());
+			}
+			compare(rule, comparisons, ofTypeOnly, cacheFor(rule, ofTypeOnly, rights), context);
+		}
+	}
+
+	/**
+	 * Get the cache of the rule's comparisons, with the fingerprints of the right elements.
+	 *
+	 * @return the cache, or null if the rule's results can not be cached
+	 */
+	private RuleCache cacheFor(MatchRule rule, boolean ofTypeOnly, Collection<?> rights) {
+		if (matchCache == null || scriptHash == null) {
+			return null;
+		}
+		String ruleHash = matchCache.ruleHash(scriptHash, rule, ofTypeOnly).orElse(null);
+		if (ruleHash == null) {
+			logger.debug("Rule {} has a do block, its results will not be cached.", rule.getName());
+			return null;
+		}
+		Map<Object, String> fingerprints = new IdentityHashMap<>();
+		for (Object right : rights) {
+			matchCache.fingerprint(right).ifPresent(f -> fingerprints.put(right, f));
+		}
+		return new RuleCache(matchCache, ruleHash, fingerprints);
+	}
+
+	/**
+	 * Compare each left element with its candidate right elements. If the context is parallel,
+	 * each left element is a job.
+	 */
+	private void compare(MatchRule rule, List<Map.Entry<Object, Collection<?>>> comparisons, boolean ofTypeOnly,
+		RuleCache cache, IEclContext context) throws EolRuntimeException {
+		if (context instanceof IEolContextParallel && ((IEolContextParallel) context).getParallelism() > 1) {
+			List<Callable<Void>> jobs = new ArrayList<>(comparisons.size());
+			for (Map.Entry<Object, Collection<?>> entry : comparisons) {
+				jobs.add(() -> {
+					matchAll(rule, entry.getKey(), entry.getValue(), ofTypeOnly, cache, context);
+					return null;
+				});
+			}
+			((IEolContextParallel) context).executeAll(this, jobs);
+		}
+		else {
+			for (Map.Entry<Object, Collection<?>> entry : comparisons) {
+				matchAll(rule, entry.getKey(), entry.getValue(), ofTypeOnly, cache, context);
+			}
+		}
+	}
+
+	private static void matchAll(MatchRule rule, Object left, Collection<?> rights, boolean ofTypeOnly,
+		RuleCache cache, IEclContext context) throws EolRuntimeException {
+		String leftFingerprint = cache == null ? null : cache.cache.fingerprint(left).orElse(null);
+		for (Object right : rights) {
+			String rightFingerprint = leftFingerprint == null ? null : cache.fingerprints.get(right);
+			if (rightFingerprint == null) {
+				rule.matchPair(context, ofTypeOnly, left, right);
+				continue;
+			}
+			MatchResultCache.Key key = cache.cache.key(cache.ruleHash, leftFingerprint, rightFingerprint);
+			byte cached = cache.cache.lookup(key);
+			if (cached >= 0) {
+				if (cached != MatchResultCache.NOT_APPLICABLE && context.getMatchTrace().getMatch(left, right) == null) {
+					context.getMatchTrace().add(new Match(left, right, cached == MatchResultCache.MATCHING, rule));
+				}
+				continue;
+			}
+			Match match = rule.matchPair(context, ofTypeOnly, left, right);
+			if (match == null) {
+				cache.cache.put(key, MatchResultCache.NOT_APPLICABLE);
+			}
+			else if (match.getRule() == rule) {
+				cache.cache.put(key, match.isMatching() ? MatchResultCache.MATCHING : MatchResultCache.NON_MATCHING);
+			}
+		}
+	}
+
+	/**
+	 * Get the left and right properties of the rule's blocking key.
+	 *
+	 * @return the property names, or null if the rule has no blocking key
+	 */
+	private static String[] blockingKey(MatchRule rule, IEclContext context) throws EolRuntimeException {
+		for (Object value : rule.getAnnotationsValues(BLOCKING_KEY_ANNOTATION, context)) {
+			if (value == null || value.toString().trim().isEmpty()) {
+				continue;
+			}
+			String[] names = value.toString().split(",");
+			String left = names[0].trim();
+			String right = names.length > 1 ? names[1].trim() : left;
+			return new String[] {left, right};
+		}
+		return null;
+	}
+
+	private static Object keyValue(Object element, String property, IEclContext context) throws EolRuntimeException {
+		return context.getIntrospectionManager()
+				.getPropertyGetterFor(element, property, context)
+				.invoke(element, property, context);
+	}
+
+	/**
+	 * The match cache and the data needed to look up the comparisons of a rule.
+	 */
+	private static final class RuleCache {
+		final MatchResultCache cache;
+		final String ruleHash;
+		final Map<Object, String> fingerprints;
+
+		RuleCache(MatchResultCache cache, String ruleHash, Map<Object, String> fingerprints) {
+			this.cache = cache;
+			this.ruleHash = ruleHash;
+			this.fingerprints = fingerprints;
+		}
+	}
+
+	private static Collection<?> withUnkeyed(List<Object> block, List<Object> unkeyed) {
+		if (block == null) {
+			return unkeyed;
+		}
+		if (unkeyed.isEmpty()) {
+			return block;
+		}
+		List<Object> candidates = new ArrayList<>(block.size() + unkeyed.size());
+		candidates.addAll(block);
+		candidates.addAll(unkeyed);
+		return Collections.unmodifiableList(candidates);
+	}
+
+}
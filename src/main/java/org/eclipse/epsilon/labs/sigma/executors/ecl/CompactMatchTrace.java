@@ -0,0 +1,577 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.ecl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.eclipse.epsilon.ecl.dom.MatchRule;
+import org.eclipse.epsilon.ecl.trace.Match;
+import org.eclipse.epsilon.ecl.trace.MatchTrace;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+import org.eclipse.epsilon.eol.models.ModelRepository;
+import org.eclipse.epsilon.eol.types.EolMap;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+import org.eclipse.epsilon.labs.sigma.executors.util.IdentityIntMap;
+
+/**
+ * A {@link MatchTrace} that stores the matches in columns (arrays of left elements, right
+ * elements, rules and states) instead of one {@link Match} object per comparison. Match
+ * objects are created when the trace is queried or iterated.
+ * <p>
+ * Optionally, only positive matches are kept. Non matching pairs are then compared again if
+ * they are matched a second time (e.g. by a greedy rule, or with the {@code matches()}
+ * operation), as the trace has no record of them.
+ * <p>
+ * Optionally, the matches are spilled to a memory mapped file once the number of matches in
+ * memory reaches a threshold. Spilled matches keep references (model name and element id, see
+ * {@link ElementRef}) instead of the elements, which are resolved again when the matches are
+ * queried or iterated, so iteration is transparent as long as the models assign ids to their
+ * elements. Matches of elements without an id are kept in memory, apart from the matches that
+ * are still to be spilled, so they are not written again by later spills. The match info is kept for
+ * matches in memory if it is not empty when the match is recorded; it is not kept for spilled
+ * matches.
+ * <p>
+ * The trace is thread safe for recording and queries. It must be closed, to delete the spill
+ * file, once it is no longer used.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class CompactMatchTrace extends MatchTrace implements Closeable {
+
+	/** Value of the spill threshold to never spill the trace. */
+	public static final int UNLIMITED = -1;
+
+	private final ModelRepository repository;
+	private final boolean positiveOnly;
+	private final int spillThreshold;
+	private final Path spillDirectory;
+
+	private final List<MatchRule> rules = new ArrayList<>();
+	private final IdentityIntMap ruleIds = new IdentityIntMap();
+
+	/** The matches that have not been spilled yet. */
+	private final Columns recent;
+	/** The matches that can not be spilled. */
+	private final Columns pinned;
+	private final Columns[] inMemory;
+
+	private MatchSpill spill;
+	private long spilledLive;
+
+	/**
+	 * Instantiates a new compact match trace.
+	 *
+	 * @param repository 			the model repository, used to reference and resolve spilled elements
+	 * @param positiveOnly 			if true, only matching pairs are kept
+	 * @param spillThreshold 		the number of matches in memory after which they are spilled
+	 * 								to disk, {@link #UNLIMITED} to never spill
+	 * @param spillDirectory 		the directory for the spill file, null for the default
+	 * 								temporary directory
+	 */
+	public CompactMatchTrace(ModelRepository repository, boolean positiveOnly, int spillThreshold,
+		Path spillDirectory) {
+		super(true);
+		if (spillThreshold < UNLIMITED || spillThreshold == 0) {
+			throw new IllegalArgumentException("The spill threshold must be positive, or UNLIMITED.");
+		}
+		this.repository = repository;
+		this.positiveOnly = positiveOnly;
+		this.spillThreshold = spillThreshold;
+		this.spillDirectory = spillDirectory;
+		recent = new Columns(spillThreshold == UNLIMITED ? 1024 : Math.min(spillThreshold, 1024));
+		pinned = new Columns(16);
+		inMemory = new Columns[] {pinned, recent};
+	}
+
+	@Override
+	public synchronized boolean add(Match match) {
+		if (positiveOnly && !match.isMatching()) {
+			return false;
+		}
+		recent.add(match.getLeft(), match.getRight(), ruleId(match.getRule()),
+				match.isMatching() ? MatchSpill.MATCHING : MatchSpill.NON_MATCHING, match.getInfo());
+		if (spillThreshold != UNLIMITED && recent.count >= spillThreshold) {
+			spill();
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized Match getMatch(Object left, Object right) {
+		for (Columns c : inMemory) {
+			for (int i = c.leftHeads.get(left); i >= 0; i = c.nextByLeft[i]) {
+				if (c.states[i] != MatchSpill.REMOVED && c.rights[i] == right) {
+					return c.match(i);
+				}
+			}
+		}
+		for (MatchSpill.Record r : spilled(left, right)) {
+			if (r.state != MatchSpill.REMOVED) {
+				return match(r, left, right);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized Collection<Match> getMatches(Object element) {
+		List<Match> result = new ArrayList<>();
+		for (Columns c : inMemory) {
+			for (int i = c.leftHeads.get(element); i >= 0; i = c.nextByLeft[i]) {
+				if (c.states[i] != MatchSpill.REMOVED) {
+					result.add(c.match(i));
+				}
+			}
+			for (int i = c.rightHeads.get(element); i >= 0; i = c.nextByRight[i]) {
+				if (c.states[i] != MatchSpill.REMOVED && c.lefts[i] != element) {
+					result.add(c.match(i));
+				}
+			}
+		}
+		for (MatchSpill.Record r : spilled(element, true)) {
+			if (r.state != MatchSpill.REMOVED) {
+				result.add(match(r, element, resolve(r.right)));
+			}
+		}
+		for (MatchSpill.Record r : spilled(element, false)) {
+			if (r.state != MatchSpill.REMOVED && !r.right.equals(r.left)) {
+				result.add(match(r, resolve(r.left), element));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized Match getMatch(Object element) {
+		for (Match m : getMatches(element)) {
+			if (m.isMatching()) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized Match getMatch(Object left, MatchRule rule) {
+		int ruleId = ruleIds.get(rule);
+		if (ruleId < 0) {
+			return null;
+		}
+		for (Columns c : inMemory) {
+			for (int i = c.leftHeads.get(left); i >= 0; i = c.nextByLeft[i]) {
+				if (c.states[i] == MatchSpill.MATCHING && c.ruleOf[i] == ruleId) {
+					return c.match(i);
+				}
+			}
+		}
+		for (MatchSpill.Record r : spilled(left, true)) {
+			if (r.state == MatchSpill.MATCHING && r.rule == ruleId) {
+				return match(r, left, resolve(r.right));
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized boolean hasBeenMatched(Object element) {
+		return !getMatches(element).isEmpty();
+	}
+
+	@Override
+	public synchronized boolean remove(Object o) {
+		if (!(o instanceof Match)) {
+			return false;
+		}
+		Match match = (Match) o;
+		int ruleId = ruleIds.get(match.getRule());
+		for (Columns c : inMemory) {
+			for (int i = c.leftHeads.get(match.getLeft()); i >= 0; i = c.nextByLeft[i]) {
+				if (c.states[i] != MatchSpill.REMOVED && c.rights[i] == match.getRight() && c.ruleOf[i] == ruleId) {
+					c.remove(i);
+					return true;
+				}
+			}
+		}
+		for (MatchSpill.Record r : spilled(match.getLeft(), match.getRight())) {
+			if (r.state != MatchSpill.REMOVED && r.rule == ruleId) {
+				spill.setState(r.offset, MatchSpill.REMOVED);
+				spilledLive--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Match)) {
+			return false;
+		}
+		Match match = (Match) o;
+		Match found = getMatch(match.getLeft(), match.getRight());
+		return found != null && found.getRule() == match.getRule() && found.isMatching() == match.isMatching();
+	}
+
+	@Override
+	public MatchTrace getReduced() {
+		MatchTrace reduced = new MatchTrace();
+		for (Match m : this) {
+			if (m.isMatching()) {
+				reduced.add(m);
+			}
+		}
+		return reduced;
+	}
+
+	@Override
+	public Collection<Match> getMatches() {
+		return this;
+	}
+
+	@Override
+	public synchronized int size() {
+		return (int) Math.min(Integer.MAX_VALUE, pinned.live + recent.live + spilledLive);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Iterate over the matches: first the spilled matches, in the order they were recorded, then
+	 * the matches that can not be spilled and then the other matches in memory. Matches must not
+	 * be recorded while iterating.
+	 */
+	@Override
+	public Iterator<Match> iterator() {
+		Iterator<MatchSpill.Record> spilled = spill == null ? null : spill.iterator();
+		int[] ends = {pinned.count, recent.count};
+		return new Iterator<Match>() {
+
+			private int columns = 0;
+			private int index = 0;
+			private Match next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && spilled != null && spilled.hasNext()) {
+					MatchSpill.Record r = spilled.next();
+					if (r.state != MatchSpill.REMOVED) {
+						next = match(r, resolve(r.left), resolve(r.right));
+					}
+				}
+				while (next == null && columns < ends.length) {
+					if (index == ends[columns]) {
+						columns++;
+						index = 0;
+						continue;
+					}
+					Columns c = inMemory[columns];
+					int i = index++;
+					if (c.states[i] != MatchSpill.REMOVED) {
+						next = c.match(i);
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public Match next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Match result = next;
+				next = null;
+				return result;
+			}
+		};
+	}
+
+	@Override
+	public Stream<Match> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	@Override
+	public Stream<Match> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+	@Override
+	public Object[] toArray() {
+		List<Match> matches = new ArrayList<>(size());
+		forEach(matches::add);
+		return matches.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		List<Match> matches = new ArrayList<>(size());
+		forEach(matches::add);
+		return matches.toArray(a);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		return c.stream().allMatch(this::contains);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Match> c) {
+		boolean changed = false;
+		for (Match m : c) {
+			changed |= add(m);
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		boolean changed = false;
+		for (Object o : c) {
+			changed |= remove(o);
+		}
+		return changed;
+	}
+
+	@Override
+	public synchronized boolean retainAll(Collection<?> c) {
+		List<Match> removed = new ArrayList<>();
+		for (Match m : this) {
+			if (!c.contains(m)) {
+				removed.add(m);
+			}
+		}
+		return removeAll(removed);
+	}
+
+	@Override
+	public synchronized void clear() {
+		closeSpill();
+		pinned.clear();
+		recent.clear();
+	}
+
+	/**
+	 * The number of matches that have been spilled to disk.
+	 *
+	 * @return the number of spilled matches
+	 */
+	public synchronized long getSpilled() {
+		return spill == null ? 0 : spill.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (spill != null) {
+			spill.close();
+			spill = null;
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return this == obj;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	@Override
+	public String toString(IEolContext context) {
+		return toString();
+	}
+
+	@Override
+	public String toString() {
+		return "CompactMatchTrace [size=" + size() + ", spilled=" + getSpilled() + "]";
+	}
+
+	/**
+	 * Write the matches that have not been spilled yet to the spill file. Matches of elements
+	 * that can not be referenced are moved to the pinned matches.
+	 */
+	private void spill() {
+		try {
+			if (spill == null) {
+				spill = new MatchSpill(spillDirectory);
+			}
+			Columns c = recent;
+			for (int i = 0; i < c.count; i++) {
+				if (c.states[i] == MatchSpill.REMOVED) {
+					continue;
+				}
+				Optional<ElementRef> left = ElementRef.of(c.lefts[i], repository);
+				Optional<ElementRef> right = ElementRef.of(c.rights[i], repository);
+				if (left.isPresent() && right.isPresent()) {
+					spill.append(c.ruleOf[i], c.states[i], left.get(), right.get());
+					spilledLive++;
+				}
+				else {
+					pinned.add(c.lefts[i], c.rights[i], c.ruleOf[i], c.states[i], c.infos.get(i));
+				}
+			}
+			c.clear();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private List<MatchSpill.Record> spilled(Object element, boolean asLeft) {
+		if (spill == null) {
+			return Collections.emptyList();
+		}
+		Optional<ElementRef> ref = ElementRef.of(element, repository);
+		return ref.isPresent() ? spill.find(ref.get(), asLeft) : Collections.emptyList();
+	}
+
+	private List<MatchSpill.Record> spilled(Object left, Object right) {
+		if (spill == null) {
+			return Collections.emptyList();
+		}
+		Optional<ElementRef> leftRef = ElementRef.of(left, repository);
+		Optional<ElementRef> rightRef = ElementRef.of(right, repository);
+		return leftRef.isPresent() && rightRef.isPresent() ? spill.find(leftRef.get(), rightRef.get())
+				: Collections.emptyList();
+	}
+
+	private Object resolve(ElementRef ref) {
+		return ref.resolve(repository).orElse(null);
+	}
+
+	private Match match(MatchSpill.Record r, Object left, Object right) {
+		return new Match(left, right, r.state == MatchSpill.MATCHING, rules.get(r.rule));
+	}
+
+	private int ruleId(MatchRule rule) {
+		int id = ruleIds.get(rule);
+		if (id < 0) {
+			id = rules.size();
+			rules.add(rule);
+			ruleIds.put(rule, id);
+		}
+		return id;
+	}
+
+	private void closeSpill() {
+		if (spill != null) {
+			try {
+				spill.close();
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			spill = null;
+		}
+		spilledLive = 0;
+	}
+
+	/**
+	 * Matches kept in memory, in columns. The matches of an element are chained through the
+	 * {@code nextByLeft}/{@code nextByRight} indexes, most recent first.
+	 */
+	private final class Columns {
+
+		private final int capacity;
+
+		Object[] lefts;
+		Object[] rights;
+		int[] ruleOf;
+		byte[] states;
+		int[] nextByLeft;
+		int[] nextByRight;
+		IdentityIntMap leftHeads;
+		IdentityIntMap rightHeads;
+		Map<Integer, EolMap<?, ?>> infos;
+		int count;
+		int live;
+
+		Columns(int capacity) {
+			this.capacity = capacity;
+			clear();
+		}
+
+		void add(Object left, Object right, int rule, byte state, EolMap<?, ?> info) {
+			if (count == lefts.length) {
+				grow();
+			}
+			int i = count++;
+			lefts[i] = left;
+			rights[i] = right;
+			ruleOf[i] = rule;
+			states[i] = state;
+			nextByLeft[i] = leftHeads.put(left, i);
+			nextByRight[i] = rightHeads.put(right, i);
+			if (info != null && !info.isEmpty()) {
+				infos.put(i, info);
+			}
+			live++;
+		}
+
+		void remove(int i) {
+			states[i] = MatchSpill.REMOVED;
+			infos.remove(i);
+			live--;
+		}
+
+		Match match(int i) {
+			Match match = new Match(lefts[i], rights[i], states[i] == MatchSpill.MATCHING, rules.get(ruleOf[i]));
+			EolMap<?, ?> info = infos.get(i);
+			if (info != null) {
+				match.setInfo(info);
+			}
+			return match;
+		}
+
+		void clear() {
+			lefts = new Object[capacity];
+			rights = new Object[capacity];
+			ruleOf = new int[capacity];
+			states = new byte[capacity];
+			nextByLeft = new int[capacity];
+			nextByRight = new int[capacity];
+			leftHeads = new IdentityIntMap(capacity);
+			rightHeads = new IdentityIntMap(capacity);
+			infos = new HashMap<>();
+			count = 0;
+			live = 0;
+		}
+
+		private void grow() {
+			int newCapacity = lefts.length * 2;
+			lefts = Arrays.copyOf(lefts, newCapacity);
+			rights = Arrays.copyOf(rights, newCapacity);
+			ruleOf = Arrays.copyOf(ruleOf, newCapacity);
+			states = Arrays.copyOf(states, newCapacity);
+			nextByLeft = Arrays.copyOf(nextByLeft, newCapacity);
+			nextByRight = Arrays.copyOf(nextByRight, newCapacity);
+		}
+	}
+
+}
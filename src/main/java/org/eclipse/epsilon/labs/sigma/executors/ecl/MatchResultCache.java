@@ -0,0 +1,282 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.ecl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.epsilon.common.module.ModuleElement;
+import org.eclipse.epsilon.ecl.dom.MatchRule;
+import org.eclipse.epsilon.eol.dom.ExecutableBlock;
+import org.eclipse.epsilon.erl.dom.ExtensibleNamedRule;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementFingerprinter;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The MatchResultCache allows the {@link BlockingEclModule} to reuse the results of the
+ * comparisons of previous executions. Results are keyed by the hash of the script, the rule
+ * (and whether it is applied to elements of its exact types or of its kinds) and the fingerprints of the left and right elements (see {@link ElementFingerprinter}),
+ * so a pair is only compared again if the script or one of the elements changed.
+ * <p>
+ * For a cached pair the guard and compare blocks are not executed: if the rule applied to the
+ * pair, a match with the cached result is added to the match trace, without match info. As a
+ * result:
+ * <ul>
+ * <li>Rules with a {@code do} block (or with a super rule with a {@code do} block) are never
+ * cached.</li>
+ * <li>The fingerprints must cover everything the guard and compare blocks read, e.g. if a rule
+ * compares the names of the elements' containers, or uses {@code matches()}, the fingerprint
+ * must include the container names, or the ids of the elements involved.</li>
+ * </ul>
+ * The cache is loaded from its file when created, and {@link #save()} writes the results used by
+ * the last execution (cached or computed), so results of pairs that are no longer compared are
+ * discarded. A cache file that can not be read is ignored. Lookups and updates are thread safe.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class MatchResultCache implements Closeable {
+
+	static final byte NOT_APPLICABLE = 0;
+	static final byte NON_MATCHING = 1;
+	static final byte MATCHING = 2;
+
+	/** The magic number of the cache file, "ECLC". */
+	private static final int MAGIC = 0x45434C43;
+	private static final int FORMAT_VERSION = 1;
+	private static final byte ABSENT = -1;
+
+	private static final Logger logger = LoggerFactory.getLogger(MatchResultCache.class);
+
+	private final Path file;
+	private final ElementFingerprinter fingerprinter;
+	private final Map<Key, Byte> previous = new HashMap<>();
+	private final Map<Key, Byte> current = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile boolean dirty;
+
+	/**
+	 * The key of a comparison: the first 128 bits of the hash of the rule and the element
+	 * fingerprints.
+	 */
+	static final class Key {
+		private final long high;
+		private final long low;
+
+		Key(long high, long low) {
+			this.high = high;
+			this.low = low;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(high ^ low);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return high == other.high && low == other.low;
+		}
+	}
+
+	/**
+	 * Instantiates a new match result cache, loading the results stored in the file, if it
+	 * exists.
+	 *
+	 * @param file 					the cache file
+	 * @param fingerprinter 		the fingerprinter used for the left and right elements
+	 */
+	public MatchResultCache(Path file, ElementFingerprinter fingerprinter) {
+		this.file = file;
+		this.fingerprinter = fingerprinter;
+		if (Files.exists(file)) {
+			try {
+				load();
+			}
+			catch (IOException e) {
+				logger.warn("Unable to read the match cache {}, it will be ignored.", file, e);
+				previous.clear();
+			}
+		}
+	}
+
+	/**
+	 * The number of comparisons whose result was found in the cache since the cache was created.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of comparisons that had to be evaluated since the cache was created.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Write the results used since the cache was created (or last saved) to the cache file. Does
+	 * nothing if no result has been used since the last save, so the file is not overwritten with
+	 * an empty cache.
+	 *
+	 * @throws IOException if the file can not be written
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			Map<Key, Byte> results = new HashMap<>(current);
+			out.writeLong(results.size());
+			for (Map.Entry<Key, Byte> e : results.entrySet()) {
+				out.writeLong(e.getKey().high);
+				out.writeLong(e.getKey().low);
+				out.writeByte(e.getValue());
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		previous.clear();
+		previous.putAll(current);
+		current.clear();
+		logger.info("Match cache saved: {} hits, {} misses.", hits.get(), misses.get());
+	}
+
+	/**
+	 * Save the results, unless they have already been saved.
+	 */
+	@Override
+	public void close() throws IOException {
+		save();
+	}
+
+	/**
+	 * Compute the hash of a rule.
+	 *
+	 * @param scriptHash 			the hash of the script
+	 * @param rule 					the rule
+	 * @param ofTypeOnly 			if the rule is applied to elements of its exact types only
+	 * @return the hash, or an empty Optional if the results of the rule can not be cached
+	 */
+	Optional<String> ruleHash(String scriptHash, MatchRule rule, boolean ofTypeOnly) {
+		if (hasDoBlock(rule)) {
+			return Optional.empty();
+		}
+		MessageDigest digest = HashUtil.newDigest();
+		HashUtil.update(digest, scriptHash);
+		HashUtil.update(digest, rule.getName());
+		HashUtil.update(digest, String.valueOf(ofTypeOnly));
+		return Optional.of(HashUtil.toHex(digest.digest()));
+	}
+
+	Optional<String> fingerprint(Object element) {
+		return fingerprinter.fingerprint(element);
+	}
+
+	Key key(String ruleHash, String leftFingerprint, String rightFingerprint) {
+		MessageDigest digest = HashUtil.newDigest();
+		HashUtil.update(digest, ruleHash);
+		HashUtil.update(digest, leftFingerprint);
+		HashUtil.update(digest, rightFingerprint);
+		ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+		return new Key(hash.getLong(), hash.getLong());
+	}
+
+	/**
+	 * Look up the result of a comparison.
+	 *
+	 * @return the result, or a negative value if it is not in the cache
+	 */
+	byte lookup(Key key) {
+		Byte result = current.get(key);
+		if (result == null) {
+			synchronized (this) {
+				result = previous.get(key);
+			}
+			if (result != null) {
+				current.put(key, result);
+				dirty = true;
+			}
+		}
+		if (result == null) {
+			misses.incrementAndGet();
+			return ABSENT;
+		}
+		hits.incrementAndGet();
+		return result;
+	}
+
+	void put(Key key, byte result) {
+		current.put(key, result);
+		dirty = true;
+	}
+
+	private static boolean hasDoBlock(MatchRule rule) {
+		for (ModuleElement child : rule.getChildren()) {
+			if (child instanceof ExecutableBlock && "do".equals(((ExecutableBlock<?>) child).getRole())) {
+				return true;
+			}
+		}
+		for (ExtensibleNamedRule superRule : rule.getSuperRules()) {
+			if (hasDoBlock((MatchRule) superRule)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void load() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a match cache file.");
+			}
+			int version = in.readInt();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported match cache format version " + version + ".");
+			}
+			long size = in.readLong();
+			for (long i = 0; i < size; i++) {
+				Key key = new Key(in.readLong(), in.readLong());
+				previous.put(key, in.readByte());
+			}
+		}
+		logger.info("Match cache loaded: {} results.", previous.size());
+	}
+
+}
@@ -0,0 +1,385 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.ecl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The part of a {@link CompactMatchTrace} that has been spilled to a memory mapped file. Each
+ * match is a record with the rule index, the state of the match and the references to the left
+ * and right elements:
+ * <pre>
+ * record := rule:int state:byte prevLeft:long prevRight:long left:ref right:ref
+ * ref    := model:int id:(length:int bytes)
+ * </pre>
+ * The records are chained through the {@code prevLeft}/{@code prevRight} offsets by the hash
+ * bucket of their left and right elements, and the offset of the last record of each bucket is
+ * kept in a second memory mapped file, so the heap used by the spill does not grow with the
+ * number of records. The records of a pair of elements are found by following the chain of the
+ * left element. The bucket table is doubled, and the records chained again, when there are more
+ * records than buckets. Records do not cross the segments in which the file is mapped. The
+ * segments are unmapped when the spill is closed, so the files can be deleted and the mapped
+ * memory released without waiting for the buffers to be collected.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+final class MatchSpill implements Closeable {
+
+	static final byte NON_MATCHING = 0;
+	static final byte MATCHING = 1;
+	static final byte REMOVED = 2;
+
+	private static final int SEGMENT_SIZE = 64 << 20;
+	private static final long NONE = -1;
+	private static final int STATE_OFFSET = 4;
+	private static final int PREV_LEFT_OFFSET = 5;
+	private static final int PREV_RIGHT_OFFSET = 13;
+	private static final int HEADER_LENGTH = 21;
+	private static final int INITIAL_BUCKETS = 1 << 16;
+	private static final int MAX_BUCKETS = 1 << 26;
+	private static final int BUCKET_LENGTH = 16;
+
+	private static final Logger logger = LoggerFactory.getLogger(MatchSpill.class);
+
+	private final Path file;
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+	private final List<Integer> segmentEnds = new ArrayList<>();
+	private final List<String> models = new ArrayList<>();
+	private final Map<String, Integer> modelIds = new HashMap<>();
+	private final Path headsFile;
+	private final FileChannel headsChannel;
+	private MappedByteBuffer heads;
+	private int buckets;
+	private int position;
+	private long records;
+
+	/**
+	 * A record read from the file.
+	 */
+	static final class Record {
+		final long offset;
+		final int rule;
+		final byte state;
+		final ElementRef left;
+		final ElementRef right;
+		final long prevLeft;
+		final long prevRight;
+
+		Record(long offset, int rule, byte state, ElementRef left, ElementRef right, long prevLeft, long prevRight) {
+			this.offset = offset;
+			this.rule = rule;
+			this.state = state;
+			this.left = left;
+			this.right = right;
+			this.prevLeft = prevLeft;
+			this.prevRight = prevRight;
+		}
+	}
+
+	MatchSpill(Path directory) throws IOException {
+		file = directory == null ? Files.createTempFile("matchtrace", ".bin") : Files.createTempFile(directory, "matchtrace", ".bin");
+		file.toFile().deleteOnExit();
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		headsFile = directory == null ? Files.createTempFile("matchheads", ".bin") : Files.createTempFile(directory, "matchheads", ".bin");
+		headsFile.toFile().deleteOnExit();
+		headsChannel = FileChannel.open(headsFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		newSegment();
+		mapHeads(INITIAL_BUCKETS);
+	}
+
+	/**
+	 * Append a match.
+	 *
+	 * @return the offset of the record
+	 */
+	long append(int rule, byte state, ElementRef left, ElementRef right) throws IOException {
+		byte[] leftId = left.getElementId().getBytes(StandardCharsets.UTF_8);
+		byte[] rightId = right.getElementId().getBytes(StandardCharsets.UTF_8);
+		int length = HEADER_LENGTH + 8 + leftId.length + 8 + rightId.length;
+		if (length > SEGMENT_SIZE) {
+			throw new IOException("Element ids are too long to spill the match.");
+		}
+		if (SEGMENT_SIZE - position < length) {
+			segmentEnds.set(segments.size() - 1, position);
+			newSegment();
+		}
+		MappedByteBuffer segment = segments.get(segments.size() - 1);
+		long offset = (long) (segments.size() - 1) * SEGMENT_SIZE + position;
+		int leftHead = bucket(left);
+		int rightHead = bucket(right) + 8;
+		segment.position(position);
+		segment.putInt(rule);
+		segment.put(state);
+		segment.putLong(heads.getLong(leftHead));
+		segment.putLong(heads.getLong(rightHead));
+		segment.putInt(modelId(left.getModelName()));
+		segment.putInt(leftId.length);
+		segment.put(leftId);
+		segment.putInt(modelId(right.getModelName()));
+		segment.putInt(rightId.length);
+		segment.put(rightId);
+		position = segment.position();
+		segmentEnds.set(segments.size() - 1, position);
+		heads.putLong(leftHead, offset);
+		heads.putLong(rightHead, offset);
+		records++;
+		if (records > buckets && buckets < MAX_BUCKETS) {
+			rehash(buckets * 2);
+		}
+		return offset;
+	}
+
+	void setState(long offset, byte state) {
+		segments.get((int) (offset / SEGMENT_SIZE)).put((int) (offset % SEGMENT_SIZE) + STATE_OFFSET, state);
+	}
+
+	/**
+	 * Get the records of an element, most recent first.
+	 *
+	 * @param element 				the element
+	 * @param asLeft 				if true, the records in which the element is the left element,
+	 * 								otherwise the records in which it is the right element
+	 */
+	List<Record> find(ElementRef element, boolean asLeft) {
+		List<Record> result = new ArrayList<>();
+		long offset = heads.getLong(bucket(element) + (asLeft ? 0 : 8));
+		while (offset != NONE) {
+			Record record = read(offset);
+			if (element.equals(asLeft ? record.left : record.right)) {
+				result.add(record);
+			}
+			offset = asLeft ? record.prevLeft : record.prevRight;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the records of a pair of left and right elements, most recent first.
+	 *
+	 * @param left 					the left element
+	 * @param right 				the right element
+	 */
+	List<Record> find(ElementRef left, ElementRef right) {
+		List<Record> result = new ArrayList<>(1);
+		long offset = heads.getLong(bucket(left));
+		while (offset != NONE) {
+			Record record = read(offset);
+			if (left.equals(record.left) && right.equals(record.right)) {
+				result.add(record);
+			}
+			offset = record.prevLeft;
+		}
+		return result;
+	}
+
+	/**
+	 * Iterate over all the records, in the order they were appended.
+	 */
+	Iterator<Record> iterator() {
+		return new Iterator<Record>() {
+
+			private int segment = 0;
+			private int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (segment < segments.size() && index >= segmentEnds.get(segment)) {
+					segment++;
+					index = 0;
+				}
+				return segment < segments.size();
+			}
+
+			@Override
+			public Record next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Record record = read((long) segment * SEGMENT_SIZE + index);
+				index += recordLength(segments.get(segment), index);
+				return record;
+			}
+		};
+	}
+
+	long size() {
+		return records;
+	}
+
+	@Override
+	public void close() throws IOException {
+		List<MappedByteBuffer> mapped = new ArrayList<>(segments);
+		segments.clear();
+		segmentEnds.clear();
+		channel.close();
+		for (MappedByteBuffer segment : mapped) {
+			unmap(segment);
+		}
+		headsChannel.close();
+		unmap(heads);
+		heads = null;
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(headsFile);
+	}
+
+	private Record read(long offset) {
+		MappedByteBuffer segment = segments.get((int) (offset / SEGMENT_SIZE));
+		int i = (int) (offset % SEGMENT_SIZE);
+		int rule = segment.getInt(i);
+		byte state = segment.get(i + 4);
+		long prevLeft = segment.getLong(i + PREV_LEFT_OFFSET);
+		long prevRight = segment.getLong(i + PREV_RIGHT_OFFSET);
+		i += HEADER_LENGTH;
+		ElementRef left = readRef(segment, i);
+		i += 8 + segment.getInt(i + 4);
+		ElementRef right = readRef(segment, i);
+		return new Record(offset, rule, state, left, right, prevLeft, prevRight);
+	}
+
+	private ElementRef readRef(MappedByteBuffer segment, int i) {
+		int model = segment.getInt(i);
+		byte[] id = new byte[segment.getInt(i + 4)];
+		for (int j = 0; j < id.length; j++) {
+			id[j] = segment.get(i + 8 + j);
+		}
+		return new ElementRef(model < 0 ? null : models.get(model), new String(id, StandardCharsets.UTF_8));
+	}
+
+	private static int recordLength(MappedByteBuffer segment, int i) {
+		int leftLength = segment.getInt(i + HEADER_LENGTH + 4);
+		int rightLength = segment.getInt(i + HEADER_LENGTH + 8 + leftLength + 4);
+		return HEADER_LENGTH + 8 + leftLength + 8 + rightLength;
+	}
+
+	private int modelId(String model) {
+		if (model == null) {
+			return -1;
+		}
+		return modelIds.computeIfAbsent(model, m -> {
+			models.add(m);
+			return models.size() - 1;
+		});
+	}
+
+	/**
+	 * Map a bucket table of the given size, with all the buckets empty.
+	 */
+	private void mapHeads(int size) throws IOException {
+		if (heads != null) {
+			unmap(heads);
+		}
+		heads = headsChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) size * BUCKET_LENGTH);
+		for (int i = 0; i < size * BUCKET_LENGTH; i += 8) {
+			heads.putLong(i, NONE);
+		}
+		buckets = size;
+	}
+
+	/**
+	 * Resize the bucket table and chain the records again, in the order they were appended.
+	 */
+	private void rehash(int size) throws IOException {
+		mapHeads(size);
+		for (int s = 0; s < segments.size(); s++) {
+			MappedByteBuffer segment = segments.get(s);
+			for (int i = 0; i < segmentEnds.get(s); i += recordLength(segment, i)) {
+				long offset = (long) s * SEGMENT_SIZE + i;
+				int leftRef = i + HEADER_LENGTH;
+				int leftHead = bucket(readRef(segment, leftRef));
+				int rightHead = bucket(readRef(segment, leftRef + 8 + segment.getInt(leftRef + 4))) + 8;
+				segment.putLong(i + PREV_LEFT_OFFSET, heads.getLong(leftHead));
+				segment.putLong(i + PREV_RIGHT_OFFSET, heads.getLong(rightHead));
+				heads.putLong(leftHead, offset);
+				heads.putLong(rightHead, offset);
+			}
+		}
+	}
+
+	/**
+	 * The position in the bucket table of the head of the left chain of an element. The head of
+	 * the right chain follows it.
+	 */
+	private int bucket(ElementRef ref) {
+		long h = hash(ref) * 0x9E3779B97F4A7C15L;
+		return ((int) (h ^ (h >>> 32)) & (buckets - 1)) * BUCKET_LENGTH;
+	}
+
+	private void newSegment() throws IOException {
+		segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+		segmentEnds.add(0);
+		position = 0;
+	}
+
+	/**
+	 * Release the memory mapped by the buffer. There is no public API to do so: the cleaner of the
+	 * buffer is invoked through {@code sun.misc.Unsafe} in Java 9 and later, and directly in Java
+	 * 8. If neither is available the buffer is released when it is collected.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			}
+			catch (NoSuchMethodException e) {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+				return;
+			}
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			logger.debug("Unable to unmap the match spill, it will be released when collected.", e);
+		}
+	}
+
+	private static long hash(ElementRef ref) {
+		long h = 0xcbf29ce484222325L;
+		String model = ref.getModelName() == null ? "" : ref.getModelName();
+		for (int i = 0; i < model.length(); i++) {
+			h = (h ^ model.charAt(i)) * 0x100000001b3L;
+		}
+		h = (h ^ '#') * 0x100000001b3L;
+		String id = ref.getElementId();
+		for (int i = 0; i < id.length(); i++) {
+			h = (h ^ id.charAt(i)) * 0x100000001b3L;
+		}
+		return h;
+	}
+
+}
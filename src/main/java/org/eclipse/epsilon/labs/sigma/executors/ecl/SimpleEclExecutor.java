@@ -10,6 +10,8 @@
 package org.eclipse.epsilon.labs.sigma.executors.ecl;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -18,13 +20,16 @@ import java.util.Optional;
 import org.eclipse.epsilon.common.parse.problem.ParseProblem;
 import org.eclipse.epsilon.ecl.EclModule;
 import org.eclipse.epsilon.ecl.IEclModule;
+import org.eclipse.epsilon.ecl.execute.context.IEclContext;
 import org.eclipse.epsilon.ecl.trace.MatchTrace;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 import org.eclipse.epsilon.eol.models.IModel;
 import org.eclipse.epsilon.eol.types.IToolNativeTypeDelegate;
 import org.eclipse.epsilon.erl.execute.RuleProfiler;
 import org.eclipse.epsilon.labs.sigma.executors.EpsilonLanguageExecutor;
 import org.eclipse.epsilon.labs.sigma.executors.ModuleWrap;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +46,20 @@ public class SimpleEclExecutor implements EpsilonLanguageExecutor<MatchTrace> {
 	
 	private final ModuleWrap delegate;
 	
+	private boolean compactTrace;
+	
+	private boolean positiveOnly;
+	
+	private int spillThreshold = CompactMatchTrace.UNLIMITED;
+	
+	private Path spillDirectory;
+	
+	private MatchResultCache matchCache;
+	
+	private String scriptCode;
+	
+	private String scriptHash;
+	
 	/**
 	 * Instantiates a new simple ECL executor that uses an {@link EclModule} as its module.
 	 * @see EclModule
@@ -49,6 +68,18 @@ public class SimpleEclExecutor implements EpsilonLanguageExecutor<MatchTrace> {
 		this(new EclModule());
 	}
 	
+	/**
+	 * Instantiates a new simple ECL executor that uses a {@link BlockingEclModule} as its module,
+	 * with the provided number of threads. Comparisons are distributed over the threads, and
+	 * rules annotated with a {@code @blockingKey} only compare elements with the same key.
+	 * @see BlockingEclModule
+	 *
+	 * @param parallelism 			the parallelism to use
+	 */
+	public SimpleEclExecutor(int parallelism) {
+		this(new BlockingEclModule(parallelism));
+	}
+	
 	/**
 	 * Instantiates a new simple ECL executor that uses the provided {@link IEclModule}.
 	 * @see IEclModule
@@ -64,16 +95,92 @@ public class SimpleEclExecutor implements EpsilonLanguageExecutor<MatchTrace> {
 	@Override
 	public MatchTrace execute() throws EolRuntimeException {
 		logger.info("Executing ECL module.");
-        return module.execute();
+		if (compactTrace) {
+			IEclContext context = module.getContext();
+			context.setMatchTrace(new CompactMatchTrace(context.getModelRepository(), positiveOnly, spillThreshold,
+					spillDirectory));
+		}
+        if (matchCache != null) {
+        	((BlockingEclModule) module).setMatchCache(matchCache, scriptHash());
+        }
+        MatchTrace result = module.execute();
+        if (matchCache != null) {
+        	try {
+				matchCache.save();
+			} catch (IOException e) {
+				throw new EolInternalException(e);
+			}
+        }
+        return result;
+	}
+
+	/**
+	 * The hash of the parsed script and of the modules it imports, computed once per parse.
+	 *
+	 * @return the hash of the script, or null if the script was not parsed by this executor
+	 * @throws EolRuntimeException if the script or an imported module can not be read
+	 */
+	private String scriptHash() throws EolRuntimeException {
+		if (scriptHash == null) {
+			try {
+				scriptHash = HashUtil.hash(module, scriptCode);
+			}
+			catch (IOException e) {
+				throw new EolInternalException(e);
+			}
+		}
+		return scriptHash;
+	}
+
+	/**
+	 * Reuse the results of the comparisons of previous executions, stored in the cache. The
+	 * cache is saved after each execution. Results are only cached if the script was parsed by
+	 * this executor, as they are keyed by the hash of the script. The cache requires a
+	 * {@link BlockingEclModule}, e.g. an executor created with a parallelism, or with
+	 * {@code new SimpleEclExecutor(new BlockingEclModule())} for sequential matching.
+	 *
+	 * @param matchCache 			the match cache, null to disable caching
+	 * @throws IllegalStateException if the module is not a {@link BlockingEclModule}
+	 * @see MatchResultCache
+	 */
+	public void setMatchCache(MatchResultCache matchCache) {
+		if (!(module instanceof BlockingEclModule)) {
+			throw new IllegalStateException("The match cache requires a BlockingEclModule.");
+		}
+		if (matchCache == null) {
+			((BlockingEclModule) module).setMatchCache(null, null);
+		}
+		this.matchCache = matchCache;
+	}
+
+	/**
+	 * Record the matches in a {@link CompactMatchTrace} instead of the default match trace. The
+	 * returned trace must be closed once it is no longer used.
+	 *
+	 * @param positiveOnly 			if true, only matching pairs are kept
+	 * @param spillThreshold 		the number of matches in memory after which they are spilled to
+	 * 								disk, {@link CompactMatchTrace#UNLIMITED} to never spill
+	 * @param spillDirectory 		the directory for the spill file, null for the default
+	 * 								temporary directory
+	 */
+	public void setCompactMatchTrace(boolean positiveOnly, int spillThreshold, Path spillDirectory) {
+		this.compactTrace = true;
+		this.positiveOnly = positiveOnly;
+		this.spillThreshold = spillThreshold;
+		this.spillDirectory = spillDirectory;
 	}
 
 	@Override
 	public boolean parse(File file) throws Exception {
+		scriptCode = null;
+		scriptHash = null;
 		return delegate.parse(file);
 	}
 
 	@Override
 	public boolean parse(String code) throws Exception {
+		scriptCode = code;
+		scriptHash = null;
 		return delegate.parse(code);
 	}
 
@@ -0,0 +1,89 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.eclipse.epsilon.egl.exceptions.EglRuntimeException;
+import org.eclipse.epsilon.egl.execute.context.IEglContext;
+import org.eclipse.epsilon.egl.spec.EglTemplateSpecification;
+
+/**
+ * An {@link IncrementalFileGeneratingTemplate} that hands its output to an {@link AsyncFileWriter}
+ * instead of writing it to disk. Before the existing contents of a file are read (e.g. to merge
+ * protected regions, to append or patch, or to skip identical writes), the pending writes of the
+ * file are awaited.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class AsyncFileGeneratingTemplate extends IncrementalFileGeneratingTemplate {
+
+	private AsyncFileWriter writer;
+
+	/**
+	 * Instantiates a new asynchronous file generating template.
+	 *
+	 * @param spec 					the template specification
+	 * @param context 				the context of the template
+	 * @param outputRoot 			the output root
+	 * @param outputRootPath 		the output root path
+	 * @param writer 				the writer used to write the generated files
+	 * @param manifest 				the generation manifest, or null
+	 * @throws Exception if the template can not be created
+	 */
+	public AsyncFileGeneratingTemplate(EglTemplateSpecification spec, IEglContext context, URI outputRoot,
+		String outputRootPath, AsyncFileWriter writer, GenerationManifest manifest) throws Exception {
+		super(spec, context, outputRoot, outputRootPath, manifest);
+		this.writer = writer;
+	}
+
+	/**
+	 * Set the writer used to write the generated files, e.g. when the template is reused by
+	 * another factory.
+	 *
+	 * @param writer 				the writer
+	 */
+	void setWriter(AsyncFileWriter writer) {
+		this.writer = writer;
+	}
+
+	@Override
+	protected void doGenerate(File file, String targetName, boolean overwrite, boolean protectRegions)
+		throws EglRuntimeException {
+		await(file);
+		super.doGenerate(file, targetName, overwrite, protectRegions);
+	}
+
+	@Override
+	protected File write(String path, OutputMode outputMode) throws EglRuntimeException {
+		await(resolveFile(path));
+		return super.write(path, outputMode);
+	}
+
+	@Override
+	protected void writeFile(File file, String contents) throws IOException {
+		writer.write(file, contents);
+	}
+
+	/**
+	 * Wait until the pending writes of the file are done, before its contents are read.
+	 */
+	private void await(File file) throws EglRuntimeException {
+		try {
+			writer.await(file);
+		}
+		catch (IOException e) {
+			throw new EglRuntimeException(e.getMessage(), e, module);
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import org.eclipse.epsilon.egl.EglTemplate;
+import org.eclipse.epsilon.egl.spec.EglTemplateSpecification;
+
+/**
+ * A {@link CachingTemplateFactory} that creates {@link AsyncFileGeneratingTemplate}s, so the
+ * generated files are written by an {@link AsyncFileWriter} while the templates of other rule
+ * invocations are evaluated.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class AsyncFileGeneratingTemplateFactory extends CachingTemplateFactory {
+
+	private final AsyncFileWriter writer;
+
+	/**
+	 * Instantiates a new asynchronous file generating template factory.
+	 *
+	 * @param writer 				the writer used to write the generated files
+	 */
+	public AsyncFileGeneratingTemplateFactory(AsyncFileWriter writer) {
+		super();
+		this.writer = writer;
+	}
+
+	/**
+	 * The writer used to write the generated files.
+	 *
+	 * @return the writer
+	 */
+	public AsyncFileWriter getWriter() {
+		return writer;
+	}
+
+	@Override
+	protected EglTemplate createTemplate(EglTemplateSpecification spec) throws Exception {
+		recordTemplate(spec);
+		AsyncFileGeneratingTemplate template = new AsyncFileGeneratingTemplate(spec, getContextForNewTemplate(),
+				getOutputRootOrRoot(), outputRootPath, writer, getManifest());
+		template.setOutputMemo(getOutputMemo());
+		return template;
+	}
+
+	@Override
+	protected void bind(EglTemplate template) {
+		super.bind(template);
+		((AsyncFileGeneratingTemplate) template).setWriter(writer);
+	}
+
+}
@@ -0,0 +1,218 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.eclipse.epsilon.egl.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The AsyncFileWriter writes files from a background thread, so the threads that generate the
+ * contents do not wait for the disk. Writes are queued in a bounded queue: if the queue is full,
+ * {@link #write(File, String)} blocks until there is space, so the memory used by the pending
+ * contents is bounded. Files are written in the order the writes are queued.
+ * <p>
+ * If a write fails, the error is reported by the next call to {@link #write(File, String)},
+ * {@link #flush()} or {@link #close()}, and no further files are written.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class AsyncFileWriter implements Closeable {
+
+	/** The default number of pending writes. */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncFileWriter.class);
+
+	private final BlockingQueue<PendingWrite> queue;
+	private final Map<File, Integer> pending = new HashMap<>();
+	private final Thread thread;
+	private volatile IOException failure;
+	private volatile boolean closed;
+
+	/**
+	 * A file and its contents.
+	 */
+	private static final class PendingWrite {
+		final File file;
+		final String contents;
+
+		PendingWrite(File file, String contents) {
+			this.file = file;
+			this.contents = contents;
+		}
+	}
+
+	/**
+	 * Instantiates a new asynchronous file writer with the default capacity.
+	 */
+	public AsyncFileWriter() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new asynchronous file writer.
+	 *
+	 * @param capacity 				the maximum number of pending writes
+	 */
+	public AsyncFileWriter(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be positive.");
+		}
+		queue = new ArrayBlockingQueue<>(capacity);
+		thread = new Thread(this::run, "async-file-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queue a write. Blocks if the queue is full.
+	 *
+	 * @param file 					the file
+	 * @param contents 				the contents of the file
+	 * @throws IOException if a previous write failed, the writer is closed or the thread is
+	 * 								interrupted
+	 */
+	public void write(File file, String contents) throws IOException {
+		checkFailure();
+		synchronized (pending) {
+			if (closed) {
+				throw new IOException("The writer is closed.");
+			}
+			pending.merge(file, 1, Integer::sum);
+		}
+		try {
+			queue.put(new PendingWrite(file, contents));
+		}
+		catch (InterruptedException e) {
+			done(file);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while queueing the write of " + file);
+		}
+	}
+
+	/**
+	 * Wait until the pending writes of the file are done, e.g. before reading it.
+	 *
+	 * @param file 					the file
+	 * @throws IOException if a write failed or the thread is interrupted
+	 */
+	public void await(File file) throws IOException {
+		synchronized (pending) {
+			while (pending.containsKey(file) && failure == null) {
+				waitForWrites();
+			}
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Wait until all the pending writes are done.
+	 *
+	 * @throws IOException if a write failed or the thread is interrupted
+	 */
+	public void flush() throws IOException {
+		synchronized (pending) {
+			while (!pending.isEmpty() && failure == null) {
+				waitForWrites();
+			}
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Stop accepting writes, wait until all the pending writes are done and stop the writer
+	 * thread.
+	 *
+	 * @throws IOException if a write failed or the thread is interrupted
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (pending) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		try {
+			flush();
+		}
+		finally {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Write the queued files. Once the writer is closed, the thread stops when all the accepted
+	 * writes have been taken from the queue, so none is left pending.
+	 */
+	private void run() {
+		while (true) {
+			if (closed) {
+				synchronized (pending) {
+					if (pending.isEmpty()) {
+						return;
+					}
+				}
+			}
+			PendingWrite write;
+			try {
+				write = queue.take();
+			}
+			catch (InterruptedException e) {
+				continue;
+			}
+			if (failure == null) {
+				try {
+					FileUtil.write(write.file, write.contents);
+				}
+				catch (IOException | RuntimeException e) {
+					logger.error("Unable to write {}", write.file, e);
+					failure = e instanceof IOException ? (IOException) e : new IOException(e);
+				}
+			}
+			done(write.file);
+		}
+	}
+
+	private void done(File file) {
+		synchronized (pending) {
+			pending.computeIfPresent(file, (f, count) -> count == 1 ? null : count - 1);
+			pending.notifyAll();
+		}
+	}
+
+	private void waitForWrites() throws InterruptedIOException {
+		try {
+			pending.wait();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the pending writes.");
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		IOException e = failure;
+		if (e != null) {
+			throw new IOException("A previous write failed.", e);
+		}
+	}
+
+}
@@ -0,0 +1,363 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.eclipse.epsilon.egl.EglTemplate;
+import org.eclipse.epsilon.egl.exceptions.EglRuntimeException;
+import org.eclipse.epsilon.egl.execute.context.EglContext;
+import org.eclipse.epsilon.egl.execute.context.IEglContext;
+import org.eclipse.epsilon.egl.output.IOutputBuffer;
+import org.eclipse.epsilon.egl.output.OutputBuffer;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.FrameStack;
+import org.eclipse.epsilon.eol.models.IModel;
+import org.eclipse.epsilon.eol.types.IToolNativeTypeDelegate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The BatchEglRenderer renders one EGL template against many sets of parameters, e.g. one per
+ * notification, without the cost of creating, parsing and configuring an executor for each of
+ * them. Each set of parameters is given to the template as variables, and the rendered outputs
+ * are returned in the order of the parameter sets.
+ * <p>
+ * EGL templates are bound to the context they are executed in, so each rendering thread uses its
+ * own template, which is parsed once and reset between renders. The variables of a set of
+ * parameters are removed once it has been rendered, so they do not leak into the next render.
+ * Templates loaded from a file are taken from a {@link TemplateCache}, so the file is read once
+ * and the parsed templates are given back to the cache when the renderer is closed. The output
+ * buffer of the template is reused by the renders of each thread.
+ * <p>
+ * Models and native type delegates must be added before the first render, and the models must
+ * support being queried from several threads if the parallelism is greater than one. The
+ * renderer must be closed once it is no longer used.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class BatchEglRenderer implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchEglRenderer.class);
+
+	/** The number of renders submitted, per thread, ahead of the result being consumed. */
+	private static final int RENDERS_AHEAD = 4;
+
+	private final Loader loader;
+	private final TemplateCache cache;
+	private final int parallelism;
+	private final ExecutorService executor;
+	private final ThreadLocal<Worker> worker = ThreadLocal.withInitial(this::newWorker);
+	private final List<Worker> workers = Collections.synchronizedList(new ArrayList<>());
+	private final List<IModel> models = new ArrayList<>();
+	private final List<IToolNativeTypeDelegate> nativeDelegates = new ArrayList<>();
+	private volatile RuntimeException loadFailure;
+
+	/**
+	 * Load the template of a worker.
+	 */
+	@FunctionalInterface
+	private interface Loader {
+		EglTemplate load(CachingTemplateFactory factory) throws Exception;
+	}
+
+	/**
+	 * The template of a rendering thread, with its own context.
+	 */
+	private static final class Worker {
+		final CachingTemplateFactory factory;
+		final EglTemplate template;
+
+		Worker(CachingTemplateFactory factory, EglTemplate template) {
+			this.factory = factory;
+			this.template = template;
+		}
+
+		/**
+		 * Render the template with the parameters, and remove them from the frame stack once
+		 * rendered so they are not visible to the next render.
+		 */
+		String render(Map<String, ?> parameters) throws EglRuntimeException {
+			template.reset();
+			try {
+				for (Map.Entry<String, ?> e : parameters.entrySet()) {
+					template.populate(e.getKey(), e.getValue());
+				}
+				return template.process();
+			}
+			finally {
+				FrameStack frameStack = template.getModule().getContext().getFrameStack();
+				for (String name : parameters.keySet()) {
+					frameStack.remove(name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * An {@link EglContext} that reuses the character buffer of the output of the base template,
+	 * i.e. the first template entered. The templates it invokes get regular buffers.
+	 */
+	private static final class ReusingEglContext extends EglContext {
+
+		private final StringBuffer buffer = new StringBuffer();
+		private int depth;
+
+		ReusingEglContext(CachingTemplateFactory templateFactory) {
+			super(templateFactory);
+		}
+
+		@Override
+		public void enter(EglTemplate template) {
+			depth++;
+			super.enter(template);
+		}
+
+		@Override
+		public void exit() {
+			super.exit();
+			depth--;
+		}
+
+		@Override
+		public IOutputBuffer newOutputBuffer() {
+			if (depth == 1) {
+				return new ReusedOutputBuffer(this, buffer);
+			}
+			return super.newOutputBuffer();
+		}
+	}
+
+	/**
+	 * An {@link OutputBuffer} that writes to a given (cleared) character buffer.
+	 */
+	private static final class ReusedOutputBuffer extends OutputBuffer {
+
+		ReusedOutputBuffer(IEglContext context, StringBuffer buffer) {
+			super(context);
+			buffer.setLength(0);
+			this.buffer = buffer;
+		}
+	}
+
+	/**
+	 * Instantiates a new batch EGL renderer for the template in the file. The templates are taken
+	 * from a template cache owned by the renderer.
+	 *
+	 * @param template 				the template file
+	 * @param parallelism 			the number of threads used to render
+	 */
+	public BatchEglRenderer(File template, int parallelism) {
+		this(template, parallelism, new TemplateCache(parallelism + 1));
+	}
+
+	/**
+	 * Instantiates a new batch EGL renderer for the template in the file, that takes its templates
+	 * from the provided cache.
+	 *
+	 * @param template 				the template file
+	 * @param parallelism 			the number of threads used to render
+	 * @param cache 				the template cache
+	 */
+	public BatchEglRenderer(File template, int parallelism, TemplateCache cache) {
+		this(factory -> factory.load(template), cache, parallelism);
+	}
+
+	/**
+	 * Instantiates a new batch EGL renderer for the template code.
+	 *
+	 * @param code 					the template code
+	 * @param parallelism 			the number of threads used to render
+	 */
+	public BatchEglRenderer(String code, int parallelism) {
+		this(factory -> factory.prepare(code), null, parallelism);
+	}
+
+	private BatchEglRenderer(Loader loader, TemplateCache cache, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1.");
+		}
+		logger.info("Creating the BatchEglRenderer with {} threads.", parallelism);
+		this.loader = loader;
+		this.cache = cache;
+		this.parallelism = parallelism;
+		AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+			Thread t = new Thread(r, "batch-egl-renderer-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Add the models used by the template. Must be called before the first render.
+	 *
+	 * @param models 				the models
+	 */
+	public void addModels(Collection<IModel> models) {
+		this.models.addAll(models);
+	}
+
+	/**
+	 * Add the native type delegates used by the template. Must be called before the first render.
+	 *
+	 * @param nativeDelegates 		the native type delegates
+	 */
+	public void addNativeTypeDelegates(Collection<IToolNativeTypeDelegate> nativeDelegates) {
+		this.nativeDelegates.addAll(nativeDelegates);
+	}
+
+	/**
+	 * Render the template with one set of parameters, in the calling thread.
+	 *
+	 * @param parameters 			the parameters, given to the template as variables
+	 * @return the output of the template
+	 * @throws EolRuntimeException if the template can not be loaded or executed
+	 */
+	public String render(Map<String, ?> parameters) throws EolRuntimeException {
+		try {
+			return worker.get().render(parameters);
+		}
+		catch (LoadException e) {
+			throw wrap(e.getCause());
+		}
+	}
+
+	/**
+	 * Render the template with each of the sets of parameters, in parallel.
+	 *
+	 * @param parameterSets 		the sets of parameters
+	 * @return the outputs of the template, in the order of the sets of parameters
+	 * @throws EolRuntimeException if the template can not be loaded or executed
+	 */
+	public List<String> renderAll(Collection<? extends Map<String, ?>> parameterSets) throws EolRuntimeException {
+		List<String> result = new ArrayList<>(parameterSets.size());
+		renderAll(parameterSets.iterator(), result::add);
+		return result;
+	}
+
+	/**
+	 * Render the template with each of the sets of parameters, in parallel. Each output is given
+	 * to the consumer, in the calling thread and in the order of the sets of parameters, as soon
+	 * as it and the outputs before it are rendered. Only a few renders per thread are pending at
+	 * any time, so the sets of parameters can be produced lazily and the outputs need not be kept
+	 * in memory. If a render fails, the pending renders are cancelled.
+	 *
+	 * @param parameterSets 		the sets of parameters
+	 * @param results 				the consumer of the outputs
+	 * @throws EolRuntimeException if the template can not be loaded or executed
+	 */
+	public void renderAll(Iterator<? extends Map<String, ?>> parameterSets, Consumer<? super String> results)
+		throws EolRuntimeException {
+		Deque<Future<String>> pending = new ArrayDeque<>();
+		int maxPending = parallelism * RENDERS_AHEAD;
+		try {
+			while (parameterSets.hasNext() || !pending.isEmpty()) {
+				while (parameterSets.hasNext() && pending.size() < maxPending) {
+					Map<String, ?> parameters = parameterSets.next();
+					pending.add(executor.submit(() -> worker.get().render(parameters)));
+				}
+				results.accept(pending.poll().get());
+			}
+		}
+		catch (ExecutionException e) {
+			pending.forEach(f -> f.cancel(false));
+			Throwable cause = e.getCause();
+			throw wrap(cause instanceof LoadException ? cause.getCause() : cause);
+		}
+		catch (InterruptedException | CancellationException e) {
+			pending.forEach(f -> f.cancel(false));
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			throw new EolInternalException(e);
+		}
+	}
+
+	/**
+	 * Stop the rendering threads and give back the templates to the cache.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		synchronized (workers) {
+			for (Worker w : workers) {
+				w.factory.release();
+			}
+			workers.clear();
+		}
+	}
+
+	private Worker newWorker() {
+		if (loadFailure != null) {
+			throw loadFailure;
+		}
+		CachingTemplateFactory factory = new CachingTemplateFactory(cache);
+		IEglContext context = new ReusingEglContext(factory);
+		context.getModelRepository().addModels(models.toArray(new IModel[0]));
+		context.getNativeTypeDelegates().addAll(nativeDelegates);
+		factory.setContext(context);
+		EglTemplate template;
+		try {
+			template = loader.load(factory);
+		}
+		catch (Exception e) {
+			loadFailure = new LoadException(e);
+			throw loadFailure;
+		}
+		if (template == null || !template.getParseProblems().isEmpty()) {
+			String problems = template == null ? "" : template.getParseProblems().toString();
+			logger.error("Failed to parse the template {}", problems);
+			loadFailure = new LoadException(new EglRuntimeException("Parse errors occurred. " + problems,
+					template == null ? null : template.getModule()));
+			throw loadFailure;
+		}
+		Worker w = new Worker(factory, template);
+		workers.add(w);
+		return w;
+	}
+
+	private static EolRuntimeException wrap(Throwable t) {
+		if (t instanceof EolRuntimeException) {
+			return (EolRuntimeException) t;
+		}
+		return new EolInternalException(t);
+	}
+
+	/**
+	 * Signals that the template of a worker could not be loaded.
+	 */
+	private static final class LoadException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		LoadException(Throwable cause) {
+			super(cause);
+		}
+	}
+
+}
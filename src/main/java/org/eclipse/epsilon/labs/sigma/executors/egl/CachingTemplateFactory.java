@@ -0,0 +1,269 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.epsilon.common.util.UriUtil;
+import org.eclipse.epsilon.egl.EglFileGeneratingTemplateFactory;
+import org.eclipse.epsilon.egl.EglTemplate;
+import org.eclipse.epsilon.egl.exceptions.EglRuntimeException;
+import org.eclipse.epsilon.egl.execute.control.ITemplateExecutionListener;
+import org.eclipse.epsilon.egl.formatter.Formatter;
+import org.eclipse.epsilon.egl.spec.EglTemplateSpecification;
+import org.eclipse.epsilon.egl.spec.EglTemplateSpecificationFactory;
+
+/**
+ * An {@link EglFileGeneratingTemplateFactory} that takes the templates loaded by URI or
+ * {@link File} from a shared {@link TemplateCache}, so templates already parsed by other
+ * factories are not parsed again. This covers the templates of the EGX generation rules and the
+ * main template of the EGL executor. Templates loaded by name from other templates (i.e.
+ * {@code TemplateFactory.load('...')}) are not cached, as the factory can not know when they are
+ * no longer used.
+ * <p>
+ * Templates taken from the cache are bound to the context of this factory. They are given back
+ * to the cache by {@link #release()}, which must only be called once the templates are no longer
+ * used, e.g. when the executor is disposed.
+ * <p>
+ * The factory creates {@link IncrementalFileGeneratingTemplate}s, so when a
+ * {@link GenerationManifest} is set, files whose inputs or contents did not change are not
+ * generated or written again, and when a {@link TemplateOutputMemo} is set, templates that opted in
+ * to memoisation reuse their previous output. Without a cache, a manifest and a memo this factory
+ * behaves as an {@link EglFileGeneratingTemplateFactory}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class CachingTemplateFactory extends EglFileGeneratingTemplateFactory {
+
+	private TemplateCache cache;
+	private GenerationManifest manifest;
+	private TemplateOutputMemo memo;
+	private Formatter defaultFormatter;
+	private final List<Loaded> loaded = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * A template taken from the cache, or parsed, by this factory.
+	 */
+	private static final class Loaded {
+		final URI uri;
+		final TemplateCache.Version version;
+		final Object key;
+		final EglTemplate template;
+
+		Loaded(URI uri, TemplateCache.Version version, Object key, EglTemplate template) {
+			this.uri = uri;
+			this.version = version;
+			this.key = key;
+			this.template = template;
+		}
+	}
+
+	/**
+	 * Instantiates a new caching template factory without a cache.
+	 */
+	public CachingTemplateFactory() {
+		super();
+	}
+
+	/**
+	 * Instantiates a new caching template factory.
+	 *
+	 * @param cache 				the template cache
+	 */
+	public CachingTemplateFactory(TemplateCache cache) {
+		super();
+		this.cache = cache;
+	}
+
+	/**
+	 * The template cache.
+	 *
+	 * @return the cache, or null if templates are not cached
+	 */
+	public TemplateCache getTemplateCache() {
+		return cache;
+	}
+
+	/**
+	 * Set the template cache. Templates loaded from the previous cache are given back to it.
+	 *
+	 * @param cache 				the template cache, or null to disable caching
+	 */
+	public void setTemplateCache(TemplateCache cache) {
+		release();
+		this.cache = cache;
+	}
+
+	/**
+	 * The generation manifest.
+	 *
+	 * @return the manifest, or null if generation is not incremental
+	 */
+	public GenerationManifest getManifest() {
+		return manifest;
+	}
+
+	/**
+	 * Set the generation manifest used by the templates created by this factory.
+	 *
+	 * @param manifest 				the generation manifest, or null to disable incremental generation
+	 */
+	public void setManifest(GenerationManifest manifest) {
+		this.manifest = manifest;
+	}
+
+	/**
+	 * The template output memo.
+	 *
+	 * @return the memo, or null if outputs are not memoised
+	 */
+	public TemplateOutputMemo getOutputMemo() {
+		return memo;
+	}
+
+	/**
+	 * Set the template output memo used by the templates created by this factory.
+	 *
+	 * @param memo 					the template output memo, or null to disable memoisation
+	 */
+	public void setOutputMemo(TemplateOutputMemo memo) {
+		this.memo = memo;
+	}
+
+	@Override
+	public void setDefaultFormatter(Formatter defaultFormatter) {
+		super.setDefaultFormatter(defaultFormatter);
+		this.defaultFormatter = defaultFormatter;
+	}
+
+	@Override
+	public EglTemplate load(File file) throws EglRuntimeException {
+		if (cache == null) {
+			return super.load(file);
+		}
+		try {
+			return load(UriUtil.fileToUri(file));
+		}
+		catch (URISyntaxException e) {
+			return handleFailedLoad(name(file.getAbsolutePath()), e);
+		}
+	}
+
+	@Override
+	public EglTemplate load(URI resource) throws EglRuntimeException {
+		if (cache == null) {
+			return super.load(resource);
+		}
+		TemplateCache.Version version;
+		try {
+			version = cache.version(resource);
+		}
+		catch (IOException e) {
+			return handleFailedLoad(resource.toString(), e);
+		}
+		Object key = cacheKey();
+		EglTemplate template = cache.take(resource, version, key);
+		if (template != null) {
+			bind(template);
+		}
+		else {
+			Collection<ITemplateExecutionListener> listeners = getTemplateExecutionListeners();
+			EglTemplateSpecificationFactory specs = new EglTemplateSpecificationFactory(defaultFormatter,
+					getDefaultIncrementalitySettings(),
+					listeners.toArray(new ITemplateExecutionListener[listeners.size()]));
+			template = load(specs.fromDirtyResource(resource.toString(), version.code, resource));
+			if (template == null) {
+				return null;
+			}
+		}
+		loaded.add(new Loaded(resource, version, key, template));
+		return template;
+	}
+
+	@Override
+	protected EglTemplate createTemplate(EglTemplateSpecification spec) throws Exception {
+		recordTemplate(spec);
+		IncrementalFileGeneratingTemplate template = new IncrementalFileGeneratingTemplate(spec,
+				getContextForNewTemplate(), getOutputRootOrRoot(), outputRootPath, manifest);
+		template.setOutputMemo(memo);
+		return template;
+	}
+
+	/**
+	 * Record the template in the generation manifest, if any, so changes to the template are
+	 * detected by the next execution.
+	 *
+	 * @param spec 					the template specification
+	 */
+	protected void recordTemplate(EglTemplateSpecification spec) {
+		if (manifest != null && spec.getURI() != null) {
+			manifest.recordTemplate(spec.getURI());
+		}
+	}
+
+	/**
+	 * Give back the templates loaded by this factory to the cache. The templates must no longer
+	 * be used.
+	 */
+	public void release() {
+		List<Loaded> released;
+		synchronized (loaded) {
+			released = new ArrayList<>(loaded);
+			loaded.clear();
+		}
+		if (cache == null) {
+			return;
+		}
+		for (Loaded l : released) {
+			l.template.reset();
+			cache.offer(l.uri, l.version, l.key, l.template);
+		}
+	}
+
+	/**
+	 * The configuration of this factory that is captured by the templates it creates. Templates
+	 * are only reused by factories with equal keys. By default, the key is the class of the
+	 * factory, the output root, the default formatter and the template execution listeners, if
+	 * any.
+	 *
+	 * @return the cache key
+	 */
+	protected Object cacheKey() {
+		Collection<ITemplateExecutionListener> listeners = getTemplateExecutionListeners();
+		return Arrays.asList(getClass(), getOutputRootOrRoot(), outputRootPath, defaultFormatter,
+				listeners.isEmpty() ? null : this);
+	}
+
+	/**
+	 * Bind a template taken from the cache to the context of this factory.
+	 *
+	 * @param template 				the template
+	 */
+	protected void bind(EglTemplate template) {
+		template.getModule().setContext(getContextForNewTemplate());
+		template.setIncrementalitySettings(getDefaultIncrementalitySettings());
+		if (template instanceof IncrementalFileGeneratingTemplate) {
+			((IncrementalFileGeneratingTemplate) template).setManifest(manifest);
+			((IncrementalFileGeneratingTemplate) template).setOutputMemo(memo);
+		}
+		if (manifest != null && template.getTemplate().getURI() != null) {
+			manifest.recordTemplate(template.getTemplate().getURI());
+		}
+	}
+
+}
@@ -0,0 +1,450 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.epsilon.eol.models.ModelRepository;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementFingerprinter;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The GenerationManifest allows EGX to skip the generation of files whose inputs did not change
+ * since the previous execution, and the writing of files whose contents did not change. For each
+ * generated file the manifest records the hash of its inputs, the hash of its contents and its
+ * size and last modified time once written.
+ * <p>
+ * The inputs of a file are the template that generates it, the variables the template is
+ * populated with (i.e. the element of the generation rule and the rule parameters), the target
+ * path and whether protected regions are merged. Model elements are represented by their ids
+ * and fingerprints (see {@link ElementFingerprinter}), primitive values by their string
+ * representation, and collections and maps by their contents. If a variable holds any other
+ * value the file is always generated. Besides, all files are generated again if the EGX script
+ * or any of the templates used by the previous execution changed.
+ * <p>
+ * The model elements whose properties are read while a file is generated, e.g. the children of
+ * the element of the rule, are recorded with their fingerprints. A file is skipped if its inputs
+ * are the same, the elements it read can still be found and have the same fingerprints, and the
+ * file was not modified since it was generated. The fingerprints must cover the properties the
+ * templates read. If an element read by the template has no id the file is always generated. A
+ * file is not written if its new contents have the same hash as the recorded ones and it was not
+ * modified since then.
+ * <p>
+ * The manifest is loaded from its file when created, and {@link #save()} writes the files
+ * generated or skipped by the last execution, so files that are no longer generated are
+ * forgotten. A manifest file that can not be read is ignored. The manifest is thread safe.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class GenerationManifest implements Closeable {
+
+	/** The magic number of the manifest file, "EGXM". */
+	private static final int MAGIC = 0x4547584D;
+	private static final int FORMAT_VERSION = 2;
+	private static final long UNKNOWN = -1;
+
+	private static final Logger logger = LoggerFactory.getLogger(GenerationManifest.class);
+
+	private final Path file;
+	private final ElementFingerprinter fingerprinter;
+	private final Map<String, Output> previous = new HashMap<>();
+	private final Map<String, String> previousTemplates = new HashMap<>();
+	private String previousScriptHash = "";
+	private final Map<String, Output> current = new ConcurrentHashMap<>();
+	private final Map<String, String> currentTemplates = new ConcurrentHashMap<>();
+	private volatile String scriptHash = "";
+	private volatile boolean stale = true;
+	private volatile boolean dirty;
+	private final AtomicInteger skipped = new AtomicInteger();
+	private final AtomicInteger unchanged = new AtomicInteger();
+	private final AtomicInteger written = new AtomicInteger();
+
+	/**
+	 * A generated file.
+	 */
+	private static final class Output {
+		final String inputHash;
+		final String contentHash;
+		final long length;
+		final long lastModified;
+		final Map<ElementRef, String> dependencies;
+
+		Output(String inputHash, String contentHash, long length, long lastModified,
+			Map<ElementRef, String> dependencies) {
+			this.inputHash = inputHash;
+			this.contentHash = contentHash;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.dependencies = dependencies;
+		}
+
+		boolean matches(File file) {
+			return length != UNKNOWN && file.length() == length && file.lastModified() == lastModified;
+		}
+	}
+
+	/**
+	 * Instantiates a new generation manifest, loading the manifest file, if it exists.
+	 *
+	 * @param file 					the manifest file
+	 * @param fingerprinter 		the fingerprinter used for the model elements
+	 */
+	public GenerationManifest(Path file, ElementFingerprinter fingerprinter) {
+		this.file = file;
+		this.fingerprinter = fingerprinter;
+		if (Files.exists(file)) {
+			try {
+				load();
+			}
+			catch (IOException e) {
+				logger.warn("Unable to read the generation manifest {}, it will be ignored.", file, e);
+				previous.clear();
+				previousTemplates.clear();
+			}
+		}
+	}
+
+	/**
+	 * Prepare the manifest for an execution of the script. If the script, or any of the
+	 * templates used by the previous execution, changed, all files will be generated.
+	 *
+	 * @param scriptHash 			the hash of the EGX script
+	 */
+	public void begin(String scriptHash) {
+		this.scriptHash = scriptHash == null ? "" : scriptHash;
+		dirty = true;
+		skipped.set(0);
+		unchanged.set(0);
+		written.set(0);
+		stale = previous.isEmpty() || !this.scriptHash.equals(previousScriptHash);
+		for (Map.Entry<String, String> e : previousTemplates.entrySet()) {
+			if (stale) {
+				break;
+			}
+			stale = !templateHash(e.getKey()).equals(e.getValue());
+		}
+		if (stale && !previous.isEmpty()) {
+			logger.info("The script or its templates changed, all files will be generated.");
+		}
+	}
+
+	/**
+	 * The number of files whose generation was skipped in the current execution.
+	 *
+	 * @return the number of skipped files
+	 */
+	public int getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * The number of files that were generated but not written, as their contents did not
+	 * change, in the current execution.
+	 *
+	 * @return the number of unchanged files
+	 */
+	public int getUnchanged() {
+		return unchanged.get();
+	}
+
+	/**
+	 * The number of files written in the current execution.
+	 *
+	 * @return the number of written files
+	 */
+	public int getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * Write the files generated or skipped by the current execution to the manifest file. All
+	 * the generated files must have been written. Does nothing if the current execution has
+	 * already been saved (or no execution has begun), so the file is not overwritten with an empty
+	 * manifest.
+	 *
+	 * @throws IOException if the file can not be written
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		Map<String, Output> outputs = new TreeMap<>(current);
+		Map<String, String> templates = new TreeMap<>(currentTemplates);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(scriptHash);
+			out.writeInt(templates.size());
+			for (Map.Entry<String, String> e : templates.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeUTF(e.getValue());
+			}
+			out.writeInt(outputs.size());
+			for (Map.Entry<String, Output> e : outputs.entrySet()) {
+				Output output = e.getValue();
+				if (output.length == UNKNOWN) {
+					File f = new File(e.getKey());
+					output = new Output(output.inputHash, output.contentHash, f.length(), f.lastModified(),
+							output.dependencies);
+				}
+				out.writeUTF(e.getKey());
+				out.writeUTF(output.inputHash);
+				out.writeUTF(output.contentHash);
+				out.writeLong(output.length);
+				out.writeLong(output.lastModified);
+				out.writeInt(output.dependencies.size());
+				for (Map.Entry<ElementRef, String> d : output.dependencies.entrySet()) {
+					out.writeUTF(d.getKey().getModelName());
+					out.writeUTF(d.getKey().getElementId());
+					out.writeUTF(d.getValue());
+				}
+				previous.put(e.getKey(), output);
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		previous.keySet().retainAll(outputs.keySet());
+		previousTemplates.clear();
+		previousTemplates.putAll(templates);
+		previousScriptHash = scriptHash;
+		current.clear();
+		currentTemplates.clear();
+		logger.info("Generation manifest saved: {} files skipped, {} unchanged, {} written.",
+				skipped.get(), unchanged.get(), written.get());
+	}
+
+	/**
+	 * Save the current execution, unless it has already been saved.
+	 */
+	@Override
+	public void close() throws IOException {
+		save();
+	}
+
+	/**
+	 * Record a template used by the current execution.
+	 *
+	 * @param uri 					the URI of the template
+	 */
+	void recordTemplate(URI uri) {
+		if ("file".equals(uri.getScheme())) {
+			dirty = true;
+			currentTemplates.computeIfAbsent(Paths.get(uri).toString(), this::templateHash);
+		}
+	}
+
+	/**
+	 * Compute the hash of the inputs of a generated file.
+	 *
+	 * @param template 				the URI of the template
+	 * @param target 				the generated file
+	 * @param merge 				if protected regions are merged
+	 * @param variables 			the variables of the template
+	 * @param repository 			the model repository, used to identify model elements
+	 * @return the hash, or an empty Optional if the inputs can not be hashed
+	 */
+	Optional<String> inputHash(URI template, File target, boolean merge, Map<String, Object> variables,
+		ModelRepository repository) {
+		MessageDigest digest = HashUtil.newDigest();
+		HashUtil.update(digest, String.valueOf(template));
+		HashUtil.update(digest, target.getAbsolutePath());
+		HashUtil.update(digest, String.valueOf(merge));
+		for (Map.Entry<String, Object> e : new TreeMap<>(variables).entrySet()) {
+			Optional<String> value = fingerprint(e.getValue(), repository);
+			if (!value.isPresent()) {
+				return Optional.empty();
+			}
+			HashUtil.update(digest, e.getKey());
+			HashUtil.update(digest, value.get());
+		}
+		return Optional.of(HashUtil.toHex(digest.digest()));
+	}
+
+	/**
+	 * Compute the dependencies of a generated file: the fingerprints of the model elements read
+	 * by its template.
+	 *
+	 * @param elements 				the model elements read by the template
+	 * @param repository 			the model repository, used to identify model elements
+	 * @return the fingerprints of the elements, or an empty Optional if an element can not be
+	 * 								referenced or fingerprinted
+	 */
+	Optional<Map<ElementRef, String>> dependencies(Collection<?> elements, ModelRepository repository) {
+		Map<ElementRef, String> result = new TreeMap<>(Comparator.comparing(ElementRef::toString));
+		for (Object element : elements) {
+			Optional<ElementRef> ref = ElementRef.of(element, repository);
+			Optional<String> fingerprint = ref.isPresent() ? fingerprinter.fingerprint(element) : Optional.empty();
+			if (!fingerprint.isPresent()) {
+				return Optional.empty();
+			}
+			result.put(ref.get(), fingerprint.get());
+		}
+		return Optional.of(result);
+	}
+
+	/**
+	 * Check if a file can be skipped, i.e. its inputs did not change, the elements read when it
+	 * was generated did not change and it was not modified since it was generated. If so, the
+	 * file is kept in the manifest.
+	 */
+	boolean skip(File target, String inputHash, ModelRepository repository) {
+		if (stale) {
+			return false;
+		}
+		String path = target.getAbsolutePath();
+		Output output = previous.get(path);
+		if (output == null || !output.inputHash.equals(inputHash) || !output.matches(target)) {
+			return false;
+		}
+		for (Map.Entry<ElementRef, String> d : output.dependencies.entrySet()) {
+			Optional<String> fingerprint = d.getKey().resolve(repository).flatMap(fingerprinter::fingerprint);
+			if (!fingerprint.isPresent() || !fingerprint.get().equals(d.getValue())) {
+				return false;
+			}
+		}
+		current.put(path, output);
+		dirty = true;
+		skipped.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Record the new contents of a file.
+	 *
+	 * @param target 				the generated file
+	 * @param inputHash 			the hash of the inputs, or null if not known
+	 * @param dependencies 			the fingerprints of the model elements read by the template,
+	 * 								or null if not known
+	 * @param contents 				the new contents
+	 * @return true if the file has to be written, false if its contents did not change
+	 */
+	boolean record(File target, String inputHash, Map<ElementRef, String> dependencies, String contents) {
+		String path = target.getAbsolutePath();
+		String contentHash = HashUtil.hash(contents);
+		// Without the inputs or dependencies the file is never skipped
+		String inputs = inputHash == null || dependencies == null ? "" : inputHash;
+		Map<ElementRef, String> reads = dependencies == null ? Collections.emptyMap() : dependencies;
+		Output output = previous.get(path);
+		if (output != null && output.contentHash.equals(contentHash) && output.matches(target)) {
+			current.put(path, new Output(inputs, contentHash, output.length, output.lastModified, reads));
+			dirty = true;
+			unchanged.incrementAndGet();
+			return false;
+		}
+		current.put(path, new Output(inputs, contentHash, UNKNOWN, UNKNOWN, reads));
+		dirty = true;
+		written.incrementAndGet();
+		return true;
+	}
+
+	private Optional<String> fingerprint(Object value, ModelRepository repository) {
+		if (value == null) {
+			return Optional.of("null");
+		}
+		if (value instanceof String || value instanceof Number || value instanceof Boolean
+				|| value instanceof Character || value instanceof Enum) {
+			return Optional.of(value.getClass().getName() + ":" + value);
+		}
+		if (value instanceof Collection) {
+			StringBuilder result = new StringBuilder("[");
+			for (Object item : (Collection<?>) value) {
+				Optional<String> f = fingerprint(item, repository);
+				if (!f.isPresent()) {
+					return Optional.empty();
+				}
+				result.append(f.get()).append(',');
+			}
+			return Optional.of(result.append(']').toString());
+		}
+		if (value instanceof Map) {
+			StringBuilder result = new StringBuilder("{");
+			for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+				Optional<String> k = fingerprint(e.getKey(), repository);
+				Optional<String> v = fingerprint(e.getValue(), repository);
+				if (!k.isPresent() || !v.isPresent()) {
+					return Optional.empty();
+				}
+				result.append(k.get()).append('=').append(v.get()).append(',');
+			}
+			return Optional.of(result.append('}').toString());
+		}
+		return ElementRef.of(value, repository)
+				.flatMap(ref -> fingerprinter.fingerprint(value).map(f -> ref + "@" + f));
+	}
+
+	private String templateHash(String path) {
+		try {
+			return HashUtil.hash(Paths.get(path));
+		}
+		catch (IOException e) {
+			return "";
+		}
+	}
+
+	private void load() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a generation manifest file.");
+			}
+			int version = in.readInt();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported generation manifest format version " + version + ".");
+			}
+			previousScriptHash = in.readUTF();
+			int templates = in.readInt();
+			for (int i = 0; i < templates; i++) {
+				previousTemplates.put(in.readUTF(), in.readUTF());
+			}
+			int outputs = in.readInt();
+			for (int i = 0; i < outputs; i++) {
+				String path = in.readUTF();
+				String inputHash = in.readUTF();
+				String contentHash = in.readUTF();
+				long length = in.readLong();
+				long lastModified = in.readLong();
+				int count = in.readInt();
+				Map<ElementRef, String> dependencies = new HashMap<>();
+				for (int j = 0; j < count; j++) {
+					dependencies.put(new ElementRef(in.readUTF(), in.readUTF()), in.readUTF());
+				}
+				previous.put(path, new Output(inputHash, contentHash, length, lastModified, dependencies));
+			}
+		}
+		logger.info("Generation manifest loaded: {} files.", previous.size());
+	}
+
+}
@@ -0,0 +1,236 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.epsilon.common.util.UriUtil;
+import org.eclipse.epsilon.egl.EglFileGeneratingTemplate;
+import org.eclipse.epsilon.egl.exceptions.EglRuntimeException;
+import org.eclipse.epsilon.egl.execute.context.IEglContext;
+import org.eclipse.epsilon.egl.execute.control.ITemplateExecutionListener;
+import org.eclipse.epsilon.egl.merge.output.LocatedRegion;
+import org.eclipse.epsilon.egl.spec.EglTemplateSpecification;
+import org.eclipse.epsilon.egl.traceability.Variable;
+import org.eclipse.epsilon.egl.util.FileUtil;
+import org.eclipse.epsilon.eol.execute.ExecutorFactory;
+import org.eclipse.epsilon.eol.execute.control.IExecutionListener;
+import org.eclipse.epsilon.eol.execute.introspection.recording.IPropertyAccess;
+import org.eclipse.epsilon.eol.execute.introspection.recording.PropertyAccessExecutionListener;
+import org.eclipse.epsilon.eol.execute.introspection.recording.PropertyAccessRecorder;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+
+/**
+ * An {@link EglFileGeneratingTemplate} that uses a {@link GenerationManifest} to skip the
+ * generation of files whose inputs did not change, and the writing of files whose contents did
+ * not change. Only {@link #generate(String, boolean, boolean)} with overwrite is incremental;
+ * appended and patched files are always generated and written. While a file is generated, the
+ * model elements whose properties are read are recorded, with a
+ * {@link PropertyAccessExecutionListener}, so the file is generated again when any of them
+ * changes.
+ * <p>
+ * If the template opted in to memoisation and a {@link TemplateOutputMemo} is set, processing the
+ * template returns the memoised output for its arguments, if any. Without a manifest and a memo
+ * this template behaves as an {@link EglFileGeneratingTemplate}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class IncrementalFileGeneratingTemplate extends EglFileGeneratingTemplate {
+
+	private GenerationManifest manifest;
+	private String inputHash;
+	private PropertyAccessRecorder recorder;
+	private TemplateOutputMemo memo;
+	private String memoisedContents;
+
+	/**
+	 * Instantiates a new incremental file generating template.
+	 *
+	 * @param spec 					the template specification
+	 * @param context 				the context of the template
+	 * @param outputRoot 			the output root
+	 * @param outputRootPath 		the output root path
+	 * @param manifest 				the generation manifest, or null
+	 * @throws Exception if the template can not be created
+	 */
+	public IncrementalFileGeneratingTemplate(EglTemplateSpecification spec, IEglContext context, URI outputRoot,
+		String outputRootPath, GenerationManifest manifest) throws Exception {
+		super(spec, context, outputRoot, outputRootPath);
+		this.manifest = manifest;
+	}
+
+	/**
+	 * Set the generation manifest, e.g. when the template is reused by another factory.
+	 *
+	 * @param manifest 				the generation manifest, or null
+	 */
+	void setManifest(GenerationManifest manifest) {
+		this.manifest = manifest;
+	}
+
+	/**
+	 * Set the template output memo.
+	 *
+	 * @param memo 					the template output memo, or null
+	 */
+	void setOutputMemo(TemplateOutputMemo memo) {
+		this.memo = memo;
+	}
+
+	@Override
+	public String process() throws EglRuntimeException {
+		URI uri = getTemplate().getURI();
+		if (memo == null || uri == null || !memo.isMemoised(uri)) {
+			return super.process();
+		}
+		TemplateOutputMemo.Key key = memo.key(uri, getFormatter(), getTemplate().getVariables());
+		String output = memo.get(key);
+		if (output == null) {
+			output = super.process();
+			memo.put(key, output);
+		}
+		else {
+			memoisedContents = output;
+		}
+		return output;
+	}
+
+	@Override
+	public String merge(String existing) throws EglRuntimeException {
+		if (memoisedContents != null) {
+			// Merging needs the output of an actual execution
+			memoisedContents = null;
+			super.process();
+		}
+		return super.merge(existing);
+	}
+
+	@Override
+	protected boolean isProcessed() {
+		return memoisedContents != null || super.isProcessed();
+	}
+
+	@Override
+	protected String getContents() {
+		return memoisedContents != null ? memoisedContents : super.getContents();
+	}
+
+	@Override
+	public File generate(String path, boolean overwrite, boolean merge) throws EglRuntimeException {
+		inputHash = null;
+		recorder = null;
+		if (manifest == null || !overwrite || isProcessed()) {
+			return super.generate(path, overwrite, merge);
+		}
+		File file = resolveFile(path);
+		Map<String, Object> variables = new HashMap<>();
+		for (Variable variable : getTemplate().getVariables()) {
+			variables.put(variable.getName(), variable.getValue());
+		}
+		Optional<String> hash = manifest.inputHash(getTemplate().getURI(), file, merge, variables,
+				module.getContext().getModelRepository());
+		if (hash.isPresent() && manifest.skip(file, hash.get(), module.getContext().getModelRepository())) {
+			setTarget(file);
+			setTargetName(name(path));
+			try {
+				setCurrentOutputFile(getTemplate().addOutputFile(getTargetName(), UriUtil.fileToUri(file)));
+			}
+			catch (URISyntaxException e) {
+				throw new EglRuntimeException("Could not generate to: " + file, e, module);
+			}
+			for (ITemplateExecutionListener listener : listeners) {
+				listener.finishedGenerating(this, name(path));
+			}
+			return file;
+		}
+		inputHash = hash.orElse(null);
+		// The executor factory of a parallel context is local to the thread
+		ExecutorFactory executorFactory = module.getContext().getExecutorFactory();
+		recorder = new PropertyAccessRecorder();
+		IExecutionListener listener = new PropertyAccessExecutionListener(recorder);
+		recorder.startRecording();
+		executorFactory.addExecutionListener(listener);
+		try {
+			return super.generate(path, overwrite, merge);
+		}
+		finally {
+			executorFactory.removeExecutionListener(listener);
+			recorder.stopRecording();
+		}
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		inputHash = null;
+		recorder = null;
+		memoisedContents = null;
+	}
+
+	@Override
+	protected boolean isOverwriteUnchangedFiles() {
+		// Unchanged files are recorded by write()
+		return manifest != null || super.isOverwriteUnchangedFiles();
+	}
+
+	@Override
+	protected void write() throws IOException, URISyntaxException {
+		if (getTarget() != null && isWriteNeeded()) {
+			writeFile(getTarget(), getNewContents());
+		}
+		setCurrentOutputFile(getTemplate().addOutputFile(getTargetName(), UriUtil.fileToUri(getTarget())));
+		if (getOutputMode() == OutputMode.MERGE) {
+			for (LocatedRegion region : module.getContext().getPartitioner()
+					.partition(getNewContents()).getLocatedRegions()) {
+				getCurrentOutputFile().addProtectedRegion(region.getId(), region.isEnabled(), region.getOffset());
+			}
+		}
+	}
+
+	/**
+	 * Write the contents of a generated file.
+	 *
+	 * @param file 					the file
+	 * @param contents 				the contents
+	 * @throws IOException if the file can not be written
+	 */
+	protected void writeFile(File file, String contents) throws IOException {
+		FileUtil.write(file, contents);
+	}
+
+	/**
+	 * Record the new contents in the manifest and check if they have to be written.
+	 */
+	private boolean isWriteNeeded() {
+		if (manifest == null || getOutputMode() != OutputMode.WRITE && getOutputMode() != OutputMode.MERGE) {
+			return true;
+		}
+		Map<ElementRef, String> dependencies = null;
+		// A memoised output does not record the elements read by the template
+		if (inputHash != null && recorder != null && memoisedContents == null) {
+			List<Object> elements = new ArrayList<>();
+			for (IPropertyAccess access : recorder.getPropertyAccesses().unique()) {
+				elements.add(access.getModelElement());
+			}
+			dependencies = manifest.dependencies(elements, module.getContext().getModelRepository()).orElse(null);
+		}
+		return manifest.record(getTarget(), inputHash, dependencies, getNewContents())
+				&& (super.isOverwriteUnchangedFiles() || !getNewContents().equals(getExistingContents()));
+	}
+
+}
@@ -10,6 +10,14 @@
 package org.eclipse.epsilon.labs.sigma.executors.egl;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +26,8 @@ import java.util.Optional;
 import org.eclipse.epsilon.common.parse.problem.ParseProblem;
 import org.eclipse.epsilon.egl.EglTemplateFactory;
 import org.eclipse.epsilon.egl.EglTemplateFactoryModuleAdapter;
+import org.eclipse.epsilon.egl.execute.context.IEglContext;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 import org.eclipse.epsilon.eol.models.IModel;
 import org.eclipse.epsilon.eol.types.IToolNativeTypeDelegate;
@@ -40,14 +50,16 @@ public class SimpleEglExecutor implements EpsilonLanguageExecutor<Optional<Strin
 	
 	private ModuleWrap delegate;
 
+	private int streamBufferSize = StreamingEglContext.DEFAULT_BUFFER_SIZE;
+
 	/**
 	 * Instantiates a new simple EGL executor that uses an {@link EglTemplateFactoryModuleAdapter}
-	 * (with an {@link EglTemplateFactory}) as its module.
+	 * (with an {@link EglTemplateFactory} that uses a {@link StreamingEglContext}) as its module.
 	 * @see EglTemplateFactoryModuleAdapter
 	 * @see EglTemplateFactory
 	 */
 	public SimpleEglExecutor() {
-		this(new EglTemplateFactoryModuleAdapter(new EglTemplateFactory()));
+		this(streaming(new EglTemplateFactory()));
     }
 
 	/**
@@ -60,6 +72,17 @@ public class SimpleEglExecutor implements EpsilonLanguageExecutor<Optional<Strin
 		this(new EglTemplateFactoryModuleAdapter(templateFactory));
 	}
 	
+	/**
+	 * Instantiates a new simple EGL executor that uses an {@link EglTemplateFactoryModuleAdapter}
+	 * with a {@link CachingTemplateFactory} that takes its templates from the provided cache. The
+	 * template is given back to the cache when the executor is disposed.
+	 *
+	 * @param cache 				the template cache to use
+	 */
+	public SimpleEglExecutor(TemplateCache cache) {
+		this(streaming(new CachingTemplateFactory(cache)));
+	}
+
 	/**
 	 * Instantiates a new simple EGL executor that uses the provided {@link EglTemplateFactoryModuleAdapter}
 	 *
@@ -78,6 +101,92 @@ public class SimpleEglExecutor implements EpsilonLanguageExecutor<Optional<Strin
 		return Optional.ofNullable(r);
 	}
 
+	/**
+	 * Execute the current template, writing its output to the writer as it is generated instead
+	 * of returning it. At most (about) {@link #setStreamBufferSize(int)} characters of the output
+	 * are held in memory, see {@link StreamingOutputBuffer} for the limitations. If the template
+	 * factory does not use a {@link StreamingEglContext}, the output is written once the template
+	 * has been executed. The writer is flushed, but not closed.
+	 *
+	 * @param writer 				the writer
+	 * @throws EolRuntimeException if there is an error executing the template or writing its
+	 * 								output
+	 */
+	public void execute(Writer writer) throws EolRuntimeException {
+		IEglContext context = module.getTemplateFactory().getContext();
+		if (!(context instanceof StreamingEglContext)) {
+			logger.warn("The template factory does not use a StreamingEglContext, the output will not be streamed.");
+			Optional<String> r = execute();
+			try {
+				if (r.isPresent()) {
+					writer.write(r.get());
+				}
+				writer.flush();
+			} catch (IOException e) {
+				throw new EolInternalException(e);
+			}
+			return;
+		}
+		logger.info("Streaming current EGL template.");
+		StreamingEglContext streamingContext = (StreamingEglContext) context;
+		streamingContext.setOutput(writer, streamBufferSize);
+		try {
+			String r = (String) module.execute();
+			if (r != null) {
+				writer.write(r);
+			}
+			writer.flush();
+		} catch (IOException | UncheckedIOException e) {
+			throw new EolInternalException(e);
+		} finally {
+			streamingContext.setOutput(null, streamBufferSize);
+		}
+	}
+
+	/**
+	 * Execute the current template, writing its output (encoded in UTF-8) to the output stream
+	 * as it is generated. The stream is flushed, but not closed.
+	 *
+	 * @param out 					the output stream
+	 * @throws EolRuntimeException if there is an error executing the template or writing its
+	 * 								output
+	 * @see #execute(Writer)
+	 */
+	public void execute(OutputStream out) throws EolRuntimeException {
+		execute(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Execute the current template, writing its output (encoded in UTF-8) to the channel as it
+	 * is generated. The channel is not closed.
+	 *
+	 * @param channel 				the channel
+	 * @throws EolRuntimeException if there is an error executing the template or writing its
+	 * 								output
+	 * @see #execute(Writer)
+	 */
+	public void execute(WritableByteChannel channel) throws EolRuntimeException {
+		execute(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+	}
+
+	/**
+	 * Set the number of characters of output that are buffered before they are written, when
+	 * streaming the output of the template.
+	 *
+	 * @param streamBufferSize 		the buffer size, in characters
+	 */
+	public void setStreamBufferSize(int streamBufferSize) {
+		this.streamBufferSize = streamBufferSize;
+	}
+
+	/**
+	 * Make the template factory use a {@link StreamingEglContext}.
+	 */
+	private static EglTemplateFactory streaming(EglTemplateFactory templateFactory) {
+		templateFactory.setContext(new StreamingEglContext(templateFactory));
+		return templateFactory;
+	}
+
 	@Override
 	public boolean parse(File file) throws Exception {
 		return delegate.parse(file);
@@ -126,6 +235,9 @@ public class SimpleEglExecutor implements EpsilonLanguageExecutor<Optional<Strin
 	@Override
 	public void dispose() {
 		delegate.dispose();
+		if (module.getTemplateFactory() instanceof CachingTemplateFactory) {
+			((CachingTemplateFactory) module.getTemplateFactory()).release();
+		}
 	}
 
 	@Override
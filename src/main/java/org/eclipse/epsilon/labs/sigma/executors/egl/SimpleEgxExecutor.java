@@ -10,6 +10,7 @@
 package org.eclipse.epsilon.labs.sigma.executors.egl;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -19,12 +20,16 @@ import org.eclipse.epsilon.common.parse.problem.ParseProblem;
 import org.eclipse.epsilon.egl.EglTemplateFactory;
 import org.eclipse.epsilon.egl.EgxModule;
 import org.eclipse.epsilon.egl.IEgxModule;
+import org.eclipse.epsilon.egl.concurrent.EgxModuleParallelGenerationRuleAtoms;
+import org.eclipse.epsilon.egl.execute.context.concurrent.EgxContextParallel;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 import org.eclipse.epsilon.eol.models.IModel;
 import org.eclipse.epsilon.eol.types.IToolNativeTypeDelegate;
 import org.eclipse.epsilon.erl.execute.RuleProfiler;
 import org.eclipse.epsilon.labs.sigma.executors.EpsilonLanguageExecutor;
 import org.eclipse.epsilon.labs.sigma.executors.ModuleWrap;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,13 +43,19 @@ public class SimpleEgxExecutor implements EpsilonLanguageExecutor<Object> {
 	private static final Logger logger = LoggerFactory.getLogger(SimpleEgxExecutor.class);
 	private IEgxModule module;
 	private ModuleWrap delegate;
+	private AsyncFileWriter writer;
+	private GenerationManifest manifest;
+	private TemplateOutputMemo memo;
+	private String scriptCode;
+	private String scriptHash;
 	
 	/**
-	 * Instantiates a new simple EGX executor that uses an {@link EgxModule} as its module.
+	 * Instantiates a new simple EGX executor that uses an {@link EgxModule} with a
+	 * {@link CachingTemplateFactory} as its module.
 	 * @see EgxModule
 	 */
 	public SimpleEgxExecutor() {
-		this(new EgxModule());
+		this(new CachingTemplateFactory());
 	}
 	
 	/**
@@ -59,6 +70,45 @@ public class SimpleEgxExecutor implements EpsilonLanguageExecutor<Object> {
 		this(new EgxModule(templateFactory));
 	}
 	
+	/**
+	 * Instantiates a new simple EGX executor that uses an {@link EgxModule} with a
+	 * {@link CachingTemplateFactory} that takes the templates of the generation rules from the
+	 * provided cache. The templates are given back to the cache when the executor is disposed.
+	 *
+	 * @param cache 				the template cache to use
+	 */
+	public SimpleEgxExecutor(TemplateCache cache) {
+		this(new CachingTemplateFactory(cache));
+	}
+
+	/**
+	 * Instantiates a new simple EGX executor that uses an
+	 * {@link EgxModuleParallelGenerationRuleAtoms} as its module, with the provided number of
+	 * threads. Each generation rule invocation is evaluated by one of the threads, which have their
+	 * own template contexts. The generated files are written by an {@link AsyncFileWriter}, so
+	 * template evaluation and disk I/O overlap.
+	 *
+	 * @param parallelism 			the parallelism to use
+	 */
+	public SimpleEgxExecutor(int parallelism) {
+		this(parallelism, new AsyncFileGeneratingTemplateFactory(new AsyncFileWriter()));
+	}
+
+	/**
+	 * Instantiates a new simple EGX executor that uses an
+	 * {@link EgxModuleParallelGenerationRuleAtoms} as its module, with the provided number of
+	 * threads and template factory. The writer of the factory is flushed at the end of each
+	 * execution and closed when the executor is disposed. A {@link TemplateCache} can be set
+	 * on the factory to reuse the templates parsed by other executors.
+	 *
+	 * @param parallelism 			the parallelism to use
+	 * @param templateFactory 		the template factory to use
+	 */
+	public SimpleEgxExecutor(int parallelism, AsyncFileGeneratingTemplateFactory templateFactory) {
+		this(new EgxModuleParallelGenerationRuleAtoms(new EgxContextParallel(templateFactory, parallelism)));
+		writer = templateFactory.getWriter();
+	}
+
 	/**
 	 * Instantiates a new simple EGX executor with the provided {@link IEgxModule}.
 	 * @see IEgxModule
@@ -74,16 +124,91 @@ public class SimpleEgxExecutor implements EpsilonLanguageExecutor<Object> {
 	@Override
 	public Object execute() throws EolRuntimeException {
 		logger.info("Executing EGX Script.");
-		return module.execute();
+		if (manifest != null) {
+			manifest.begin(scriptHash());
+		}
+		if (memo != null) {
+			memo.clear();
+		}
+		Object result = module.execute();
+		try {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (manifest != null) {
+				manifest.save();
+			}
+		} catch (IOException e) {
+			throw new EolInternalException(e);
+		}
+		return result;
+	}
+
+	/**
+	 * The hash of the parsed script and of the modules it imports, computed once per parse.
+	 *
+	 * @return the hash of the script, or null if the script was not parsed by this executor
+	 * @throws EolRuntimeException if the script or an imported module can not be read
+	 */
+	private String scriptHash() throws EolRuntimeException {
+		if (scriptHash == null) {
+			try {
+				scriptHash = HashUtil.hash(module, scriptCode);
+			}
+			catch (IOException e) {
+				throw new EolInternalException(e);
+			}
+		}
+		return scriptHash;
+	}
+
+	/**
+	 * Use a {@link GenerationManifest} to skip the generation of files whose inputs did not
+	 * change since the previous execution, and the writing of files whose contents did not
+	 * change. The manifest is saved at the end of each execution.
+	 *
+	 * @param manifest 				the manifest, or null to generate all files
+	 * @throws IllegalStateException if the template factory of the module is not a
+	 * 								{@link CachingTemplateFactory}
+	 */
+	public void setManifest(GenerationManifest manifest) {
+		EglTemplateFactory templateFactory = module.getContext().getTemplateFactory();
+		if (!(templateFactory instanceof CachingTemplateFactory)) {
+			throw new IllegalStateException("The generation manifest requires a CachingTemplateFactory.");
+		}
+		((CachingTemplateFactory) templateFactory).setManifest(manifest);
+		this.manifest = manifest;
+	}
+
+	/**
+	 * Use a {@link TemplateOutputMemo} to reuse the output of the templates that opted in to
+	 * memoisation (e.g. sub-templates invoked many times with the same arguments). The memo is
+	 * cleared at the start of each execution, so outputs are only reused within an execution.
+	 *
+	 * @param memo 					the memo, or null to execute all template invocations
+	 * @throws IllegalStateException if the template factory of the module is not a
+	 * 								{@link CachingTemplateFactory}
+	 */
+	public void setOutputMemo(TemplateOutputMemo memo) {
+		EglTemplateFactory templateFactory = module.getContext().getTemplateFactory();
+		if (!(templateFactory instanceof CachingTemplateFactory)) {
+			throw new IllegalStateException("The template output memo requires a CachingTemplateFactory.");
+		}
+		((CachingTemplateFactory) templateFactory).setOutputMemo(memo);
+		this.memo = memo;
 	}
 
 	@Override
 	public boolean parse(File file) throws Exception {
+		scriptCode = null;
+		scriptHash = null;
 		return delegate.parse(file);
 	}
 
 	@Override
 	public boolean parse(String code) throws Exception {
+		scriptCode = code;
+		scriptHash = null;
 		return delegate.parse(code);
 	}
 
@@ -124,7 +249,18 @@ public class SimpleEgxExecutor implements EpsilonLanguageExecutor<Object> {
 
 	@Override
 	public void dispose() {
+		EglTemplateFactory templateFactory = module.getContext().getTemplateFactory();
 		delegate.dispose();
+		if (templateFactory instanceof CachingTemplateFactory) {
+			((CachingTemplateFactory) templateFactory).release();
+		}
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				logger.error("Unable to write the generated files.", e);
+			}
+		}
 	}
 
 	@Override
@@ -0,0 +1,78 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.Writer;
+
+import org.eclipse.epsilon.egl.EglTemplate;
+import org.eclipse.epsilon.egl.EglTemplateFactory;
+import org.eclipse.epsilon.egl.execute.context.EglContext;
+import org.eclipse.epsilon.egl.output.IOutputBuffer;
+
+/**
+ * An {@link EglContext} that can stream the output of the template it executes. When an output
+ * writer is set, the base template (i.e. the first template entered) gets a
+ * {@link StreamingOutputBuffer}, so its output is written while it is generated. The templates
+ * it invokes (e.g. with {@code TemplateFactory.load('...').process()}) get regular buffers, as
+ * their output is returned to the caller. Without an output writer this context behaves as an
+ * {@link EglContext}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class StreamingEglContext extends EglContext {
+
+	/** The default number of characters buffered before the output is written. */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private Writer writer;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private int depth;
+
+	/**
+	 * Instantiates a new streaming EGL context.
+	 *
+	 * @param templateFactory 		the template factory
+	 */
+	public StreamingEglContext(EglTemplateFactory templateFactory) {
+		super(templateFactory);
+	}
+
+	/**
+	 * Set the writer the output of the base template is written to.
+	 *
+	 * @param writer 				the writer, or null to stop streaming
+	 * @param bufferSize 			the number of characters buffered before the output is written
+	 */
+	public void setOutput(Writer writer, int bufferSize) {
+		this.writer = writer;
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public void enter(EglTemplate template) {
+		depth++;
+		super.enter(template);
+	}
+
+	@Override
+	public void exit() {
+		super.exit();
+		depth--;
+	}
+
+	@Override
+	public IOutputBuffer newOutputBuffer() {
+		if (writer != null && depth == 1) {
+			return new StreamingOutputBuffer(this, writer, bufferSize);
+		}
+		return super.newOutputBuffer();
+	}
+
+}
@@ -0,0 +1,158 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import org.eclipse.epsilon.egl.EglTemplate;
+import org.eclipse.epsilon.egl.exceptions.EglRuntimeException;
+import org.eclipse.epsilon.egl.execute.context.IEglContext;
+import org.eclipse.epsilon.egl.formatter.CompositeFormatter;
+import org.eclipse.epsilon.egl.formatter.Formatter;
+import org.eclipse.epsilon.egl.formatter.NullFormatter;
+import org.eclipse.epsilon.egl.merge.output.RegionType;
+import org.eclipse.epsilon.egl.output.OutputBuffer;
+
+/**
+ * An {@link OutputBuffer} that writes its contents to a {@link Writer} as the template is
+ * executed, so the buffer only holds the output generated since the last write. Once the buffer
+ * holds more than the given number of characters, all its complete lines are formatted with the
+ * formatter of the current template and written. The last (incomplete) line is kept, so
+ * indentation works as usual, and nothing is written while a protected or controlled region is
+ * open. At the end of the execution, {@link #toString()} returns the output that has not been
+ * written.
+ * <p>
+ * As a consequence:
+ * <ul>
+ * <li>Formatters are applied to chunks of complete lines, so formatters that need the complete
+ * output (e.g. code formatters) should not be used.</li>
+ * <li>{@link #chop(int)} can not remove output that has already been written.</li>
+ * </ul>
+ * Lines and offsets are counted from the start of the output, not the buffer.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class StreamingOutputBuffer extends OutputBuffer {
+
+	private final Writer writer;
+	private final int bufferSize;
+	private long written;
+	private int writtenLines;
+	private int openRegions;
+
+	/**
+	 * Instantiates a new streaming output buffer.
+	 *
+	 * @param context 				the context
+	 * @param writer 				the writer the output is written to
+	 * @param bufferSize 			the number of characters after which complete lines are written
+	 */
+	public StreamingOutputBuffer(IEglContext context, Writer writer, int bufferSize) {
+		super(context);
+		this.writer = writer;
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public void print(Object object) {
+		super.print(object);
+		stream();
+	}
+
+	@Override
+	public void printdyn(Object object) {
+		super.printdyn(object);
+		stream();
+	}
+
+	@Override
+	public void println() {
+		super.println();
+		stream();
+	}
+
+	@Override
+	public String startLocate(String id, boolean enabled, RegionType regionType) throws EglRuntimeException {
+		String result = super.startLocate(id, enabled, regionType);
+		openRegions++;
+		return result;
+	}
+
+	@Override
+	public String startLocate(String id, String startComment, String endComment, boolean enabled,
+		RegionType regionType) throws EglRuntimeException {
+		String result = super.startLocate(id, startComment, endComment, enabled, regionType);
+		openRegions++;
+		return result;
+	}
+
+	@Override
+	public String stopLocate() throws EglRuntimeException {
+		String result = super.stopLocate();
+		openRegions = Math.max(0, openRegions - 1);
+		return result;
+	}
+
+	@Override
+	public int getCurrentLineNumber() {
+		return writtenLines + super.getCurrentLineNumber();
+	}
+
+	@Override
+	public int getOffset() {
+		return (int) (written + super.getOffset());
+	}
+
+	@Override
+	public void formatWith(Formatter formatter) {
+		if (written == 0) {
+			super.formatWith(formatter);
+		}
+		else {
+			replaceContentsWith(format(buffer.toString(), formatter));
+		}
+	}
+
+	/**
+	 * Write the complete lines in the buffer, if it is full and no region is open.
+	 */
+	private void stream() {
+		if (openRegions > 0 || buffer.length() < bufferSize) {
+			return;
+		}
+		int end = buffer.lastIndexOf("\n") + 1;
+		if (end == 0) {
+			return;
+		}
+		String chunk = buffer.substring(0, end);
+		buffer.delete(0, end);
+		written += end;
+		for (int i = 0; i < end; i++) {
+			if (chunk.charAt(i) == '\n') {
+				writtenLines++;
+			}
+		}
+		EglTemplate template = context.getCurrentTemplate();
+		try {
+			writer.write(format(chunk, template == null ? null : template.getFormatter()));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private String format(String text, Formatter formatter) {
+		return new CompositeFormatter(formatter == null ? new NullFormatter() : formatter,
+				getOutdentationFormatter()).format(text);
+	}
+
+}
@@ -0,0 +1,231 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.epsilon.egl.EglTemplate;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The TemplateCache keeps parsed EGL templates so they can be reused by other
+ * {@link CachingTemplateFactory factories} (and hence other executors) instead of being parsed
+ * again. Templates are keyed by their URI and the hash of their contents: each time a template is
+ * requested, the file is checked for changes (last modified time and size) and, if it changed,
+ * read and hashed again. Templates parsed from previous contents are discarded.
+ * <p>
+ * A cached template is used by one factory at a time: factories take templates from the cache
+ * and give them back when they are released (see {@link CachingTemplateFactory#release()}).
+ * Templates are only reused by factories with the same configuration (see
+ * {@link CachingTemplateFactory#cacheKey()}). The number of idle templates is bounded, the
+ * templates of the least recently used URIs are evicted first. The cache is thread safe and can
+ * be shared by any number of factories.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class TemplateCache {
+
+	/** The default maximum number of idle templates. */
+	public static final int DEFAULT_MAX_TEMPLATES = 256;
+
+	private static final Logger logger = LoggerFactory.getLogger(TemplateCache.class);
+
+	private final int maxTemplates;
+	private final LinkedHashMap<URI, Source> sources = new LinkedHashMap<>(16, 0.75f, true);
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private int idle;
+
+	/**
+	 * The contents of a template, as read at a given time.
+	 */
+	static final class Version {
+		final String code;
+		final String hash;
+
+		Version(String code, String hash) {
+			this.code = code;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * A cached template source and its idle parsed templates, grouped by factory configuration.
+	 */
+	private static final class Source {
+		long lastModified;
+		long length;
+		Version version;
+		final Map<Object, Deque<EglTemplate>> templates = new HashMap<>();
+	}
+
+	/**
+	 * Instantiates a new template cache with the default maximum number of idle templates.
+	 */
+	public TemplateCache() {
+		this(DEFAULT_MAX_TEMPLATES);
+	}
+
+	/**
+	 * Instantiates a new template cache.
+	 *
+	 * @param maxTemplates 			the maximum number of idle templates
+	 */
+	public TemplateCache(int maxTemplates) {
+		if (maxTemplates < 0) {
+			throw new IllegalArgumentException("The maximum number of templates can not be negative.");
+		}
+		this.maxTemplates = maxTemplates;
+	}
+
+	/**
+	 * The number of templates taken from the cache since it was created.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of templates that had to be parsed since the cache was created.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of idle templates in the cache.
+	 *
+	 * @return the number of templates
+	 */
+	public synchronized int size() {
+		return idle;
+	}
+
+	/**
+	 * Remove all templates from the cache.
+	 */
+	public synchronized void clear() {
+		sources.clear();
+		idle = 0;
+	}
+
+	/**
+	 * Get the current contents of a template, reading them again if the file changed since
+	 * they were last read. Resources that are not files are only read once.
+	 *
+	 * @param uri 					the URI of the template
+	 * @return the contents
+	 * @throws IOException if the template can not be read
+	 */
+	Version version(URI uri) throws IOException {
+		File file = "file".equals(uri.getScheme()) ? new File(uri) : null;
+		long lastModified = file == null ? 0 : file.lastModified();
+		long length = file == null ? 0 : file.length();
+		synchronized (this) {
+			Source source = sources.get(uri);
+			if (source != null && source.lastModified == lastModified && source.length == length) {
+				return source.version;
+			}
+		}
+		String code = file == null ? read(uri) : new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		Version version = new Version(code, HashUtil.hash(code));
+		synchronized (this) {
+			Source source = sources.computeIfAbsent(uri, u -> new Source());
+			if (source.version != null && !source.version.hash.equals(version.hash)) {
+				logger.debug("Template {} changed, discarding its cached templates.", uri);
+				for (Deque<EglTemplate> templates : source.templates.values()) {
+					idle -= templates.size();
+				}
+				source.templates.clear();
+			}
+			source.lastModified = lastModified;
+			source.length = length;
+			source.version = version;
+		}
+		return version;
+	}
+
+	/**
+	 * Take an idle template parsed from the given version of the template.
+	 *
+	 * @return the template, or null if there is none
+	 */
+	synchronized EglTemplate take(URI uri, Version version, Object key) {
+		Source source = sources.get(uri);
+		Deque<EglTemplate> templates = source == null || source.version != version ? null : source.templates.get(key);
+		if (templates == null || templates.isEmpty()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		idle--;
+		hits.incrementAndGet();
+		return templates.pop();
+	}
+
+	/**
+	 * Give back a template. The template is discarded if it was parsed from a previous version of
+	 * the template.
+	 */
+	synchronized void offer(URI uri, Version version, Object key, EglTemplate template) {
+		Source source = sources.get(uri);
+		if (source == null || source.version != version || maxTemplates == 0) {
+			return;
+		}
+		source.templates.computeIfAbsent(key, k -> new ArrayDeque<>()).push(template);
+		idle++;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Source> it = sources.values().iterator();
+		while (idle > maxTemplates && it.hasNext()) {
+			Source source = it.next();
+			for (Deque<EglTemplate> templates : source.templates.values()) {
+				idle -= templates.size();
+			}
+			it.remove();
+		}
+	}
+
+	/**
+	 * Read the contents of a template.
+	 */
+	static String read(URI uri) throws IOException {
+		try (InputStream in = uri.toURL().openStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.egl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.eclipse.epsilon.egl.formatter.Formatter;
+import org.eclipse.epsilon.egl.traceability.Variable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The TemplateOutputMemo keeps the output of EGL templates, so a template invoked again with the
+ * same arguments (e.g. a sub-template that renders a type declaration or a header) returns the
+ * previous output instead of being executed again.
+ * <p>
+ * Templates opt in to memoisation with a {@code [* @memoise *]} comment. A memoised template must
+ * only depend on its arguments (i.e. the variables it is populated with), and must not have side
+ * effects, such as generating files. Outputs are keyed by the URI of the template, its formatter
+ * and its arguments: primitive values and strings are compared by value, any other value (e.g. a
+ * model element) by identity. Templates without a URI (e.g. prepared from code) are not memoised.
+ * <p>
+ * The number of outputs is bounded, the least recently used outputs are evicted first. The memo is
+ * thread safe, so it can be used by parallel EGX; two threads that invoke a template with the same
+ * arguments at the same time can both execute it. The memo should be cleared between executions,
+ * as the models may have changed.
+ *
+ * @see CachingTemplateFactory#setOutputMemo(TemplateOutputMemo)
+ * @author Horacio Hoyos Rodriguez
+ */
+public class TemplateOutputMemo {
+
+	/** The default maximum number of outputs. */
+	public static final int DEFAULT_MAX_OUTPUTS = 4096;
+
+	private static final Pattern MARKER = Pattern.compile("\\[\\*\\s*@memoi[sz]e\\s*\\*\\]");
+
+	private static final Logger logger = LoggerFactory.getLogger(TemplateOutputMemo.class);
+
+	private final Map<Key, String> outputs;
+	private final Map<URI, Boolean> memoised = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * The identity of a template invocation.
+	 */
+	static final class Key {
+		final URI uri;
+		final String formatter;
+		final List<Object> arguments;
+		final int hash;
+
+		Key(URI uri, String formatter, List<Object> arguments) {
+			this.uri = uri;
+			this.formatter = formatter;
+			this.arguments = arguments;
+			this.hash = 31 * (31 * uri.hashCode() + formatter.hashCode()) + arguments.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && uri.equals(other.uri) && formatter.equals(other.formatter)
+					&& arguments.equals(other.arguments);
+		}
+	}
+
+	/**
+	 * An argument compared by identity.
+	 */
+	private static final class Identity {
+		final Object value;
+
+		Identity(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(value);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Identity && ((Identity) obj).value == value;
+		}
+	}
+
+	/**
+	 * Instantiates a new template output memo with the default maximum number of outputs.
+	 */
+	public TemplateOutputMemo() {
+		this(DEFAULT_MAX_OUTPUTS);
+	}
+
+	/**
+	 * Instantiates a new template output memo.
+	 *
+	 * @param maxOutputs 			the maximum number of outputs
+	 */
+	public TemplateOutputMemo(int maxOutputs) {
+		if (maxOutputs < 0) {
+			throw new IllegalArgumentException("The maximum number of outputs can not be negative.");
+		}
+		this.outputs = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+				return size() > maxOutputs;
+			}
+		};
+	}
+
+	/**
+	 * The number of template invocations that returned a memoised output.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of memoised template invocations that had to be executed.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of outputs in the memo.
+	 *
+	 * @return the number of outputs
+	 */
+	public int size() {
+		synchronized (outputs) {
+			return outputs.size();
+		}
+	}
+
+	/**
+	 * Remove all outputs from the memo.
+	 */
+	public void clear() {
+		synchronized (outputs) {
+			outputs.clear();
+		}
+		memoised.clear();
+	}
+
+	/**
+	 * Check if a template opted in to memoisation. The template is read the first time it is
+	 * checked.
+	 */
+	boolean isMemoised(URI uri) {
+		return memoised.computeIfAbsent(uri, u -> {
+			try {
+				return MARKER.matcher(TemplateCache.read(u)).find();
+			}
+			catch (IOException e) {
+				logger.debug("Unable to read template {}, it will not be memoised.", u, e);
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * The key of an invocation of a template.
+	 */
+	Key key(URI uri, Formatter formatter, Collection<Variable> variables) {
+		List<Object> arguments = new ArrayList<>(variables.size() * 2);
+		for (Variable variable : variables) {
+			arguments.add(variable.getName());
+			arguments.add(argument(variable.getValue()));
+		}
+		return new Key(uri, formatter == null ? "" : formatter.getClass().getName(), arguments);
+	}
+
+	String get(Key key) {
+		String output;
+		synchronized (outputs) {
+			output = outputs.get(key);
+		}
+		if (output == null) {
+			misses.incrementAndGet();
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		return output;
+	}
+
+	void put(Key key, String output) {
+		if (output == null) {
+			return;
+		}
+		synchronized (outputs) {
+			outputs.put(key, output);
+		}
+	}
+
+	private static Object argument(Object value) {
+		if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+				|| value instanceof Character || value instanceof Enum) {
+			return value;
+		}
+		return new Identity(value);
+	}
+
+}
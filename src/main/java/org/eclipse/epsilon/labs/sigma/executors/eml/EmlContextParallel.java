@@ -0,0 +1,89 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.eml;
+
+import org.eclipse.epsilon.ecl.trace.MatchTrace;
+import org.eclipse.epsilon.eml.IEmlModule;
+import org.eclipse.epsilon.eml.execute.context.IEmlContext;
+import org.eclipse.epsilon.eml.strategy.IMergingStrategy;
+import org.eclipse.epsilon.eml.trace.MergeTrace;
+import org.eclipse.epsilon.etl.execute.context.concurrent.EtlContextParallel;
+
+/**
+ * A parallel EML context, i.e. an {@link EtlContextParallel} with the match trace, merge trace
+ * and merging strategy of an {@link org.eclipse.epsilon.eml.execute.context.EmlContext}. Each
+ * thread has its own frame stack, so the bodies of merge rules can be executed concurrently by a
+ * {@link ParallelMergingStrategy}, which is the default merging strategy of this context.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class EmlContextParallel extends EtlContextParallel implements IEmlContext {
+
+	private MatchTrace matchTrace = new MatchTrace();
+	private MergeTrace mergeTrace = new MergeTrace();
+	private IMergingStrategy mergingStrategy = new ParallelMergingStrategy();
+
+	/**
+	 * Instantiates a new parallel EML context that uses the default parallelism.
+	 */
+	public EmlContextParallel() {
+		super();
+	}
+
+	/**
+	 * Instantiates a new parallel EML context.
+	 *
+	 * @param parallelism 			the number of threads to use
+	 */
+	public EmlContextParallel(int parallelism) {
+		super(parallelism);
+	}
+
+	@Override
+	public IMergingStrategy getMergingStrategy() {
+		return mergingStrategy;
+	}
+
+	@Override
+	public void setMergingStrategy(IMergingStrategy mergingStrategy) {
+		this.mergingStrategy = mergingStrategy;
+	}
+
+	@Override
+	public MatchTrace getMatchTrace() {
+		return matchTrace;
+	}
+
+	@Override
+	public void setMatchTrace(MatchTrace matchTrace) {
+		this.matchTrace = matchTrace;
+	}
+
+	@Override
+	public MergeTrace getMergeTrace() {
+		return mergeTrace;
+	}
+
+	@Override
+	public void setMergeTrace(MergeTrace mergeTrace) {
+		this.mergeTrace = mergeTrace;
+	}
+
+	@Override
+	public IEmlModule getModule() {
+		return (IEmlModule) super.getModule();
+	}
+
+	@Override
+	public void setModule(IEmlModule module) {
+		super.setModule(module);
+	}
+
+}
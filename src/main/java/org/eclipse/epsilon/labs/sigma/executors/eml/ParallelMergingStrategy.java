@@ -0,0 +1,224 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.eml;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.eclipse.epsilon.common.module.ModuleElement;
+import org.eclipse.epsilon.common.util.CollectionUtil;
+import org.eclipse.epsilon.ecl.trace.Match;
+import org.eclipse.epsilon.eml.dom.MergeRule;
+import org.eclipse.epsilon.eml.execute.context.IEmlContext;
+import org.eclipse.epsilon.eml.strategy.DefaultMergingStrategy;
+import org.eclipse.epsilon.eol.dom.Parameter;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.concurrent.IEolContextParallel;
+import org.eclipse.epsilon.erl.execute.context.IErlContext;
+
+/**
+ * The ParallelMergingStrategy merges the models in two phases, like the
+ * {@link org.eclipse.epsilon.labs.sigma.executors.etl.ParallelTransformationStrategy}:
+ * <ol>
+ * <li>The rules that apply to each match of the match trace are found and the target elements
+ * of all the (non lazy) merges are created and added to the merge trace. This phase is
+ * sequential, so the merge trace is in match order.</li>
+ * <li>The bodies of the merge rules are executed. If the context is a parallel context (e.g. an
+ * {@link EmlContextParallel}), the merges are distributed over its threads.</li>
+ * </ol>
+ * {@code equivalent()} is resolved from an index of the merges of each matched element built in
+ * the first phase, instead of searching the merge trace. Lazy merges and the transformation of
+ * the elements that have not been matched are serialised. Once all merges are done, the
+ * unmatched elements are transformed sequentially, as done by the
+ * {@link DefaultMergingStrategy}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class ParallelMergingStrategy extends DefaultMergingStrategy {
+
+	private final Object lazyLock = new Object();
+	private final Map<Object, List<Merge>> merges = new IdentityHashMap<>();
+
+	/**
+	 * A merge rule application.
+	 */
+	private static final class Merge {
+		final Match match;
+		final MergeRule rule;
+		volatile Collection<Object> targets;
+
+		Merge(Match match, MergeRule rule) {
+			this.match = match;
+			this.rule = rule;
+		}
+	}
+
+	@Override
+	public void mergeModels(IEmlContext context) throws EolRuntimeException {
+		this.context = context;
+		merges.clear();
+		excluded = new Excluded(merges);
+		List<Merge> pending = createMerges(context);
+		executeMerges(pending, context);
+		transformModels(context);
+	}
+
+	/**
+	 * The first phase of the merge: find the rules of each matching pair and create the targets of
+	 * the non lazy merges. Only the elements with at least one merge are indexed, so the others
+	 * are transformed.
+	 */
+	private List<Merge> createMerges(IEmlContext context) throws EolRuntimeException {
+		List<Merge> pending = new ArrayList<>();
+		for (Match match : context.getMatchTrace()) {
+			if (!match.isMatching()) {
+				continue;
+			}
+			List<Merge> matchMerges = new ArrayList<>();
+			for (MergeRule rule : getRulesFor(match, context)) {
+				Merge merge = new Merge(match, rule);
+				if (!rule.isLazy(context)) {
+					merge.targets = createTargets(rule, context);
+					context.getMergeTrace().add(match, merge.targets, rule);
+					pending.add(merge);
+				}
+				matchMerges.add(merge);
+			}
+			if (matchMerges.isEmpty()) {
+				continue;
+			}
+			merges.computeIfAbsent(match.getLeft(), e -> new ArrayList<>()).addAll(matchMerges);
+			if (match.getRight() != match.getLeft()) {
+				merges.computeIfAbsent(match.getRight(), e -> new ArrayList<>()).addAll(matchMerges);
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * The second phase of the merge: execute the bodies of the merge rules.
+	 */
+	private void executeMerges(List<Merge> pending, IEmlContext context) throws EolRuntimeException {
+		if (context instanceof IEolContextParallel && ((IEolContextParallel) context).getParallelism() > 1) {
+			List<Callable<Void>> jobs = new ArrayList<>(pending.size());
+			for (Merge merge : pending) {
+				jobs.add(() -> {
+					merge.rule.executeSuperRulesAndBody(merge.match, merge.targets, context);
+					return null;
+				});
+			}
+			((IEolContextParallel) context).executeAll(context.getModule(), jobs);
+		}
+		else {
+			for (Merge merge : pending) {
+				merge.rule.executeSuperRulesAndBody(merge.match, merge.targets, context);
+			}
+		}
+	}
+
+	@Override
+	public Collection<?> getEquivalents(Object source, IErlContext context, List<String> rules)
+		throws EolRuntimeException {
+		List<Merge> sourceMerges = merges.get(source);
+		if (sourceMerges == null) {
+			synchronized (lazyLock) {
+				return super.getEquivalents(source, context, rules);
+			}
+		}
+		List<Object> result = CollectionUtil.createDefaultList();
+		for (Merge merge : sourceMerges) {
+			if (rules == null || rules.isEmpty() || rules.contains(merge.rule.getName())) {
+				Collection<Object> targets = targets(merge);
+				if (merge.rule.isPrimary(this.context)) {
+					result.addAll(0, targets);
+				}
+				else {
+					result.addAll(targets);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the targets of a merge. If the merge was not done in the first phase (i.e. the rule is
+	 * lazy) it is done now.
+	 */
+	@SuppressWarnings("unchecked")
+	private Collection<Object> targets(Merge merge) throws EolRuntimeException {
+		Collection<Object> targets = merge.targets;
+		if (targets != null) {
+			return targets;
+		}
+		synchronized (lazyLock) {
+			if (merge.targets == null) {
+				merge.targets = (Collection<Object>) merge.rule.merge(merge.match, context);
+			}
+			return merge.targets;
+		}
+	}
+
+	/**
+	 * Create the target elements of a merge, without executing the rule body. The target
+	 * parameters of a merge rule are the parameters that follow its left and right parameters.
+	 */
+	private static Collection<Object> createTargets(MergeRule rule, IEmlContext context) throws EolRuntimeException {
+		List<Object> targets = CollectionUtil.createDefaultList();
+		int parameters = 0;
+		for (ModuleElement child : rule.getChildren()) {
+			if (child instanceof Parameter && parameters++ >= 2) {
+				targets.add(((Parameter) child).getType(context).createInstance());
+			}
+		}
+		return targets;
+	}
+
+	/**
+	 * The elements excluded from the transformation, i.e. the merged elements. Lookups use the
+	 * index of merges instead of a linear search.
+	 */
+	private static final class Excluded extends AbstractList<Object> {
+
+		private final Map<Object, List<Merge>> merges;
+		private Object[] elements;
+
+		Excluded(Map<Object, List<Merge>> merges) {
+			this.merges = merges;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return merges.containsKey(o);
+		}
+
+		@Override
+		public Object get(int index) {
+			return elements()[index];
+		}
+
+		@Override
+		public int size() {
+			return merges.size();
+		}
+
+		private Object[] elements() {
+			if (elements == null || elements.length != merges.size()) {
+				elements = merges.keySet().toArray();
+			}
+			return elements;
+		}
+	}
+
+}
@@ -16,13 +16,14 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.eclipse.epsilon.common.parse.problem.ParseProblem;
-import org.eclipse.epsilon.eml.execute.context.EmlContext;
+import org.eclipse.epsilon.ecl.trace.MatchTrace;
+import org.eclipse.epsilon.eml.EmlModule;
+import org.eclipse.epsilon.eml.IEmlModule;
+import org.eclipse.epsilon.eml.execute.context.IEmlContext;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 import org.eclipse.epsilon.eol.models.IModel;
 import org.eclipse.epsilon.eol.types.IToolNativeTypeDelegate;
 import org.eclipse.epsilon.erl.execute.RuleProfiler;
-import org.eclipse.epsilon.etl.EtlModule;
-import org.eclipse.epsilon.etl.IEtlModule;
 import org.eclipse.epsilon.labs.sigma.executors.EpsilonLanguageExecutor;
 import org.eclipse.epsilon.labs.sigma.executors.ModuleWrap;
 import org.slf4j.Logger;
@@ -30,40 +31,97 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The EML executor.
+ * <p>
+ * The merge rules are applied to the matches of a {@link MatchTrace}, which can be provided
+ * directly (e.g. the result of an earlier ECL execution or a cached trace) or computed by a
+ * matcher the first time the executor is executed. In both cases the trace is kept, so several
+ * executions (e.g. of different merge scripts) share a single comparison of the models.
  *
  * @author Horacio Hoyos Rodriguez
  */
 public class SimpleEmlExecutor implements EpsilonLanguageExecutor<EmlTraces> {
 
     private static final Logger logger = LoggerFactory.getLogger(SimpleEmlExecutor.class);
-	private IEtlModule module;
+	private IEmlModule module;
 	private ModuleWrap delegate;
+	private MatchTrace matchTrace;
+	private EpsilonLanguageExecutor<MatchTrace> matcher;
 	
     /**
-     * Instantiates a new simple EML executor that uses an {@link EtlModule} as its module.
-     * @see EtlModule
+     * Instantiates a new simple EML executor that uses an {@link EmlModule} as its module.
+     * @see EmlModule
      */
     public SimpleEmlExecutor() {
-    	this(new EtlModule());
+    	this(new EmlModule());
+    }
+
+    /**
+     * Instantiates a new simple EML executor that uses an {@link EmlModule} with an
+     * {@link EmlContextParallel} as its module, with the provided number of threads. Merges are
+     * distributed over the threads using a {@link ParallelMergingStrategy}.
+     *
+     * @param parallelism 			the parallelism to use
+     * @see ParallelMergingStrategy
+     */
+    public SimpleEmlExecutor(int parallelism) {
+    	this(new EmlModule(new EmlContextParallel(parallelism)));
     }
     
     /**
-     * Instantiates a new simple EML executor that uses the provided {@link IEtlModule} as its module.
-     * @see IEtlModule
+     * Instantiates a new simple EML executor that uses the provided {@link IEmlModule} as its module.
+     * @see IEmlModule
      *
      * @param mdl 					the module
      */
-    public SimpleEmlExecutor(IEtlModule mdl) {
-    	logger.info("Creating the EtlExecutor");
+    public SimpleEmlExecutor(IEmlModule mdl) {
+    	logger.info("Creating the EmlExecutor");
     	module = mdl;
     	delegate = new ModuleWrap(module);
     }
     
 	@Override
 	public EmlTraces execute() throws EolRuntimeException {
+		IEmlContext context = module.getContext();
+		if (matchTrace == null && matcher != null) {
+			logger.info("Matching the models.");
+			matchTrace = matcher.execute();
+		}
+		if (matchTrace != null) {
+			context.setMatchTrace(matchTrace);
+		}
+		logger.info("Executing EML module.");
 		module.execute();
-		EmlContext c = (EmlContext) module.getContext();
-		return new EmlTraces(c.getMatchTrace(), c.getMergeTrace());
+		return new EmlTraces(context.getMatchTrace(), context.getMergeTrace());
+	}
+
+	/**
+	 * Merge the matches of the provided trace, instead of the matches of the trace of the
+	 * module's context. The trace is used by all subsequent executions.
+	 *
+	 * @param matchTrace 			the match trace, null to compute it with the matcher, if any
+	 */
+	public void setMatchTrace(MatchTrace matchTrace) {
+		this.matchTrace = matchTrace;
+	}
+
+	/**
+	 * Set the executor used to compute the match trace (e.g. a SimpleEclExecutor with the same
+	 * models). The matcher is only executed if no match trace has been set or computed, so the
+	 * models are compared once and the trace is reused by all subsequent executions.
+	 *
+	 * @param matcher 				the matcher
+	 */
+	public void setMatcher(EpsilonLanguageExecutor<MatchTrace> matcher) {
+		this.matcher = matcher;
+	}
+
+	/**
+	 * Get the match trace that is merged, if it has been set or computed.
+	 *
+	 * @return the match trace
+	 */
+	public Optional<MatchTrace> getMatchTrace() {
+		return Optional.ofNullable(matchTrace);
 	}
 
 	@Override
@@ -0,0 +1,354 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.epl;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.Variable;
+import org.eclipse.epsilon.eol.execute.context.concurrent.IEolContextParallel;
+import org.eclipse.epsilon.eol.models.ModelRepository;
+import org.eclipse.epsilon.eol.types.EolModelElementType;
+import org.eclipse.epsilon.eol.types.EolType;
+import org.eclipse.epsilon.epl.EplModule;
+import org.eclipse.epsilon.epl.dom.Pattern;
+import org.eclipse.epsilon.epl.dom.Role;
+import org.eclipse.epsilon.epl.execute.PatternMatch;
+import org.eclipse.epsilon.epl.execute.context.IEplContext;
+import org.eclipse.epsilon.epl.execute.context.concurrent.EplContextParallel;
+import org.eclipse.epsilon.epl.execute.model.PatternMatchModel;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementFingerprinter;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The IncrementalEplModule matches the patterns like the {@link EplModule}, but distributes the
+ * candidate combinations of elements of each pattern over the threads of a parallel context, and
+ * can reuse the matches of the previous execution for patterns whose elements did not change.
+ * <p>
+ * The candidate combinations of a pattern are generated in the calling thread, in batches, and
+ * each batch is matched by one of the threads. Matches are returned in the same order as the
+ * {@link EplModule} would.
+ * <p>
+ * In incremental mode (see {@link #setIncremental(ElementFingerprinter, String)}), the module
+ * keeps the matches of each pattern together with a digest of the elements of the types of its
+ * roles, i.e. their ids and fingerprints. A pattern is only matched again if any of these
+ * elements was added, removed or changed, otherwise its previous matches are bound to the current
+ * elements and reused. As the pattern is not evaluated, the fingerprints must cover everything the
+ * pattern reads, e.g. the ids of the referenced elements, and the {@code onmatch} and
+ * {@code nomatch} blocks of reused patterns are not executed ({@code do} blocks are). Patterns
+ * whose roles are not of model element types, or whose matches bind elements without an id (e.g.
+ * matches of other patterns), are always matched, as are all patterns when matching is repeated
+ * while matches are found.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class IncrementalEplModule extends EplModule {
+
+	/** The number of candidate combinations matched by each job. */
+	private static final int BATCH_SIZE = 64;
+
+	/** The number of jobs, per thread, generated before they are executed. */
+	private static final int JOBS_PER_THREAD = 16;
+
+	/** Marks a null role binding, e.g. of an optional role. */
+	private static final Object NULL = new Object();
+
+	private static final Logger logger = LoggerFactory.getLogger(IncrementalEplModule.class);
+
+	private ElementFingerprinter fingerprinter;
+	private String scriptHash;
+	private String stateScriptHash;
+	private final Map<String, PatternState> states = new HashMap<>();
+	private final Map<String, Optional<String>> typeDigests = new HashMap<>();
+	private int reused;
+
+	/**
+	 * The matches of a pattern in the previous execution.
+	 */
+	private static final class PatternState {
+		final String digest;
+		final List<Map<String, Object>> bindings;
+
+		PatternState(String digest, List<Map<String, Object>> bindings) {
+			this.digest = digest;
+			this.bindings = bindings;
+		}
+	}
+
+	/**
+	 * Instantiates a new incremental EPL module that matches the candidate combinations
+	 * sequentially.
+	 */
+	public IncrementalEplModule() {
+		super();
+	}
+
+	/**
+	 * Instantiates a new incremental EPL module that distributes the candidate combinations over
+	 * the provided number of threads.
+	 *
+	 * @param parallelism 			the parallelism to use
+	 */
+	public IncrementalEplModule(int parallelism) {
+		super(new EplContextParallel(parallelism));
+	}
+
+	/**
+	 * Reuse the matches of the previous execution for the patterns whose elements did not change.
+	 * If the script changes, all the previous matches are discarded.
+	 *
+	 * @param fingerprinter 		the fingerprinter used for the model elements, null to disable
+	 * 								incremental matching
+	 * @param scriptHash 			the hash of the script
+	 */
+	public void setIncremental(ElementFingerprinter fingerprinter, String scriptHash) {
+		this.fingerprinter = fingerprinter;
+		this.scriptHash = scriptHash;
+		if (fingerprinter == null) {
+			states.clear();
+		}
+	}
+
+	/**
+	 * The number of patterns whose previous matches were reused in the last execution.
+	 *
+	 * @return the number of reused patterns
+	 */
+	public int getReusedPatterns() {
+		return reused;
+	}
+
+	@Override
+	protected void preMatch(PatternMatchModel model) throws EolRuntimeException {
+		super.preMatch(model);
+		typeDigests.clear();
+		reused = 0;
+		if (scriptHash == null || !scriptHash.equals(stateScriptHash)) {
+			states.clear();
+			stateScriptHash = scriptHash;
+		}
+	}
+
+	@Override
+	public Collection<PatternMatch> match(Pattern pattern) throws EolRuntimeException {
+		Optional<String> digest = isIncremental() ? digest(pattern) : Optional.empty();
+		if (digest.isPresent()) {
+			Collection<PatternMatch> previous = reuse(pattern, digest.get());
+			if (previous != null) {
+				logger.debug("Pattern {} did not change, reusing {} matches.", pattern.getName(), previous.size());
+				reused++;
+				return previous;
+			}
+		}
+		Collection<PatternMatch> matches = isParallel() ? matchParallel(pattern) : super.match(pattern);
+		if (digest.isPresent()) {
+			record(pattern, digest.get(), matches);
+		}
+		else {
+			states.remove(pattern.getName());
+		}
+		return matches;
+	}
+
+	private boolean isIncremental() {
+		return fingerprinter != null && !isRepeatWhileMatches();
+	}
+
+	private boolean isParallel() {
+		IEplContext context = getContext();
+		return context instanceof IEolContextParallel && ((IEolContextParallel) context).getParallelism() > 1;
+	}
+
+	/**
+	 * Match the candidate combinations of the pattern in batches, distributed over the threads
+	 * of the context.
+	 */
+	private Collection<PatternMatch> matchParallel(Pattern pattern) throws EolRuntimeException {
+		IEolContextParallel context = (IEolContextParallel) getContext();
+		int maxJobs = context.getParallelism() * JOBS_PER_THREAD;
+		Collection<PatternMatch> matches = new LinkedList<>();
+		Iterator<? extends Collection<? extends Iterable<?>>> candidates = getCandidates(pattern);
+		while (candidates.hasNext()) {
+			List<Callable<List<PatternMatch>>> jobs = new ArrayList<>(maxJobs);
+			while (candidates.hasNext() && jobs.size() < maxJobs) {
+				List<List<List<Object>>> batch = new ArrayList<>(BATCH_SIZE);
+				while (candidates.hasNext() && batch.size() < BATCH_SIZE) {
+					batch.add(copy(candidates.next()));
+				}
+				jobs.add(() -> {
+					List<PatternMatch> result = new ArrayList<>();
+					for (List<List<Object>> combination : batch) {
+						matchCombination(combination, pattern).ifPresent(result::add);
+					}
+					return result;
+				});
+			}
+			for (List<PatternMatch> result : context.executeAll(this, jobs)) {
+				matches.addAll(result);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Copy a candidate combination, as the combination generator can reuse its lists.
+	 */
+	private static List<List<Object>> copy(Collection<? extends Iterable<?>> combination) {
+		List<List<Object>> copy = new ArrayList<>(combination.size());
+		for (Iterable<?> values : combination) {
+			List<Object> list = new ArrayList<>();
+			values.forEach(list::add);
+			copy.add(list);
+		}
+		return copy;
+	}
+
+	/**
+	 * Compute the digest of the elements of the types of the pattern's roles.
+	 *
+	 * @return the digest, or an empty Optional if the pattern can not be matched incrementally
+	 */
+	private Optional<String> digest(Pattern pattern) throws EolRuntimeException {
+		MessageDigest digest = HashUtil.newDigest();
+		HashUtil.update(digest, pattern.getName());
+		for (Role role : pattern.getRoles()) {
+			EolType type = role.getType(getContext());
+			if (!(type instanceof EolModelElementType)) {
+				return Optional.empty();
+			}
+			Optional<String> typeDigest = typeDigests.computeIfAbsent(type.toString(),
+					k -> typeDigest((EolModelElementType) type));
+			if (!typeDigest.isPresent()) {
+				return Optional.empty();
+			}
+			HashUtil.update(digest, String.join(",", role.getNames()));
+			HashUtil.update(digest, typeDigest.get());
+		}
+		return Optional.of(HashUtil.toHex(digest.digest()));
+	}
+
+	private Optional<String> typeDigest(EolModelElementType type) {
+		ModelRepository repository = getContext().getModelRepository();
+		List<String> elements = new ArrayList<>();
+		for (Object element : type.getAllOfKind()) {
+			Optional<ElementRef> ref = ElementRef.of(element, repository);
+			Optional<String> fingerprint = fingerprinter.fingerprint(element);
+			if (!ref.isPresent() || !fingerprint.isPresent()) {
+				return Optional.empty();
+			}
+			elements.add(ref.get() + "@" + fingerprint.get());
+		}
+		elements.sort(null);
+		MessageDigest digest = HashUtil.newDigest();
+		HashUtil.update(digest, type.toString());
+		for (String element : elements) {
+			HashUtil.update(digest, element);
+		}
+		return Optional.of(HashUtil.toHex(digest.digest()));
+	}
+
+	/**
+	 * Bind the previous matches of the pattern to the current elements.
+	 *
+	 * @return the matches, or null if the pattern changed or an element can not be found
+	 */
+	private Collection<PatternMatch> reuse(Pattern pattern, String digest) {
+		PatternState state = states.get(pattern.getName());
+		if (state == null || !state.digest.equals(digest)) {
+			return null;
+		}
+		ModelRepository repository = getContext().getModelRepository();
+		Collection<PatternMatch> matches = new LinkedList<>();
+		for (Map<String, Object> bindings : state.bindings) {
+			PatternMatch match = new PatternMatch(pattern);
+			for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+				Optional<Object> value = resolve(binding.getValue(), repository);
+				if (!value.isPresent()) {
+					return null;
+				}
+				match.putRoleBinding(Variable.createReadOnlyVariable(binding.getKey(),
+						value.get() == NULL ? null : value.get()));
+			}
+			matches.add(match);
+		}
+		return matches;
+	}
+
+	/**
+	 * Keep the matches of the pattern, with their elements as references.
+	 */
+	private void record(Pattern pattern, String digest, Collection<PatternMatch> matches) {
+		ModelRepository repository = getContext().getModelRepository();
+		List<Map<String, Object>> bindings = new ArrayList<>(matches.size());
+		for (PatternMatch match : matches) {
+			Map<String, Object> refs = new LinkedHashMap<>();
+			for (Map.Entry<String, Object> binding : match.getRoleBindings().entrySet()) {
+				Optional<Object> ref = reference(binding.getValue(), repository);
+				if (!ref.isPresent()) {
+					states.remove(pattern.getName());
+					return;
+				}
+				refs.put(binding.getKey(), ref.get());
+			}
+			bindings.add(refs);
+		}
+		states.put(pattern.getName(), new PatternState(digest, bindings));
+	}
+
+	private static Optional<Object> reference(Object value, ModelRepository repository) {
+		if (value == null) {
+			return Optional.of(NULL);
+		}
+		if (value instanceof Collection) {
+			List<ElementRef> refs = new ArrayList<>();
+			for (Object item : (Collection<?>) value) {
+				Optional<ElementRef> ref = ElementRef.of(item, repository);
+				if (!ref.isPresent()) {
+					return Optional.empty();
+				}
+				refs.add(ref.get());
+			}
+			return Optional.of(refs);
+		}
+		return ElementRef.of(value, repository).map(ref -> (Object) ref);
+	}
+
+	private static Optional<Object> resolve(Object ref, ModelRepository repository) {
+		if (ref == NULL) {
+			return Optional.of(NULL);
+		}
+		if (ref instanceof List) {
+			List<Object> values = new ArrayList<>();
+			for (Object item : (List<?>) ref) {
+				Optional<Object> value = ((ElementRef) item).resolve(repository);
+				if (!value.isPresent()) {
+					return Optional.empty();
+				}
+				values.add(value.get());
+			}
+			return Optional.of(values);
+		}
+		return ((ElementRef) ref).resolve(repository);
+	}
+
+}
@@ -0,0 +1,203 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.epl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.epsilon.common.parse.problem.ParseProblem;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.models.IModel;
+import org.eclipse.epsilon.eol.types.IToolNativeTypeDelegate;
+import org.eclipse.epsilon.epl.EplModule;
+import org.eclipse.epsilon.epl.IEplModule;
+import org.eclipse.epsilon.epl.execute.model.PatternMatchModel;
+import org.eclipse.epsilon.erl.execute.RuleProfiler;
+import org.eclipse.epsilon.labs.sigma.executors.EpsilonLanguageExecutor;
+import org.eclipse.epsilon.labs.sigma.executors.ModuleWrap;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementFingerprinter;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The EPL executor. The result of the execution is the model of the pattern matches.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class SimpleEplExecutor implements EpsilonLanguageExecutor<PatternMatchModel> {
+
+	private static final Logger logger = LoggerFactory.getLogger(SimpleEplExecutor.class);
+
+	private final IEplModule module;
+
+	private final ModuleWrap delegate;
+
+	private ElementFingerprinter fingerprinter;
+
+	private String scriptCode;
+
+	private String scriptHash;
+
+	/**
+	 * Instantiates a new simple EPL executor that uses a sequential {@link IncrementalEplModule}
+	 * as its module, which matches the patterns as an {@link EplModule} does.
+	 * @see IncrementalEplModule
+	 */
+	public SimpleEplExecutor() {
+		this(new IncrementalEplModule());
+	}
+
+	/**
+	 * Instantiates a new simple EPL executor that uses an {@link IncrementalEplModule} as its
+	 * module, with the provided number of threads. The candidate combinations of elements of
+	 * each pattern are distributed over the threads.
+	 * @see IncrementalEplModule
+	 *
+	 * @param parallelism 			the parallelism to use
+	 */
+	public SimpleEplExecutor(int parallelism) {
+		this(new IncrementalEplModule(parallelism));
+	}
+
+	/**
+	 * Instantiates a new simple EPL executor that uses the provided {@link IEplModule}.
+	 * @see IEplModule
+	 *
+	 * @param mdl 					the EPL module to use
+	 */
+	public SimpleEplExecutor(IEplModule mdl) {
+		logger.info("Creating the EplExecutor");
+		module = mdl;
+		delegate = new ModuleWrap(module);
+	}
+
+	@Override
+	public PatternMatchModel execute() throws EolRuntimeException {
+		logger.info("Executing EPL module.");
+		if (module instanceof IncrementalEplModule) {
+			((IncrementalEplModule) module).setIncremental(fingerprinter, fingerprinter == null ? null : scriptHash());
+		}
+		return (PatternMatchModel) module.execute();
+	}
+
+	/**
+	 * The hash of the parsed script and of the modules it imports, computed once per parse.
+	 *
+	 * @return the hash of the script, or null if the script was not parsed by this executor
+	 * @throws EolRuntimeException if the script or an imported module can not be read
+	 */
+	private String scriptHash() throws EolRuntimeException {
+		if (scriptHash == null) {
+			try {
+				scriptHash = HashUtil.hash(module, scriptCode);
+			}
+			catch (IOException e) {
+				throw new EolInternalException(e);
+			}
+		}
+		return scriptHash;
+	}
+
+	/**
+	 * Keep the matches of each execution, and in the following executions only match again the
+	 * patterns whose elements changed, as detected with the fingerprinter. Matches are only kept
+	 * if the script was parsed by this executor, as they are discarded when the script changes.
+	 *
+	 * @param fingerprinter 		the fingerprinter used for the model elements, null to match all
+	 * 								the patterns
+	 * @throws IllegalStateException if the module is not an {@link IncrementalEplModule}
+	 * @see IncrementalEplModule
+	 */
+	public void setIncremental(ElementFingerprinter fingerprinter) {
+		if (!(module instanceof IncrementalEplModule)) {
+			throw new IllegalStateException("Incremental matching requires an IncrementalEplModule.");
+		}
+		this.fingerprinter = fingerprinter;
+	}
+
+	/**
+	 * Repeat the matching while matches are found, e.g. when the {@code do} blocks of the patterns
+	 * modify the models.
+	 *
+	 * @param repeatWhileMatches 	if true, repeat while matches are found
+	 * @param maxLoops 				the maximum number of repetitions
+	 */
+	public void setRepeatWhileMatches(boolean repeatWhileMatches, int maxLoops) {
+		module.setRepeatWhileMatches(repeatWhileMatches);
+		module.setMaxLoops(maxLoops);
+	}
+
+	@Override
+	public boolean parse(File file) throws Exception {
+		scriptCode = null;
+		scriptHash = null;
+		return delegate.parse(file);
+	}
+
+	@Override
+	public boolean parse(String code) throws Exception {
+		scriptCode = code;
+		scriptHash = null;
+		return delegate.parse(code);
+	}
+
+	@Override
+	public List<ParseProblem> getParseProblems() {
+		return delegate.getParseProblems();
+	}
+
+	@Override
+	public void addModels(Collection<IModel> models) {
+		delegate.addModels(models);
+	}
+
+	@Override
+	public void addParamters(Map<String, ?> parameters) {
+		delegate.addParamters(parameters);
+	}
+
+	@Override
+	public void addNativeTypeDelegates(Collection<IToolNativeTypeDelegate> nativeDelegates) {
+		delegate.addNativeTypeDelegates(nativeDelegates);
+	}
+
+	@Override
+	public Optional<RuleProfiler> getRuleProfiler() {
+		return delegate.getRuleProfiler();
+	}
+
+	@Override
+	public void disposeModelRepository() {
+		delegate.disposeModelRepository();
+	}
+
+	@Override
+	public void clearModelRepository() {
+		delegate.clearModelRepository();
+	}
+
+	@Override
+	public void dispose() {
+		delegate.dispose();
+	}
+
+	@Override
+	public void preProcess() { }
+
+	@Override
+	public void postProcess() {	}
+
+}
@@ -0,0 +1,91 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and encoding utilities of the binary trace format. A trace file is a serialization of
+ * an EtlSimpleTrace model (see EtlSimpleTrace.ecore): a header followed by a record per
+ * TraceLink and an end record with the number of links.
+ * <pre>
+ * trace   := MAGIC VERSION nsURI link* END count:long
+ * link    := LINK description:symbol sources:elements targets:elements fingerprint:string
+ * element := model:symbol id:string
+ * symbol  := index:varint (string, if the index is new)
+ * </pre>
+ * Model names and descriptions (rule names) are repeated often, so they are written once and
+ * then referred to by index. Version 2 adds the fingerprint of the source element (see
+ * {@link org.eclipse.epsilon.labs.sigma.executors.util.ElementFingerprinter}), null if it was
+ * not computed; version 1 traces can still be read.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+final class BinaryTraceFormat {
+
+	/** "ETLT" */
+	static final int MAGIC = 0x45544C54;
+	static final int FORMAT_VERSION = 2;
+	static final String NS_URI = "http://www.eclipse.org/epsilon/etl/EtlSimpleTrace";
+	static final byte END = 0;
+	static final byte LINK = 1;
+
+	private BinaryTraceFormat() { }
+
+	static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 28) {
+				throw new IOException("Malformed trace, variable length integer is too long.");
+			}
+			b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Strings are written as their UTF-8 length plus one (0 for null) followed by the bytes.
+	 */
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = readVarInt(in) - 1;
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
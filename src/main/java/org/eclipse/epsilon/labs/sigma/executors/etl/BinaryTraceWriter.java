@@ -0,0 +1,146 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.epsilon.eol.models.ModelRepository;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementFingerprinter;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+
+/**
+ * A {@link TraceLinkWriter} that writes the trace in a compact binary format that can be read
+ * back with {@link PersistedTrace}. Output is buffered in a fixed size buffer, so memory use
+ * does not depend on the size of the trace.
+ * <p>
+ * Elements are identified by the name of their model and their element id. Elements that are
+ * not owned by a model of the repository, or that have no id, are written with a null id and
+ * can not be resolved when the trace is loaded. If an {@link ElementFingerprinter} is provided,
+ * the fingerprint of each source element is also written, so the trace can be used for an
+ * incremental transformation (see {@link IncrementalTransformationStrategy}).
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class BinaryTraceWriter implements TraceLinkWriter {
+
+	/** The default buffer size, in bytes. */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final DataOutputStream out;
+	private final ElementFingerprinter fingerprinter;
+	private final Map<String, Integer> symbols = new HashMap<>();
+	private ModelRepository repository;
+	private long count;
+
+	/**
+	 * Instantiates a new binary trace writer.
+	 *
+	 * @param channel 				the channel to write to
+	 */
+	public BinaryTraceWriter(WritableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Instantiates a new binary trace writer.
+	 *
+	 * @param channel 				the channel to write to
+	 * @param bufferSize 			the size of the buffer, in bytes
+	 */
+	public BinaryTraceWriter(WritableByteChannel channel, int bufferSize) {
+		this(channel, bufferSize, null);
+	}
+
+	/**
+	 * Instantiates a new binary trace writer that also writes the fingerprints of the source
+	 * elements.
+	 *
+	 * @param channel 				the channel to write to
+	 * @param bufferSize 			the size of the buffer, in bytes
+	 * @param fingerprinter 		the fingerprinter for the source elements, null to not write them
+	 */
+	public BinaryTraceWriter(WritableByteChannel channel, int bufferSize, ElementFingerprinter fingerprinter) {
+		this.channel = channel;
+		this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), bufferSize));
+		this.fingerprinter = fingerprinter;
+	}
+
+	@Override
+	public synchronized void begin(ModelRepository repository) throws IOException {
+		this.repository = repository;
+		symbols.clear();
+		count = 0;
+		out.writeInt(BinaryTraceFormat.MAGIC);
+		out.writeInt(BinaryTraceFormat.FORMAT_VERSION);
+		BinaryTraceFormat.writeString(out, BinaryTraceFormat.NS_URI);
+	}
+
+	@Override
+	public synchronized void write(Object source, Collection<?> targets, String description) throws IOException {
+		out.writeByte(BinaryTraceFormat.LINK);
+		writeSymbol(description);
+		BinaryTraceFormat.writeVarInt(out, 1);
+		writeElement(source);
+		BinaryTraceFormat.writeVarInt(out, targets.size());
+		for (Object target : targets) {
+			writeElement(target);
+		}
+		BinaryTraceFormat.writeString(out, fingerprinter == null ? null : fingerprinter.fingerprint(source).orElse(null));
+		count++;
+	}
+
+	@Override
+	public synchronized void end() throws IOException {
+		out.writeByte(BinaryTraceFormat.END);
+		out.writeLong(count);
+		out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.flush();
+		channel.close();
+	}
+
+	private void writeElement(Object element) throws IOException {
+		Optional<ElementRef> ref = ElementRef.of(element, repository);
+		if (ref.isPresent()) {
+			writeSymbol(ref.get().getModelName());
+			BinaryTraceFormat.writeString(out, ref.get().getElementId());
+		}
+		else {
+			writeSymbol(null);
+			BinaryTraceFormat.writeString(out, null);
+		}
+	}
+
+	private void writeSymbol(String value) throws IOException {
+		String key = value == null ? "" : value;
+		Integer index = symbols.get(key);
+		if (index != null) {
+			BinaryTraceFormat.writeVarInt(out, index);
+			return;
+		}
+		index = symbols.size();
+		symbols.put(key, index);
+		BinaryTraceFormat.writeVarInt(out, index);
+		BinaryTraceFormat.writeString(out, key);
+	}
+
+}
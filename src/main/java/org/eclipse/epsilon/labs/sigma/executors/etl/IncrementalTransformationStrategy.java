@@ -0,0 +1,257 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.epsilon.common.util.CollectionUtil;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.models.IModel;
+import org.eclipse.epsilon.eol.models.ModelRepository;
+import org.eclipse.epsilon.etl.dom.TransformationRule;
+import org.eclipse.epsilon.etl.execute.context.IEtlContext;
+import org.eclipse.epsilon.etl.trace.Transformation;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementFingerprinter;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The IncrementalTransformationStrategy updates the target model of a previous transformation,
+ * using the trace of that transformation (written by a {@link BinaryTraceWriter} with an
+ * {@link ElementFingerprinter}). The target models must be loaded with their previous contents
+ * (i.e. read on load) and the source and target models must assign stable element ids (e.g.
+ * xmi:ids or UUIDs). Positional ids, such as EMF fragment paths, change when elements are added or
+ * removed, so a trace with such ids is rejected.
+ * <p>
+ * For each (non lazy) rule application the previous link of the source element is looked up:
+ * <ul>
+ * <li>If there is no link, the source was <b>added</b>: new targets are created and the rule
+ * body is executed.</li>
+ * <li>If some of the targets of the link no longer exist, the remaining ones are deleted, new
+ * targets are created and the rule body is executed. The source is counted as <b>changed</b>.</li>
+ * <li>If the fingerprint of the source differs from the one in the trace, the source was
+ * <b>changed</b>: the existing targets are reused and the rule body is executed again, updating
+ * them in place.</li>
+ * <li>Otherwise the source is <b>unchanged</b>: the existing targets are added to the index, so
+ * they are found by {@code equivalent()}, but the rule body is not executed.</li>
+ * </ul>
+ * The targets of previous links that were not matched (i.e. the source was <b>removed</b> or is
+ * no longer transformed by the rule) are deleted from the target models, unless they are reused
+ * by another link.
+ * <p>
+ * Rule bodies are executed as in the {@link ParallelTransformationStrategy}, so a parallel
+ * context distributes the updates over its threads. Rule bodies must assign (rather than
+ * append to) the target features, otherwise re-executing them on existing targets duplicates
+ * values. Unchanged sources are not re-transformed even if elements they depend on changed, so
+ * the fingerprint should include the ids of referenced elements.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class IncrementalTransformationStrategy extends ParallelTransformationStrategy {
+
+	private static final Logger logger = LoggerFactory.getLogger(IncrementalTransformationStrategy.class);
+
+	private final PersistedTrace previousTrace;
+	private final ElementFingerprinter fingerprinter;
+	private final List<Transformation> pending = new ArrayList<>();
+	private int added;
+	private int changed;
+	private int unchanged;
+	private int removed;
+
+	/**
+	 * Instantiates a new incremental transformation strategy.
+	 *
+	 * @param previousTrace 		the trace of the previous transformation
+	 * @param fingerprinter 		the fingerprinter used to write the previous trace
+	 */
+	public IncrementalTransformationStrategy(PersistedTrace previousTrace, ElementFingerprinter fingerprinter) {
+		this.previousTrace = previousTrace;
+		this.fingerprinter = fingerprinter;
+	}
+
+	@Override
+	protected void createLinks(IEtlContext context) throws EolRuntimeException {
+		added = changed = unchanged = removed = 0;
+		pending.clear();
+		ModelRepository repository = context.getModelRepository();
+		checkStableIds();
+		Set<PersistedTraceLink> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Object> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+		// Targets are deleted once all the reused targets are known
+		List<PersistedTraceLink> replaced = new ArrayList<>();
+		for (TransformationRule rule : getExecutableRules(context)) {
+			for (Object source : rule.getAllInstances(context)) {
+				if (!rule.shouldBeTransformed(source, getExcluded(), context, true)) {
+					continue;
+				}
+				Optional<PersistedTraceLink> link = ElementRef.of(source, repository)
+						.flatMap(ref -> previousTrace.getLink(ref, rule.getName()));
+				Collection<Object> targets = link.isPresent() ? resolve(link.get().getTargets(), repository) : null;
+				boolean execute;
+				if (!link.isPresent()) {
+					targets = createTargets(rule, context);
+					execute = true;
+					added++;
+				}
+				else if (targets == null) {
+					// Some of the previous targets no longer exist: replace all of them
+					matched.add(link.get());
+					replaced.add(link.get());
+					targets = createTargets(rule, context);
+					execute = true;
+					changed++;
+				}
+				else {
+					matched.add(link.get());
+					reused.addAll(targets);
+					execute = !fingerprinter.fingerprint(source)
+							.map(f -> f.equals(link.get().getFingerprint()))
+							.orElse(false);
+					if (execute) {
+						changed++;
+					}
+					else {
+						unchanged++;
+					}
+				}
+				addLink(source, targets, rule, context);
+				if (execute) {
+					pending.add(new Transformation(source, targets, rule));
+				}
+			}
+		}
+		for (PersistedTraceLink link : replaced) {
+			delete(link.getTargets(), reused, repository);
+		}
+		for (PersistedTraceLink link : previousTrace.getLinks()) {
+			if (!matched.contains(link)) {
+				delete(link.getTargets(), reused, repository);
+				removed++;
+			}
+		}
+		logger.info("Incremental transformation: {} added, {} changed, {} unchanged, {} removed",
+				added, changed, unchanged, removed);
+	}
+
+	/**
+	 * Execute the bodies of the added and changed rule applications only.
+	 */
+	@Override
+	protected void executeLinks(IEtlContext context) throws EolRuntimeException {
+		try {
+			executeTransformations(pending, context);
+		}
+		finally {
+			pending.clear();
+		}
+	}
+
+	/**
+	 * The number of rule applications of the last transformation whose source was added.
+	 *
+	 * @return the number of added rule applications
+	 */
+	public int getAdded() {
+		return added;
+	}
+
+	/**
+	 * The number of rule applications of the last transformation whose source changed, or some of
+	 * whose previous targets no longer existed and were created again.
+	 *
+	 * @return the number of changed rule applications
+	 */
+	public int getChanged() {
+		return changed;
+	}
+
+	/**
+	 * The number of rule applications of the last transformation that were not executed.
+	 *
+	 * @return the number of unchanged rule applications
+	 */
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	/**
+	 * The number of previous rule applications whose targets were deleted.
+	 *
+	 * @return the number of removed rule applications
+	 */
+	public int getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Resolve the targets of a previous link.
+	 *
+	 * @return the targets, or null if any of them no longer exists
+	 */
+	private Collection<Object> resolve(List<ElementRef> refs, ModelRepository repository) {
+		List<Object> targets = CollectionUtil.createDefaultList();
+		for (ElementRef ref : refs) {
+			Optional<Object> target = ref.resolve(repository);
+			if (!target.isPresent()) {
+				return null;
+			}
+			targets.add(target.get());
+		}
+		return targets;
+	}
+
+	/**
+	 * Check that the elements of the previous trace have stable ids, so that they resolve to the
+	 * same elements.
+	 *
+	 * @throws EolRuntimeException if an element has no id or a positional id
+	 */
+	private void checkStableIds() throws EolRuntimeException {
+		for (PersistedTraceLink link : previousTrace.getLinks()) {
+			checkStableIds(link.getSources());
+			checkStableIds(link.getTargets());
+		}
+	}
+
+	private static void checkStableIds(List<ElementRef> refs) throws EolRuntimeException {
+		for (ElementRef ref : refs) {
+			String id = ref.getElementId();
+			if (id == null || id.startsWith("/")) {
+				throw new EolRuntimeException(String.format("The previous trace has the element %s, that "
+						+ "has no stable id. Incremental transformations require models that assign stable ids "
+						+ "to their elements (e.g. xmi:ids or UUIDs).", ref));
+			}
+		}
+	}
+
+	/**
+	 * Delete the elements of the previous targets that still exist, unless they are the targets
+	 * of a current link.
+	 */
+	private void delete(List<ElementRef> refs, Set<Object> reused, ModelRepository repository)
+		throws EolRuntimeException {
+		for (ElementRef ref : refs) {
+			Optional<Object> target = ref.resolve(repository);
+			if (target.isPresent() && !reused.contains(target.get())) {
+				IModel model = repository.getModelByNameSafe(ref.getModelName());
+				model.deleteElement(target.get());
+			}
+		}
+	}
+
+}
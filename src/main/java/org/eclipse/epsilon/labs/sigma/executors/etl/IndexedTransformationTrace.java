@@ -0,0 +1,110 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.epsilon.etl.dom.TransformationRule;
+import org.eclipse.epsilon.etl.trace.Transformation;
+import org.eclipse.epsilon.etl.trace.TransformationTrace;
+
+/**
+ * A {@link TransformationTrace} backed by a {@link TransformationIndex}, that holds the (non
+ * lazy) rule applications, and by the trace of the context, that holds the lazy ones. The
+ * transformations of the index are only created when they are retrieved, so the trace does not
+ * keep a Transformation per rule application unless all the transformations are retrieved, in
+ * which case they are kept until the index or the lazy rule applications change.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class IndexedTransformationTrace extends TransformationTrace {
+
+	private final TransformationIndex index;
+	private final TransformationTrace trace;
+	private List<Transformation> transformations;
+	private int transformationsModCount;
+	private int transformationsLazy;
+
+	/**
+	 * Instantiates a new indexed transformation trace.
+	 *
+	 * @param index 				the index of the rule applications
+	 * @param trace 				the trace of the lazy rule applications
+	 */
+	public IndexedTransformationTrace(TransformationIndex index, TransformationTrace trace) {
+		this.index = index;
+		this.trace = trace;
+	}
+
+	@Override
+	public void add(Object source, Collection<Object> targets, TransformationRule rule) {
+		trace.add(source, targets, rule);
+	}
+
+	@Override
+	public synchronized List<Transformation> getTransformations() {
+		Collection<Transformation> lazy = trace.getTransformations();
+		if (transformations != null && transformationsModCount == index.getModCount()
+				&& transformationsLazy == lazy.size()) {
+			return transformations;
+		}
+		List<Transformation> result = new ArrayList<>(index.size() + lazy.size());
+		for (TransformationRule rule : index.getRules()) {
+			for (int i = 0; i < index.size(rule); i++) {
+				result.add(new Transformation(index.getLinkSource(rule, i), index.getLinkTargets(rule, i), rule));
+			}
+		}
+		result.addAll(lazy);
+		transformations = Collections.unmodifiableList(result);
+		transformationsModCount = index.getModCount();
+		transformationsLazy = lazy.size();
+		return transformations;
+	}
+
+	@Override
+	public List<Transformation> getTransformations(Object source) {
+		List<Transformation> result = new ArrayList<>(1);
+		for (TransformationRule rule : index.getRules()) {
+			List<Object> targets = index.getTargets(rule, source);
+			if (targets != null) {
+				result.add(new Transformation(source, targets, rule));
+			}
+		}
+		Collection<Transformation> lazy = trace.getTransformations(source);
+		if (lazy != null) {
+			result.addAll(lazy);
+		}
+		return result;
+	}
+
+	@Override
+	public Collection<?> getTransformationTargets(Object source, String ruleName) {
+		List<Object> result = new ArrayList<>();
+		for (TransformationRule rule : index.getRules()) {
+			if (ruleName == null || ruleName.equals(rule.getName())) {
+				List<Object> targets = index.getTargets(rule, source);
+				if (targets != null) {
+					result.addAll(targets);
+				}
+			}
+		}
+		result.addAll(trace.getTransformationTargets(source, ruleName));
+		return result;
+	}
+
+	@Override
+	public boolean containsTransformedBy(TransformationRule rule) {
+		return index.size(rule) > 0 || trace.containsTransformedBy(rule);
+	}
+
+}
@@ -0,0 +1,370 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.eclipse.epsilon.common.util.CollectionUtil;
+import org.eclipse.epsilon.eol.dom.Parameter;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.Variable;
+import org.eclipse.epsilon.eol.execute.context.concurrent.IEolContextParallel;
+import org.eclipse.epsilon.erl.dom.ExtensibleNamedRule;
+import org.eclipse.epsilon.erl.execute.context.IErlContext;
+import org.eclipse.epsilon.etl.dom.TransformationRule;
+import org.eclipse.epsilon.etl.execute.context.IEtlContext;
+import org.eclipse.epsilon.etl.strategy.AbstractTransformationStrategy;
+import org.eclipse.epsilon.etl.trace.Transformation;
+
+/**
+ * The ParallelTransformationStrategy transforms the models in two phases:
+ * <ol>
+ * <li>The target elements of all the (non lazy) rule applications are created and added to the
+ * {@link TransformationIndex}. This phase is sequential, so the trace is deterministic: links are
+ * in rule order and, for each rule, in the order of the source elements.</li>
+ * <li>The bodies of the rules are executed, in batches. If the context is a parallel context, the
+ * rule applications of each batch are distributed over its threads.</li>
+ * </ol>
+ * As all targets exist before any body is executed, {@code equivalent()} is resolved from the
+ * index without modifying it. Only lazy rules create targets during the second phase; lazy
+ * transformations are serialised so that an element is never transformed twice by the same rule.
+ * <p>
+ * The index replaces the transformation trace of the context, which only holds the lazy rule
+ * applications. The {@link IndexedTransformationTrace} of both, returned by {@link #getTrace()},
+ * is given to the script as {@code transTrace}.
+ * <p>
+ * If a {@link TraceLinkWriter} is set, the links are written after the rule bodies have been
+ * executed, so the ids of the targets are final (e.g. EMF fragment paths, that depend on the
+ * containment set by the bodies): the links of the index in rule order, followed by the lazy links
+ * created so far. Lazy links created afterwards, e.g. by post blocks, are written as they are
+ * created.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class ParallelTransformationStrategy extends AbstractTransformationStrategy {
+
+	/** The number of rule applications whose bodies are executed together. */
+	static final int BATCH_SIZE = 8192;
+
+	private final Object lazyLock = new Object();
+	private final TransformationIndex index = new TransformationIndex();
+	private IndexedTransformationTrace trace;
+	private volatile TraceLinkWriter traceLinkWriter;
+	private boolean lazyLinksWritten;
+
+	/**
+	 * Set a writer to write the trace links of the next transformation.
+	 *
+	 * @param traceLinkWriter 		the trace link writer, null to disable writing the links
+	 */
+	public void setTraceLinkWriter(TraceLinkWriter traceLinkWriter) {
+		synchronized (lazyLock) {
+			this.traceLinkWriter = traceLinkWriter;
+			lazyLinksWritten = false;
+		}
+	}
+
+	@Override
+	public void transformModels(IEtlContext context) throws EolRuntimeException {
+		index.clear();
+		trace = new IndexedTransformationTrace(index, context.getTransformationTrace());
+		context.getFrameStack().putGlobal(Variable.createReadOnlyVariable("transTrace", trace));
+		synchronized (lazyLock) {
+			lazyLinksWritten = false;
+		}
+		createLinks(context);
+		executeLinks(context);
+		if (traceLinkWriter != null) {
+			for (TransformationRule rule : index.getRules()) {
+				for (int i = 0; i < index.size(rule); i++) {
+					writeLink(index.getLinkSource(rule, i), index.getLinkTargets(rule, i), rule);
+				}
+			}
+		}
+		writeLazyLinks(context);
+	}
+
+	/**
+	 * Get the index of the (non lazy) rule applications of the last transformation, which can be
+	 * used to look up targets faster than with the transformation trace.
+	 *
+	 * @return the index
+	 */
+	public TransformationIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Get the trace of the last transformation, i.e. the rule applications of the index and the
+	 * lazy rule applications of the context's trace.
+	 *
+	 * @return the trace, null if no transformation was executed
+	 */
+	public IndexedTransformationTrace getTrace() {
+		return trace;
+	}
+
+	/**
+	 * The second phase of the transformation: execute the bodies of the rule applications of the
+	 * index, in batches.
+	 *
+	 * @param context 				the ETL context
+	 * @throws EolRuntimeException if a rule body fails
+	 */
+	protected void executeLinks(IEtlContext context) throws EolRuntimeException {
+		for (TransformationRule rule : new ArrayList<>(index.getRules())) {
+			executeLinks(rule, context);
+		}
+	}
+
+	/**
+	 * Execute the bodies of the rule applications of a rule in the index, in batches.
+	 *
+	 * @param rule 					the rule
+	 * @param context 				the ETL context
+	 * @throws EolRuntimeException if a rule body fails
+	 */
+	protected void executeLinks(TransformationRule rule, IEtlContext context) throws EolRuntimeException {
+		List<Transformation> batch = new ArrayList<>(Math.min(index.size(rule), BATCH_SIZE));
+		for (int i = 0; i < index.size(rule); i++) {
+			batch.add(new Transformation(index.getLinkSource(rule, i), index.getLinkTargets(rule, i), rule));
+			if (batch.size() == BATCH_SIZE) {
+				executeTransformations(batch, context);
+				batch.clear();
+			}
+		}
+		executeTransformations(batch, context);
+	}
+
+	/**
+	 * Execute the bodies of the rule applications.
+	 *
+	 * @param pending 				the transformations to execute
+	 * @param context 				the ETL context
+	 * @throws EolRuntimeException if a rule body fails
+	 */
+	protected void executeTransformations(List<Transformation> pending, IEtlContext context)
+		throws EolRuntimeException {
+		if (context instanceof IEolContextParallel && ((IEolContextParallel) context).getParallelism() > 1) {
+			List<Callable<Void>> jobs = new ArrayList<>(pending.size());
+			for (Transformation t : pending) {
+				jobs.add(() -> {
+					executeBody(t.getRule(), t.getSource(), t.getTargets(), context);
+					return null;
+				});
+			}
+			((IEolContextParallel) context).executeAll(context.getModule(), jobs);
+		}
+		else {
+			for (Transformation t : pending) {
+				executeBody(t.getRule(), t.getSource(), t.getTargets(), context);
+			}
+		}
+	}
+
+	/**
+	 * The first phase of the transformation: create the targets of all the (non lazy) rule
+	 * applications and add their links to the index.
+	 *
+	 * @param context 				the ETL context
+	 * @throws EolRuntimeException if a guard can not be evaluated or a target can not be created
+	 */
+	protected void createLinks(IEtlContext context) throws EolRuntimeException {
+		for (TransformationRule rule : getExecutableRules(context)) {
+			createLinks(rule, context);
+		}
+	}
+
+	/**
+	 * Create the targets of the rule applications of a rule and add their links.
+	 *
+	 * @param rule 					the rule
+	 * @param context 				the ETL context
+	 * @throws EolRuntimeException if a guard can not be evaluated or a target can not be created
+	 */
+	protected void createLinks(TransformationRule rule, IEtlContext context) throws EolRuntimeException {
+		for (Object source : rule.getAllInstances(context)) {
+			if (rule.shouldBeTransformed(source, getExcluded(), context, true)) {
+				addLink(source, createTargets(rule, context), rule, context);
+			}
+		}
+	}
+
+	@Override
+	public Collection<?> transform(Object source, IEtlContext context, List<String> rules)
+		throws EolRuntimeException {
+		List<Object> result = CollectionUtil.createDefaultList();
+		for (TransformationRule rule : getRulesFor(source, context)) {
+			if (rules == null || rules.isEmpty() || rules.contains(rule.getName())) {
+				Collection<?> targets = targets(source, rule, context);
+				if (rule.isPrimary(context)) {
+					result.addAll(0, targets);
+				}
+				else {
+					result.addAll(targets);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Collection<?> getEquivalents(Object source, IErlContext context, List<String> rules)
+		throws EolRuntimeException {
+		return transform(source, (IEtlContext) context, rules);
+	}
+
+	/**
+	 * Get the targets of the source element for the rule. If the source was not transformed in
+	 * the first phase (i.e. the rule is lazy) it is transformed now.
+	 */
+	private Collection<?> targets(Object source, TransformationRule rule, IEtlContext context)
+		throws EolRuntimeException {
+		Collection<?> targets = traced(source, rule, context);
+		if (targets != null) {
+			return targets;
+		}
+		synchronized (lazyLock) {
+			targets = traced(source, rule, context);
+			if (targets == null) {
+				targets = rule.transform(source, context);
+				if (lazyLinksWritten) {
+					writeLink(source, targets, rule);
+				}
+			}
+			return targets;
+		}
+	}
+
+	/**
+	 * Write the lazy links of the context trace, after the rule bodies have been executed. The
+	 * lazy links created afterwards are written as they are created.
+	 *
+	 * @param context 				the ETL context
+	 * @throws EolRuntimeException if a link can not be written
+	 */
+	protected void writeLazyLinks(IEtlContext context) throws EolRuntimeException {
+		synchronized (lazyLock) {
+			if (traceLinkWriter != null) {
+				for (Transformation t : context.getTransformationTrace().getTransformations()) {
+					writeLink(t.getSource(), t.getTargets(), t.getRule());
+				}
+			}
+			lazyLinksWritten = true;
+		}
+	}
+
+	/**
+	 * Write the link to the trace link writer, if any.
+	 *
+	 * @param source 				the source element
+	 * @param targets 				the target elements
+	 * @param rule 					the rule
+	 * @throws EolRuntimeException if the link can not be written
+	 */
+	protected void writeLink(Object source, Collection<?> targets, TransformationRule rule) throws EolRuntimeException {
+		TraceLinkWriter writer = traceLinkWriter;
+		if (writer != null) {
+			try {
+				writer.write(source, targets, rule.getName());
+			}
+			catch (IOException e) {
+				throw new EolInternalException(e);
+			}
+		}
+	}
+
+	/**
+	 * Add the link of a rule application created in the first phase to the index, so its targets
+	 * are found by {@link #traced(Object, TransformationRule, IEtlContext)}.
+	 *
+	 * @param source 				the source element
+	 * @param targets 				the target elements
+	 * @param rule 					the rule
+	 * @param context 				the ETL context
+	 * @throws EolRuntimeException if the link can not be added
+	 */
+	protected void addLink(Object source, Collection<Object> targets, TransformationRule rule, IEtlContext context)
+		throws EolRuntimeException {
+		index.add(rule, source, targets);
+	}
+
+	/**
+	 * Find the targets of a rule application.
+	 *
+	 * @param source 				the source element
+	 * @param rule 					the rule
+	 * @param context 				the ETL context
+	 * @return the targets, or null if the rule has not transformed the element
+	 * @throws EolRuntimeException if the targets can not be retrieved
+	 */
+	protected Collection<?> traced(Object source, TransformationRule rule, IEtlContext context)
+		throws EolRuntimeException {
+		Collection<?> indexed = index.getTargets(rule, source);
+		if (indexed != null) {
+			return indexed;
+		}
+		Collection<Transformation> transformations = context.getTransformationTrace().getTransformations(source);
+		if (transformations != null) {
+			for (Transformation t : transformations) {
+				if (t.getRule() == rule) {
+					return t.getTargets();
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Create the target elements of a rule application, without executing the rule body.
+	 *
+	 * @param rule 					the rule
+	 * @param context 				the ETL context
+	 * @return the targets, one per target parameter
+	 * @throws EolRuntimeException if a target can not be created
+	 */
+	protected Collection<Object> createTargets(TransformationRule rule, IEtlContext context)
+		throws EolRuntimeException {
+		List<Object> targets = CollectionUtil.createDefaultList();
+		for (Parameter p : rule.getTargetParameters()) {
+			targets.add(p.getType(context).createInstance());
+		}
+		return targets;
+	}
+
+	/**
+	 * Execute the bodies of the rule and its super rules, as done by
+	 * {@link TransformationRule#transform(Object, Collection, IEtlContext)}.
+	 */
+	private void executeBody(TransformationRule rule, Object source, Collection<Object> targets,
+		IEtlContext context) throws EolRuntimeException {
+		for (ExtensibleNamedRule superRule : rule.getSuperRules()) {
+			executeBody((TransformationRule) superRule, source, targets, context);
+		}
+		if (rule.getBody() == null) {
+			return;
+		}
+		List<Object> targetList = CollectionUtil.asList(targets);
+		List<Parameter> parameters = rule.getTargetParameters();
+		Variable[] variables = new Variable[parameters.size() + 2];
+		variables[0] = Variable.createReadOnlyVariable("self", rule);
+		variables[1] = Variable.createReadOnlyVariable(rule.getSourceParameter().getName(), source);
+		for (int i = 0; i < parameters.size(); i++) {
+			variables[i + 2] = Variable.createReadOnlyVariable(parameters.get(i).getName(), targetList.get(i));
+		}
+		rule.getBody().execute(context, variables);
+	}
+
+}
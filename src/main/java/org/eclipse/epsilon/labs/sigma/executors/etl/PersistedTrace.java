@@ -0,0 +1,160 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+
+/**
+ * A transformation trace written by a {@link BinaryTraceWriter}. Traces can be read link by link,
+ * using {@link #read(InputStream, Consumer)}, or loaded in memory, indexed by source element.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class PersistedTrace {
+
+	private final List<PersistedTraceLink> links;
+	private final Map<ElementRef, List<PersistedTraceLink>> bySource = new HashMap<>();
+
+	/**
+	 * Instantiates a new persisted trace.
+	 *
+	 * @param links 				the links
+	 */
+	public PersistedTrace(List<PersistedTraceLink> links) {
+		this.links = Collections.unmodifiableList(links);
+		for (PersistedTraceLink link : links) {
+			for (ElementRef source : link.getSources()) {
+				bySource.computeIfAbsent(source, s -> new ArrayList<>(1)).add(link);
+			}
+		}
+	}
+
+	/**
+	 * Load a trace file in memory.
+	 *
+	 * @param file 					the trace file
+	 * @return the trace
+	 * @throws IOException if the file can not be read or is not a trace file
+	 */
+	public static PersistedTrace load(Path file) throws IOException {
+		List<PersistedTraceLink> links = new ArrayList<>();
+		try (InputStream in = Files.newInputStream(file)) {
+			read(in, links::add);
+		}
+		return new PersistedTrace(links);
+	}
+
+	/**
+	 * Read the links of a trace, one at a time. The stream is not closed.
+	 *
+	 * @param input 				the input stream
+	 * @param consumer 				the consumer of the links
+	 * @return the number of links read
+	 * @throws IOException if the stream can not be read or is not a trace
+	 */
+	public static long read(InputStream input, Consumer<PersistedTraceLink> consumer) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		if (in.readInt() != BinaryTraceFormat.MAGIC) {
+			throw new IOException("Not an ETL trace.");
+		}
+		int version = in.readInt();
+		if (version < 1 || version > BinaryTraceFormat.FORMAT_VERSION) {
+			throw new IOException("Unsupported trace format version " + version + ".");
+		}
+		BinaryTraceFormat.readString(in);
+		List<String> symbols = new ArrayList<>();
+		long count = 0;
+		while (in.readByte() == BinaryTraceFormat.LINK) {
+			String description = readSymbol(in, symbols);
+			List<ElementRef> sources = readElements(in, symbols);
+			List<ElementRef> targets = readElements(in, symbols);
+			String fingerprint = version > 1 ? BinaryTraceFormat.readString(in) : null;
+			consumer.accept(new PersistedTraceLink(sources, targets, description, fingerprint));
+			count++;
+		}
+		long expected = in.readLong();
+		if (expected != count) {
+			throw new IOException("Incomplete trace, expected " + expected + " links but found " + count + ".");
+		}
+		return count;
+	}
+
+	/**
+	 * Get all the links.
+	 *
+	 * @return the links, in the order they were written
+	 */
+	public List<PersistedTraceLink> getLinks() {
+		return links;
+	}
+
+	/**
+	 * Get the links of a source element.
+	 *
+	 * @param source 				the source element
+	 * @return the links, empty if the element was not transformed
+	 */
+	public List<PersistedTraceLink> getLinks(ElementRef source) {
+		return bySource.getOrDefault(source, Collections.emptyList());
+	}
+
+	/**
+	 * Get the link created by a rule for a source element.
+	 *
+	 * @param source 				the source element
+	 * @param rule 					the name of the rule
+	 * @return the link, empty if the rule did not transform the element
+	 */
+	public Optional<PersistedTraceLink> getLink(ElementRef source, String rule) {
+		for (PersistedTraceLink link : getLinks(source)) {
+			if (rule.equals(link.getDescription())) {
+				return Optional.of(link);
+			}
+		}
+		return Optional.empty();
+	}
+
+	private static List<ElementRef> readElements(DataInputStream in, List<String> symbols) throws IOException {
+		int size = BinaryTraceFormat.readVarInt(in);
+		List<ElementRef> elements = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			String model = readSymbol(in, symbols);
+			String id = BinaryTraceFormat.readString(in);
+			elements.add(new ElementRef(model.isEmpty() ? null : model, id));
+		}
+		return elements;
+	}
+
+	private static String readSymbol(DataInputStream in, List<String> symbols) throws IOException {
+		int index = BinaryTraceFormat.readVarInt(in);
+		if (index == symbols.size()) {
+			symbols.add(BinaryTraceFormat.readString(in));
+		}
+		else if (index > symbols.size()) {
+			throw new IOException("Malformed trace, unknown symbol " + index + ".");
+		}
+		return symbols.get(index);
+	}
+
+}
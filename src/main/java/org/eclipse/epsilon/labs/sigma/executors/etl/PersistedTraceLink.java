@@ -0,0 +1,83 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+
+/**
+ * A TraceLink of a persisted EtlSimpleTrace, with its sources and targets identified by
+ * {@link ElementRef}s.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class PersistedTraceLink {
+
+	private final List<ElementRef> sources;
+	private final List<ElementRef> targets;
+	private final String description;
+	private final String fingerprint;
+
+	/**
+	 * Instantiates a new persisted trace link.
+	 *
+	 * @param sources 				the sources
+	 * @param targets 				the targets
+	 * @param description 			the description, i.e. the name of the rule
+	 */
+	public PersistedTraceLink(List<ElementRef> sources, List<ElementRef> targets, String description) {
+		this(sources, targets, description, null);
+	}
+
+	/**
+	 * Instantiates a new persisted trace link.
+	 *
+	 * @param sources 				the sources
+	 * @param targets 				the targets
+	 * @param description 			the description, i.e. the name of the rule
+	 * @param fingerprint 			the fingerprint of the source element, null if unknown
+	 */
+	public PersistedTraceLink(List<ElementRef> sources, List<ElementRef> targets, String description,
+		String fingerprint) {
+		this.sources = Collections.unmodifiableList(sources);
+		this.targets = Collections.unmodifiableList(targets);
+		this.description = description;
+		this.fingerprint = fingerprint;
+	}
+
+	public List<ElementRef> getSources() {
+		return sources;
+	}
+
+	public List<ElementRef> getTargets() {
+		return targets;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * The fingerprint of the source element when the link was written.
+	 *
+	 * @return the fingerprint, null if it was not computed
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public String toString() {
+		return "TraceLink [" + description + ": " + sources + " -> " + targets + "]";
+	}
+
+}
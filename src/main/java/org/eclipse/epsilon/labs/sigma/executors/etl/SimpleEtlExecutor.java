@@ -10,21 +10,28 @@
 package org.eclipse.epsilon.labs.sigma.executors.etl;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import org.eclipse.epsilon.common.parse.problem.ParseProblem;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 import org.eclipse.epsilon.eol.models.IModel;
 import org.eclipse.epsilon.eol.types.IToolNativeTypeDelegate;
 import org.eclipse.epsilon.erl.execute.RuleProfiler;
 import org.eclipse.epsilon.etl.EtlModule;
 import org.eclipse.epsilon.etl.IEtlModule;
+import org.eclipse.epsilon.etl.concurrent.EtlModuleParallel;
+import org.eclipse.epsilon.etl.execute.context.IEtlContext;
+import org.eclipse.epsilon.etl.strategy.ITransformationStrategy;
+import org.eclipse.epsilon.etl.trace.Transformation;
 import org.eclipse.epsilon.etl.trace.TransformationTrace;
 import org.eclipse.epsilon.labs.sigma.executors.EpsilonLanguageExecutor;
 import org.eclipse.epsilon.labs.sigma.executors.ModuleWrap;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementFingerprinter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +45,7 @@ public class SimpleEtlExecutor implements EpsilonLanguageExecutor<Transformation
     private static final Logger logger = LoggerFactory.getLogger(SimpleEtlExecutor.class);
     private IEtlModule module;
     private ModuleWrap delegate;
+    private TraceLinkWriter traceLinkWriter;
 
     /**
      * Instantiates a new simple ETL executor that uses an {@link EtlModule} as its module.
@@ -46,6 +54,19 @@ public class SimpleEtlExecutor implements EpsilonLanguageExecutor<Transformation
     public SimpleEtlExecutor() {
     	this(new EtlModule());	
     }
+
+    /**
+     * Instantiates a new simple ETL executor that uses an {@link EtlModuleParallel} as its module,
+     * with the provided number of threads. Rule applications are distributed over the threads
+     * using a {@link ParallelTransformationStrategy}.
+     *
+     * @param parallelism 			the parallelism to use
+     * @see ParallelTransformationStrategy
+     */
+    public SimpleEtlExecutor(int parallelism) {
+    	this(new EtlModuleParallel(parallelism));
+    	module.getContext().setTransformationStrategy(new ParallelTransformationStrategy());
+    }
     
     /**
     * Instantiates a new simple ETL executor that uses the provided {@link IEtlModule} as its module.
@@ -62,7 +83,165 @@ public class SimpleEtlExecutor implements EpsilonLanguageExecutor<Transformation
 
 	@Override
 	public TransformationTrace execute() throws EolRuntimeException {
-		return (TransformationTrace) module.execute();
+		IEtlContext context = module.getContext();
+		ITransformationStrategy strategy = context.getTransformationStrategy();
+		if (traceLinkWriter == null) {
+			return trace(module.execute(), strategy);
+		}
+		boolean streaming = strategy instanceof ParallelTransformationStrategy;
+		try {
+			traceLinkWriter.begin(context.getModelRepository());
+			TransformationTrace trace;
+			if (streaming) {
+				((ParallelTransformationStrategy) strategy).setTraceLinkWriter(traceLinkWriter);
+				try {
+					trace = trace(module.execute(), strategy);
+				}
+				finally {
+					((ParallelTransformationStrategy) strategy).setTraceLinkWriter(null);
+				}
+			}
+			else {
+				trace = trace(module.execute(), strategy);
+				for (Transformation t : trace.getTransformations()) {
+					traceLinkWriter.write(t.getSource(), t.getTargets(), t.getRule().getName());
+				}
+			}
+			traceLinkWriter.end();
+			return trace;
+		}
+		catch (IOException e) {
+			throw new EolInternalException(e);
+		}
+	}
+
+	/**
+	 * The trace of the transformation: the trace of the strategy if it keeps the rule
+	 * applications in a {@link TransformationIndex}, otherwise the trace of the context.
+	 */
+	private static TransformationTrace trace(Object result, ITransformationStrategy strategy) {
+		if (strategy instanceof ParallelTransformationStrategy) {
+			TransformationTrace trace = ((ParallelTransformationStrategy) strategy).getTrace();
+			if (trace != null) {
+				return trace;
+			}
+		}
+		return (TransformationTrace) result;
+	}
+
+	/**
+	 * Get the index of the rule applications of the last execution. The index is only available
+	 * when the module uses a {@link ParallelTransformationStrategy} (e.g. when the executor was
+	 * created with a parallelism), and provides faster lookups than the transformation trace.
+	 *
+	 * @return the index, empty if the transformation strategy does not build one
+	 */
+	public Optional<TransformationIndex> getTransformationIndex() {
+		ITransformationStrategy strategy = module.getContext().getTransformationStrategy();
+		if (strategy instanceof ParallelTransformationStrategy) {
+			return Optional.of(((ParallelTransformationStrategy) strategy).getIndex());
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Execute the transformation without keeping a transformation trace. Only the targets needed
+	 * to resolve {@code equivalent()} are indexed, and the index is released as soon as it is no
+	 * longer needed (see {@link TraceFreeTransformationStrategy}). As rules are executed one
+	 * after the other, rule bodies that query the extents of the target models (e.g.
+	 * {@code Out!X.all}) only see the targets created so far. If a trace link writer is set, the
+	 * links are still written. The transformation strategy of the module is restored after the
+	 * execution.
+	 *
+	 * @return the summary of the transformation
+	 * @throws EolRuntimeException if there is an error executing the transformation
+	 */
+	public TransformationSummary executeTraceFree() throws EolRuntimeException {
+		IEtlContext context = module.getContext();
+		ITransformationStrategy previous = context.getTransformationStrategy();
+		TraceFreeTransformationStrategy strategy = new TraceFreeTransformationStrategy();
+		context.setTransformationStrategy(strategy);
+		try {
+			execute();
+			return strategy.finish();
+		}
+		finally {
+			context.setTransformationStrategy(previous);
+		}
+	}
+
+	/**
+	 * Execute the transformation in chunks, flushing the finished targets to the sink so they
+	 * do not have to be kept in memory (see {@link StreamingTransformationStrategy}). No
+	 * transformation trace is kept. If a trace link writer is set, the links are still written.
+	 * The transformation strategy of the module is restored after the execution.
+	 *
+	 * @param sink 					the sink for the finished targets
+	 * @param chunkSize 			the number of rule applications per chunk
+	 * @return the summary of the transformation
+	 * @throws EolRuntimeException if there is an error executing the transformation or writing
+	 * 								the targets
+	 */
+	public TransformationSummary executeStreaming(TargetSink sink, int chunkSize) throws EolRuntimeException {
+		IEtlContext context = module.getContext();
+		ITransformationStrategy previous = context.getTransformationStrategy();
+		StreamingTransformationStrategy strategy = new StreamingTransformationStrategy(sink, chunkSize);
+		context.setTransformationStrategy(strategy);
+		try {
+			execute();
+			return strategy.finish();
+		}
+		finally {
+			context.setTransformationStrategy(previous);
+		}
+	}
+
+	/**
+	 * Set a writer to persist the transformation trace, e.g. a {@link BinaryTraceWriter}. With a
+	 * {@link ParallelTransformationStrategy} links are written by the strategy once the rule
+	 * bodies have been executed. Otherwise links are written after the transformation. The trace
+	 * is started before the transformation and ended after, but the writer is not closed.
+	 * <p>
+	 * Writing the trace does not reduce the memory used: the trace is still kept, to resolve
+	 * {@code equivalent()}, and returned by {@link #execute()}. Use {@link #executeTraceFree()}
+	 * or {@link #executeStreaming(TargetSink, int)} to bound the memory used.
+	 *
+	 * @param traceLinkWriter 		the trace link writer, null to disable writing the trace
+	 * @see PersistedTrace
+	 */
+	public void setTraceLinkWriter(TraceLinkWriter traceLinkWriter) {
+		this.traceLinkWriter = traceLinkWriter;
+	}
+
+	/**
+	 * Update the target models of a previous transformation instead of transforming the complete
+	 * source models. Only the rule applications of added or changed source elements are
+	 * executed, and the targets of removed source elements are deleted. The previous trace must
+	 * have been written with the same fingerprinter (see
+	 * {@link BinaryTraceWriter#BinaryTraceWriter(java.nio.channels.WritableByteChannel, int, ElementFingerprinter)}),
+	 * and the target models must be loaded with their previous contents. If a trace link writer
+	 * is set, the trace of this transformation is written. The transformation strategy of the
+	 * module is restored after the execution.
+	 *
+	 * @param previousTrace 		the trace of the previous transformation
+	 * @param fingerprinter 		the fingerprinter for the source elements
+	 * @return the strategy, which provides the number of added, changed and removed elements
+	 * @throws EolRuntimeException if there is an error executing the transformation
+	 * @see IncrementalTransformationStrategy
+	 */
+	public IncrementalTransformationStrategy executeIncremental(PersistedTrace previousTrace,
+		ElementFingerprinter fingerprinter) throws EolRuntimeException {
+		IEtlContext context = module.getContext();
+		ITransformationStrategy previous = context.getTransformationStrategy();
+		IncrementalTransformationStrategy strategy = new IncrementalTransformationStrategy(previousTrace, fingerprinter);
+		context.setTransformationStrategy(strategy);
+		try {
+			execute();
+			return strategy;
+		}
+		finally {
+			context.setTransformationStrategy(previous);
+		}
 	}
 
 	@Override
@@ -0,0 +1,206 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.epsilon.common.util.CollectionUtil;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.models.ModelRepository;
+import org.eclipse.epsilon.etl.dom.TransformationRule;
+import org.eclipse.epsilon.etl.execute.context.IEtlContext;
+import org.eclipse.epsilon.etl.trace.Transformation;
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+
+/**
+ * The StreamingTransformationStrategy transforms the source elements of each rule in chunks.
+ * For each chunk the targets are created, the rule bodies are executed (distributed over the
+ * threads of a parallel context) and the finished targets are flushed to a {@link TargetSink},
+ * which writes them to the output and releases them from memory. Only a reference to each
+ * flushed target is kept.
+ * <p>
+ * {@code equivalent()} is resolved as follows:
+ * <ul>
+ * <li>If the target is in memory, it is returned.</li>
+ * <li>If the target has been flushed, a proxy created by the sink is returned. Proxies are
+ * fixed up by the sink when the transformation finishes.</li>
+ * <li>If the source has not been transformed yet (it is in a later chunk, or is transformed by
+ * a later rule), its targets are created and kept in memory until its chunk is processed.</li>
+ * </ul>
+ * Rule bodies must only modify the targets of their own rule application, as flushed targets
+ * are no longer in memory. Target models must assign ids to their elements, so that flushed
+ * targets can be referenced. Lazy rule applications are added to the context trace and are not
+ * flushed. If a {@link TraceLinkWriter} is set, the links of a chunk are written after its bodies
+ * have been executed, before its targets are flushed. Source elements are read chunk by chunk
+ * from the rule's instances, so the memory used by the sources depends on the source model
+ * driver.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class StreamingTransformationStrategy extends ParallelTransformationStrategy {
+
+	/** The default number of rule applications per chunk. */
+	public static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+	private final TargetSink sink;
+	private final int chunkSize;
+	private final Map<TransformationRule, Map<Object, Collection<Object>>> inMemory = new IdentityHashMap<>();
+	private final Map<TransformationRule, Map<Object, List<ElementRef>>> flushed = new IdentityHashMap<>();
+	private final Map<String, Long> counts = new LinkedHashMap<>();
+
+	/**
+	 * Instantiates a new streaming transformation strategy.
+	 *
+	 * @param sink 					the sink for the finished targets
+	 * @param chunkSize 			the number of rule applications per chunk
+	 */
+	public StreamingTransformationStrategy(TargetSink sink, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size must be positive.");
+		}
+		this.sink = sink;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public void transformModels(IEtlContext context) throws EolRuntimeException {
+		inMemory.clear();
+		flushed.clear();
+		counts.clear();
+		for (TransformationRule rule : getExecutableRules(context)) {
+			List<Transformation> chunk = new ArrayList<>(chunkSize);
+			for (Object source : rule.getAllInstances(context)) {
+				if (!rule.shouldBeTransformed(source, getExcluded(), context, true)) {
+					continue;
+				}
+				Collection<Object> targets = inMemoryTargets(source, rule);
+				if (targets == null) {
+					targets = createLink(source, rule, context);
+				}
+				chunk.add(new Transformation(source, targets, rule));
+				if (chunk.size() == chunkSize) {
+					flush(chunk, context);
+					chunk = new ArrayList<>(chunkSize);
+				}
+			}
+			flush(chunk, context);
+		}
+		writeLazyLinks(context);
+		try {
+			sink.finish();
+		}
+		catch (IOException e) {
+			throw new EolInternalException(e);
+		}
+		inMemory.clear();
+	}
+
+	/**
+	 * Release the references to the flushed targets and get the summary of the last
+	 * transformation.
+	 *
+	 * @return the summary
+	 */
+	public TransformationSummary finish() {
+		flushed.clear();
+		return new TransformationSummary(counts);
+	}
+
+	@Override
+	protected void addLink(Object source, Collection<Object> targets, TransformationRule rule, IEtlContext context)
+		throws EolRuntimeException {
+		inMemory.computeIfAbsent(rule, r -> new IdentityHashMap<>()).put(source, targets);
+		counts.merge(rule.getName(), 1L, Long::sum);
+	}
+
+	@Override
+	protected Collection<?> traced(Object source, TransformationRule rule, IEtlContext context)
+		throws EolRuntimeException {
+		synchronized (inMemory) {
+			Collection<Object> targets = inMemoryTargets(source, rule);
+			if (targets != null) {
+				return targets;
+			}
+			Map<Object, List<ElementRef>> refs = flushed.get(rule);
+			List<ElementRef> flushedTargets = refs == null ? null : refs.get(source);
+			if (flushedTargets != null) {
+				return proxies(flushedTargets);
+			}
+			if (!rule.isLazy(context) && rule.shouldBeTransformed(source, getExcluded(), context, true)) {
+				return createLink(source, rule, context);
+			}
+		}
+		return super.traced(source, rule, context);
+	}
+
+	private Collection<Object> inMemoryTargets(Object source, TransformationRule rule) {
+		Map<Object, Collection<Object>> targets = inMemory.get(rule);
+		return targets == null ? null : targets.get(source);
+	}
+
+	private Collection<Object> createLink(Object source, TransformationRule rule, IEtlContext context)
+		throws EolRuntimeException {
+		Collection<Object> targets = createTargets(rule, context);
+		addLink(source, targets, rule, context);
+		return targets;
+	}
+
+	/**
+	 * Execute the bodies of the chunk, then flush its targets and replace them by references.
+	 */
+	private void flush(List<Transformation> chunk, IEtlContext context) throws EolRuntimeException {
+		if (chunk.isEmpty()) {
+			return;
+		}
+		executeTransformations(chunk, context);
+		ModelRepository repository = context.getModelRepository();
+		List<Object> finished = new ArrayList<>();
+		synchronized (inMemory) {
+			for (Transformation t : chunk) {
+				List<ElementRef> refs = new ArrayList<>(t.getTargets().size());
+				for (Object target : t.getTargets()) {
+					refs.add(ElementRef.of(target, repository).orElseThrow(() -> new EolInternalException(
+							new IllegalStateException("Target " + target + " has no id, it can not be flushed."))));
+					finished.add(target);
+				}
+				writeLink(t.getSource(), t.getTargets(), t.getRule());
+				inMemory.get(t.getRule()).remove(t.getSource());
+				flushed.computeIfAbsent(t.getRule(), r -> new IdentityHashMap<>()).put(t.getSource(), refs);
+			}
+		}
+		try {
+			sink.flush(finished);
+		}
+		catch (IOException e) {
+			throw new EolInternalException(e);
+		}
+	}
+
+	private Collection<Object> proxies(List<ElementRef> refs) throws EolRuntimeException {
+		List<Object> proxies = CollectionUtil.createDefaultList();
+		try {
+			for (ElementRef ref : refs) {
+				proxies.add(sink.proxy(ref));
+			}
+		}
+		catch (IOException e) {
+			throw new EolInternalException(e);
+		}
+		return proxies;
+	}
+
+}
@@ -0,0 +1,54 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.eclipse.epsilon.labs.sigma.executors.util.ElementRef;
+
+/**
+ * The TargetSink API allows target elements to be written to the output and released from
+ * memory during a streaming transformation (see {@link StreamingTransformationStrategy}).
+ * Implementations are specific to the modelling technology of the target model, e.g. for EMF
+ * the targets can be appended to the output file and removed from their resource, and proxies
+ * can be EObjects with a proxy URI.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public interface TargetSink {
+
+	/**
+	 * Write finished target elements to the output, in append mode, and remove them from the
+	 * target model. Finished elements are not modified by the transformation afterwards.
+	 *
+	 * @param targets 				the targets, in trace order
+	 * @throws IOException if the targets can not be written
+	 */
+	void flush(List<Object> targets) throws IOException;
+
+	/**
+	 * Create a lightweight proxy for a target that has already been flushed, so it can be
+	 * referenced by the targets that are still in memory.
+	 *
+	 * @param target 				the reference to the flushed target
+	 * @return the proxy
+	 * @throws IOException if the proxy can not be created
+	 */
+	Object proxy(ElementRef target) throws IOException;
+
+	/**
+	 * Finish the output, resolving the proxies written by previous flushes.
+	 *
+	 * @throws IOException if the output can not be finished
+	 */
+	void finish() throws IOException;
+
+}
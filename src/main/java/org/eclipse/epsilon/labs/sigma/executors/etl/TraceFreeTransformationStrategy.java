@@ -0,0 +1,268 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.epsilon.common.module.ModuleElement;
+import org.eclipse.epsilon.eol.dom.Expression;
+import org.eclipse.epsilon.eol.dom.OperationCallExpression;
+import org.eclipse.epsilon.eol.dom.SpecialAssignmentStatement;
+import org.eclipse.epsilon.eol.dom.StringLiteral;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.erl.dom.ExtensibleNamedRule;
+import org.eclipse.epsilon.etl.IEtlModule;
+import org.eclipse.epsilon.etl.dom.TransformationRule;
+import org.eclipse.epsilon.etl.execute.context.IEtlContext;
+import org.eclipse.epsilon.etl.trace.Transformation;
+
+/**
+ * The TraceFreeTransformationStrategy transforms the models like the
+ * {@link ParallelTransformationStrategy}, but does not keep a transformation trace. The models are
+ * transformed rule by rule: the targets of a rule are created and then its bodies are executed.
+ * <p>
+ * Only the rule applications that may be resolved by {@code equivalent()} (and {@code ::=}) are
+ * kept in the {@link TransformationIndex}. The rules that each rule body resolves are found from
+ * the names passed to {@code equivalent()}; a call without names, with names that are not string
+ * literals, or a {@code ::=} may resolve any rule. Before the bodies of a rule are executed, the
+ * targets of the rules they resolve are created, and the links of a rule are removed from the
+ * index as soon as no remaining rule body resolves it. The links of rules that are resolved by
+ * operations, lazy rules or post blocks are kept until {@link #finish()}. Lazy rule applications
+ * are still added to the context trace.
+ * <p>
+ * As a result, the bodies of a rule see a partial target model: the targets of the rules that
+ * come after it, and that it does not resolve, have not been created yet. Bodies that query the
+ * extent of a target type (e.g. {@code Out!X.all}) or navigate to targets by other means than
+ * {@code equivalent()} must only be used with rules that come before them, or with the
+ * {@link ParallelTransformationStrategy}, which creates all the targets first.
+ * <p>
+ * If a {@link TraceLinkWriter} is set, the links of a rule are written after its bodies have
+ * been executed.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class TraceFreeTransformationStrategy extends ParallelTransformationStrategy {
+
+	private static final Set<String> EQUIVALENT_OPERATIONS = new HashSet<>(Arrays.asList("equivalent", "equivalents"));
+
+	private final Map<String, Long> counts = new LinkedHashMap<>();
+
+	@Override
+	public void transformModels(IEtlContext context) throws EolRuntimeException {
+		TransformationIndex index = getIndex();
+		index.clear();
+		counts.clear();
+		List<TransformationRule> rules = getExecutableRules(context);
+		References always = alwaysResolved(rules, context.getModule());
+		References[] resolvedAfter = new References[rules.size()];
+		References resolved = always;
+		for (int i = rules.size() - 1; i >= 0; i--) {
+			resolvedAfter[i] = resolved;
+			resolved = resolved.with(resolvedBy(rules.get(i)));
+		}
+		Set<TransformationRule> created = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int i = 0; i < rules.size(); i++) {
+			TransformationRule rule = rules.get(i);
+			References needed = always.with(resolvedBy(rule));
+			for (int j = i + 1; j < rules.size(); j++) {
+				TransformationRule other = rules.get(j);
+				if (needed.includes(other) && created.add(other)) {
+					createLinks(other, context);
+				}
+			}
+			if (created.add(rule)) {
+				if (needed.includes(rule) || resolvedAfter[i].includes(rule)) {
+					createLinks(rule, context);
+					executeLinks(rule, context);
+				}
+				else {
+					transform(rule, context);
+				}
+			}
+			else {
+				executeLinks(rule, context);
+			}
+			for (int j = 0; j <= i; j++) {
+				TransformationRule executed = rules.get(j);
+				if (!resolvedAfter[i].includes(executed) && index.size(executed) > 0) {
+					release(executed);
+				}
+			}
+		}
+		for (TransformationRule rule : index.getRules()) {
+			writeLinks(rule);
+		}
+		writeLazyLinks(context);
+	}
+
+	/**
+	 * Release the index and get the summary of the last transformation.
+	 *
+	 * @return the summary
+	 */
+	public TransformationSummary finish() {
+		getIndex().clear();
+		return new TransformationSummary(counts);
+	}
+
+	@Override
+	protected void addLink(Object source, Collection<Object> targets, TransformationRule rule, IEtlContext context)
+		throws EolRuntimeException {
+		getIndex().add(rule, source, targets);
+		counts.merge(rule.getName(), 1L, Long::sum);
+	}
+
+	/**
+	 * Create the targets and execute the bodies of a rule that is not resolved by any rule body,
+	 * in batches, without adding its links to the index.
+	 */
+	private void transform(TransformationRule rule, IEtlContext context) throws EolRuntimeException {
+		List<Transformation> batch = new ArrayList<>();
+		long count = 0;
+		for (Object source : rule.getAllInstances(context)) {
+			if (rule.shouldBeTransformed(source, getExcluded(), context, true)) {
+				batch.add(new Transformation(source, createTargets(rule, context), rule));
+				count++;
+				if (batch.size() == BATCH_SIZE) {
+					execute(batch, context);
+				}
+			}
+		}
+		execute(batch, context);
+		if (count > 0) {
+			counts.merge(rule.getName(), count, Long::sum);
+		}
+	}
+
+	/**
+	 * Execute the bodies of a batch of rule applications, write their links and clear it.
+	 */
+	private void execute(List<Transformation> batch, IEtlContext context) throws EolRuntimeException {
+		executeTransformations(batch, context);
+		for (Transformation t : batch) {
+			writeLink(t.getSource(), t.getTargets(), t.getRule());
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Write the links of a rule and remove them from the index.
+	 */
+	private void release(TransformationRule rule) throws EolRuntimeException {
+		writeLinks(rule);
+		getIndex().remove(rule);
+	}
+
+	private void writeLinks(TransformationRule rule) throws EolRuntimeException {
+		TransformationIndex index = getIndex();
+		for (int i = 0; i < index.size(rule); i++) {
+			writeLink(index.getLinkSource(rule, i), index.getLinkTargets(rule, i), rule);
+		}
+	}
+
+	/**
+	 * The rules resolved by the code that can be executed at any time: operations, post blocks
+	 * and the rules that are not executed by the strategy (e.g. lazy rules).
+	 */
+	private static References alwaysResolved(List<TransformationRule> rules, IEtlModule module) {
+		References resolved = References.NONE;
+		for (ModuleElement element : module.getOperations()) {
+			resolved = resolved.with(resolvedBy(element));
+		}
+		for (ModuleElement element : module.getPost()) {
+			resolved = resolved.with(resolvedBy(element));
+		}
+		for (TransformationRule rule : module.getTransformationRules()) {
+			if (!rules.contains(rule)) {
+				resolved = resolved.with(resolvedBy(rule));
+			}
+		}
+		return resolved;
+	}
+
+	private static References resolvedBy(TransformationRule rule) {
+		References resolved = resolvedBy((ModuleElement) rule);
+		for (ExtensibleNamedRule superRule : rule.getSuperRules()) {
+			resolved = resolved.with(resolvedBy((TransformationRule) superRule));
+		}
+		return resolved;
+	}
+
+	private static References resolvedBy(ModuleElement element) {
+		if (element instanceof SpecialAssignmentStatement) {
+			return References.ALL;
+		}
+		References resolved = References.NONE;
+		if (element instanceof OperationCallExpression
+				&& EQUIVALENT_OPERATIONS.contains(((OperationCallExpression) element).getName())) {
+			List<Expression> parameters = ((OperationCallExpression) element).getParameterExpressions();
+			if (parameters.isEmpty()) {
+				return References.ALL;
+			}
+			Set<String> names = new HashSet<>();
+			for (Expression parameter : parameters) {
+				if (!(parameter instanceof StringLiteral)) {
+					return References.ALL;
+				}
+				names.add(((StringLiteral) parameter).getValue());
+			}
+			resolved = new References(names);
+		}
+		for (ModuleElement child : element.getChildren()) {
+			resolved = resolved.with(resolvedBy(child));
+			if (resolved == References.ALL) {
+				break;
+			}
+		}
+		return resolved;
+	}
+
+	/**
+	 * The names of the rules that some code may resolve.
+	 */
+	private static final class References {
+
+		static final References NONE = new References(Collections.emptySet());
+		static final References ALL = new References(null);
+
+		/** The names of the rules, null for all the rules. */
+		private final Set<String> names;
+
+		References(Set<String> names) {
+			this.names = names;
+		}
+
+		boolean includes(TransformationRule rule) {
+			return names == null || names.contains(rule.getName());
+		}
+
+		References with(References other) {
+			if (names == null || (other.names != null && other.names.isEmpty())) {
+				return this;
+			}
+			if (other.names == null || names.isEmpty()) {
+				return other;
+			}
+			Set<String> union = new HashSet<>(names);
+			union.addAll(other.names);
+			return new References(union);
+		}
+	}
+
+}
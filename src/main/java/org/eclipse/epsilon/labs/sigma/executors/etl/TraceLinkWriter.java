@@ -0,0 +1,56 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+import org.eclipse.epsilon.eol.models.ModelRepository;
+
+/**
+ * The TraceLinkWriter API allows the links of a transformation trace to be written one at a
+ * time, by the transformation strategy once the rule bodies have been executed (see
+ * {@link ParallelTransformationStrategy}), or after the transformation (see
+ * {@link SimpleEtlExecutor#setTraceLinkWriter(TraceLinkWriter)}).
+ * <p>
+ * Implementations must be thread safe, as links of lazy rules can be created from several
+ * threads when using a parallel module.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public interface TraceLinkWriter extends Closeable {
+
+	/**
+	 * Start the trace. Must be invoked before any link is written.
+	 *
+	 * @param repository 			the model repository, used to identify the elements
+	 * @throws IOException if there is an error writing the trace
+	 */
+	void begin(ModelRepository repository) throws IOException;
+
+	/**
+	 * Write a trace link.
+	 *
+	 * @param source 				the source element
+	 * @param targets 				the target elements
+	 * @param description 			the description of the link, i.e. the name of the rule
+	 * @throws IOException if there is an error writing the trace
+	 */
+	void write(Object source, Collection<?> targets, String description) throws IOException;
+
+	/**
+	 * Finish the trace and flush any buffered output. The underlying output is not closed.
+	 *
+	 * @throws IOException if there is an error writing the trace
+	 */
+	void end() throws IOException;
+
+}
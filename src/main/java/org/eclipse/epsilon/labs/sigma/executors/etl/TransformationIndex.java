@@ -0,0 +1,246 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.epsilon.etl.dom.TransformationRule;
+import org.eclipse.epsilon.labs.sigma.executors.util.IdentityIntMap;
+
+/**
+ * The TransformationIndex keeps the (non lazy) rule applications of a transformation, and is
+ * used instead of the {@link org.eclipse.epsilon.etl.trace.TransformationTrace} to store them and
+ * to resolve {@code equivalent()}.
+ * <p>
+ * The links of each rule are kept in arrays: an {@link IdentityIntMap} from source element to
+ * link number, the source of each link, and the targets of all the links in a single array, the
+ * targets of link {@code i} being in positions {@code offsets[i]} to {@code offsets[i + 1]}. As a
+ * result a link uses a few array slots instead of a Transformation, its targets collection and
+ * the entries of the trace's collections, and a lookup is a hash and a probe. The links of a rule
+ * can be removed once they are no longer needed. Rules are compared by identity, as the hash code
+ * of a rule is computed from its description.
+ * <p>
+ * Links must be added and removed by a single thread. Lookups can be done concurrently, as long as
+ * no links are being added or removed.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class TransformationIndex {
+
+	private final Map<TransformationRule, Links> tables = new IdentityHashMap<>();
+	private final List<TransformationRule> rules = new ArrayList<>();
+	private int size;
+	private int modCount;
+
+	/**
+	 * The links of a rule.
+	 */
+	private static final class Links {
+
+		final IdentityIntMap bySource = new IdentityIntMap();
+		Object[] sources = new Object[16];
+		Object[] targets = new Object[16];
+		int[] offsets = new int[17];
+		int size;
+
+		void add(Object source, Collection<?> linkTargets) {
+			if (size == sources.length) {
+				sources = Arrays.copyOf(sources, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2 + 1);
+			}
+			int start = offsets[size];
+			int end = start + linkTargets.size();
+			if (end > targets.length) {
+				targets = Arrays.copyOf(targets, Math.max(end, targets.length * 2));
+			}
+			for (Object target : linkTargets) {
+				targets[start++] = target;
+			}
+			sources[size] = source;
+			offsets[size + 1] = end;
+			bySource.put(source, size);
+			size++;
+		}
+
+		List<Object> getTargets(int link) {
+			return new Targets(targets, offsets[link], offsets[link + 1]);
+		}
+	}
+
+	/**
+	 * Add a link. If the rule already has a link for the source, lookups return the new one.
+	 *
+	 * @param rule 					the rule
+	 * @param source 				the source element
+	 * @param linkTargets 			the target elements
+	 */
+	public void add(TransformationRule rule, Object source, Collection<?> linkTargets) {
+		Links links = tables.get(rule);
+		if (links == null) {
+			links = new Links();
+			tables.put(rule, links);
+			rules.add(rule);
+		}
+		links.add(source, linkTargets);
+		size++;
+		modCount++;
+	}
+
+	/**
+	 * Get the targets of a rule application.
+	 *
+	 * @param rule 					the rule
+	 * @param source 				the source element
+	 * @return an unmodifiable view of the targets, or null if the rule has not transformed the
+	 * 								source
+	 */
+	public List<Object> getTargets(TransformationRule rule, Object source) {
+		Links links = tables.get(rule);
+		if (links == null) {
+			return null;
+		}
+		int link = links.bySource.get(source);
+		if (link < 0) {
+			return null;
+		}
+		return links.getTargets(link);
+	}
+
+	/**
+	 * Checks if the rule has transformed the source.
+	 *
+	 * @param rule 					the rule
+	 * @param source 				the source element
+	 * @return true, if there is a link
+	 */
+	public boolean contains(TransformationRule rule, Object source) {
+		Links links = tables.get(rule);
+		return links != null && links.bySource.get(source) >= 0;
+	}
+
+	/**
+	 * The rules that have links, in the order their first link was added.
+	 *
+	 * @return the rules
+	 */
+	public Collection<TransformationRule> getRules() {
+		return Collections.unmodifiableList(rules);
+	}
+
+	/**
+	 * The number of links of a rule.
+	 *
+	 * @param rule 					the rule
+	 * @return the number of links
+	 */
+	public int size(TransformationRule rule) {
+		Links links = tables.get(rule);
+		return links == null ? 0 : links.size;
+	}
+
+	/**
+	 * Get the source element of a link of a rule.
+	 *
+	 * @param rule 					the rule
+	 * @param link 					the number of the link, from 0 to {@link #size(TransformationRule)}
+	 * @return the source element
+	 */
+	public Object getLinkSource(TransformationRule rule, int link) {
+		return tables.get(rule).sources[link];
+	}
+
+	/**
+	 * Get the targets of a link of a rule.
+	 *
+	 * @param rule 					the rule
+	 * @param link 					the number of the link, from 0 to {@link #size(TransformationRule)}
+	 * @return an unmodifiable view of the targets
+	 */
+	public List<Object> getLinkTargets(TransformationRule rule, int link) {
+		return tables.get(rule).getTargets(link);
+	}
+
+	/**
+	 * Remove the links of a rule and release their storage.
+	 *
+	 * @param rule 					the rule
+	 */
+	public void remove(TransformationRule rule) {
+		Links links = tables.remove(rule);
+		if (links != null) {
+			rules.remove(rule);
+			size -= links.size;
+			modCount++;
+		}
+	}
+
+	/**
+	 * The number of links.
+	 *
+	 * @return the number of links
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Remove all the links and release the storage.
+	 */
+	public void clear() {
+		tables.clear();
+		rules.clear();
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * The number of times links have been added or removed, to detect that the index changed.
+	 */
+	int getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * A view of the targets of a link.
+	 */
+	private static final class Targets extends AbstractList<Object> {
+
+		private final Object[] targets;
+		private final int start;
+		private final int end;
+
+		Targets(Object[] targets, int start, int end) {
+			this.targets = targets;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public Object get(int index) {
+			if (index < 0 || index >= end - start) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (end - start));
+			}
+			return targets[start + index];
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.etl;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The result of a transformation executed without a trace (see
+ * {@link SimpleEtlExecutor#executeTraceFree()}): the number of rule applications per rule.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class TransformationSummary {
+
+	private final Map<String, Long> transformations;
+	private final long total;
+
+	/**
+	 * Instantiates a new transformation summary.
+	 *
+	 * @param transformations 		the number of rule applications, by rule name
+	 */
+	public TransformationSummary(Map<String, Long> transformations) {
+		this.transformations = Collections.unmodifiableMap(new LinkedHashMap<>(transformations));
+		this.total = transformations.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	/**
+	 * The number of rule applications of each rule.
+	 *
+	 * @return the number of rule applications, by rule name, in rule order
+	 */
+	public Map<String, Long> getTransformations() {
+		return transformations;
+	}
+
+	/**
+	 * The number of rule applications of a rule.
+	 *
+	 * @param rule 					the name of the rule
+	 * @return the number of rule applications
+	 */
+	public long getTransformations(String rule) {
+		return transformations.getOrDefault(rule, 0L);
+	}
+
+	/**
+	 * The total number of rule applications.
+	 *
+	 * @return the number of rule applications
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		return "TransformationSummary [total=" + total + ", transformations=" + transformations + "]";
+	}
+
+}
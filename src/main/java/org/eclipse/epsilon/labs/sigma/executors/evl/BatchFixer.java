@@ -0,0 +1,176 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.concurrent.IEolContextParallel;
+import org.eclipse.epsilon.evl.EvlModule;
+import org.eclipse.epsilon.evl.IEvlFixer;
+import org.eclipse.epsilon.evl.IEvlModule;
+import org.eclipse.epsilon.evl.execute.FixInstance;
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+import org.eclipse.epsilon.evl.execute.context.IEvlContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A non interactive {@link IEvlFixer} that applies fixes in bulk. The fix to apply to each
+ * unsatisfied constraint is chosen by a {@link FixSelector}.
+ * <p>
+ * Fixes are grouped by element: the fixes of an element are applied in sequence, and if the
+ * module's context is parallel, different elements are fixed concurrently. Hence, when using a
+ * parallel module, fixes should only modify the element they fix. After applying the fixes,
+ * only the fixed elements are validated again and the new unsatisfied constraints are fixed in
+ * the next iteration. The process finishes when no fixes are applicable or after the maximum
+ * number of iterations. Re-validation requires a module that extends {@link EvlModule},
+ * otherwise a single iteration is performed.
+ * <p>
+ * After fixing, the context's unsatisfied constraints contain the constraints that remain
+ * unsatisfied (fixed constraints are removed).
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class BatchFixer implements IEvlFixer {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchFixer.class);
+
+	/** The default maximum number of iterations. */
+	public static final int DEFAULT_MAX_ITERATIONS = 10;
+
+	private final FixSelector selector;
+	private final int maxIterations;
+	private int iterations;
+	private int appliedFixes;
+
+	/**
+	 * Instantiates a new batch fixer that applies the first fix of every unsatisfied constraint.
+	 */
+	public BatchFixer() {
+		this(FixSelector.first(), DEFAULT_MAX_ITERATIONS);
+	}
+
+	/**
+	 * Instantiates a new batch fixer.
+	 *
+	 * @param selector 				the selector used to choose the fixes to apply
+	 * @param maxIterations 		the maximum number of fix/re-validate iterations
+	 */
+	public BatchFixer(FixSelector selector, int maxIterations) {
+		this.selector = selector;
+		this.maxIterations = maxIterations;
+	}
+
+	@Override
+	public void fix(IEvlModule module) throws EolRuntimeException {
+		iterations = 0;
+		appliedFixes = 0;
+		IEvlContext context = module.getContext();
+		Collection<UnsatisfiedConstraint> pending = new ArrayList<>(context.getUnsatisfiedConstraints());
+		while (iterations < maxIterations) {
+			Map<Object, List<FixInstance>> fixesByElement = selectFixes(pending);
+			if (fixesByElement.isEmpty()) {
+				break;
+			}
+			iterations++;
+			logger.info("Fix iteration {}: fixing {} element(s).", iterations, fixesByElement.size());
+			applyFixes(context, module, fixesByElement);
+			if (!(module instanceof EvlModule)) {
+				// The unfixed constraints of the fixed elements can not be validated again
+				context.getUnsatisfiedConstraints().removeIf(UnsatisfiedConstraint::isFixed);
+				break;
+			}
+			Set<Object> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+			touched.addAll(fixesByElement.keySet());
+			context.getUnsatisfiedConstraints().removeIf(uc -> uc.isFixed() || touched.contains(uc.getInstance()));
+			pending = revalidate((EvlModule) module, touched);
+		}
+		logger.info("Applied {} fix(es) in {} iteration(s).", appliedFixes, iterations);
+	}
+
+	/**
+	 * The number of iterations performed by the last invocation of {@link #fix(IEvlModule)}.
+	 *
+	 * @return the iterations
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * The number of fixes applied by the last invocation of {@link #fix(IEvlModule)}.
+	 *
+	 * @return the applied fixes
+	 */
+	public int getAppliedFixes() {
+		return appliedFixes;
+	}
+
+	private Map<Object, List<FixInstance>> selectFixes(Collection<UnsatisfiedConstraint> unsatisfied)
+			throws EolRuntimeException {
+		Map<Object, List<FixInstance>> fixesByElement = new IdentityHashMap<>();
+		for (UnsatisfiedConstraint uc : unsatisfied) {
+			if (uc.isFixed()) {
+				continue;
+			}
+			Optional<FixInstance> fix = selector.select(uc);
+			if (fix.isPresent()) {
+				fixesByElement.computeIfAbsent(uc.getInstance(), e -> new ArrayList<>()).add(fix.get());
+				uc.setFixed(true);
+			}
+		}
+		return fixesByElement;
+	}
+
+	private void applyFixes(IEvlContext context, IEvlModule module, Map<Object, List<FixInstance>> fixesByElement)
+			throws EolRuntimeException {
+		if (context instanceof IEolContextParallel && ((IEolContextParallel) context).getParallelism() > 1) {
+			List<Callable<Void>> jobs = new ArrayList<>(fixesByElement.size());
+			for (List<FixInstance> fixes : fixesByElement.values()) {
+				jobs.add(() -> {
+					for (FixInstance fix : fixes) {
+						fix.perform();
+					}
+					return null;
+				});
+			}
+			((IEolContextParallel) context).executeAll(module, jobs);
+		}
+		else {
+			for (List<FixInstance> fixes : fixesByElement.values()) {
+				for (FixInstance fix : fixes) {
+					fix.perform();
+				}
+			}
+		}
+		for (List<FixInstance> fixes : fixesByElement.values()) {
+			appliedFixes += fixes.size();
+		}
+	}
+
+	private Collection<UnsatisfiedConstraint> revalidate(EvlModule module, Set<Object> touched)
+			throws EolRuntimeException {
+		// Cached satisfies() results might refer to the fixed elements
+		module.getContext().getConstraintTrace().clear();
+		EvlExecutionOptions options = EvlExecutionOptions.ALL
+				.withSelection(ConstraintSelection.ALL.withElements(new ArrayList<>(touched)));
+		return new ConstraintEvaluator(module, options).check();
+	}
+
+}
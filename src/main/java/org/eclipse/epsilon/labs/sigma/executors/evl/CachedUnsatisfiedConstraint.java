@@ -0,0 +1,65 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+/**
+ * A model independent representation of an unsatisfied constraint, used to store validation
+ * results. The constraint is identified by its context type name and name, and the element by
+ * the name of its model and its element id.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class CachedUnsatisfiedConstraint {
+
+	private final String contextName;
+	private final String constraintName;
+	private final String modelName;
+	private final String elementId;
+	private final String message;
+
+	/**
+	 * Instantiates a new cached unsatisfied constraint.
+	 *
+	 * @param contextName 			the constraint context type name
+	 * @param constraintName 		the constraint name
+	 * @param modelName 			the name of the model that owns the element
+	 * @param elementId 			the element id
+	 * @param message 				the unsatisfied message
+	 */
+	public CachedUnsatisfiedConstraint(String contextName, String constraintName, String modelName,
+		String elementId, String message) {
+		this.contextName = contextName;
+		this.constraintName = constraintName;
+		this.modelName = modelName;
+		this.elementId = elementId;
+		this.message = message;
+	}
+
+	public String getContextName() {
+		return contextName;
+	}
+
+	public String getConstraintName() {
+		return constraintName;
+	}
+
+	public String getModelName() {
+		return modelName;
+	}
+
+	public String getElementId() {
+		return elementId;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+}
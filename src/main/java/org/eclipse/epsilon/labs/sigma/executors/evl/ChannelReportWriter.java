@@ -0,0 +1,168 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+
+/**
+ * Base class for report writers that write UTF-8 text to a {@link WritableByteChannel}. Output
+ * is collected in a fixed size buffer that is flushed to the channel when full, so memory use
+ * does not depend on the number of unsatisfied constraints.
+ * <p>
+ * Subclasses provide the text for the begin, entry and end of the report. Element identifiers
+ * are computed using the provided function, by default {@link String#valueOf(Object)}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public abstract class ChannelReportWriter implements ValidationReportWriter {
+
+	/** The default buffer size, in bytes. */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	private final Function<Object, String> elementIdentifier;
+	private long count;
+
+	/**
+	 * Instantiates a new channel report writer.
+	 *
+	 * @param channel 				the channel to write to
+	 * @param bufferSize 			the size of the buffer, in bytes
+	 * @param elementIdentifier 	the function used to identify the elements in the report
+	 */
+	protected ChannelReportWriter(WritableByteChannel channel, int bufferSize,
+		Function<Object, String> elementIdentifier) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+		this.elementIdentifier = elementIdentifier;
+	}
+
+	@Override
+	public synchronized void begin() throws IOException {
+		count = 0;
+		append(header());
+	}
+
+	@Override
+	public synchronized void write(UnsatisfiedConstraint unsatisfiedConstraint) throws IOException {
+		append(entry(unsatisfiedConstraint, count++));
+	}
+
+	@Override
+	public synchronized void end() throws IOException {
+		append(footer(count));
+		flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	/**
+	 * The text written at the beginning of the report.
+	 *
+	 * @return the header
+	 */
+	protected abstract String header();
+
+	/**
+	 * The text written for an unsatisfied constraint.
+	 *
+	 * @param uc 					the unsatisfied constraint
+	 * @param index 				the number of unsatisfied constraints written before this one
+	 * @return the entry
+	 */
+	protected abstract String entry(UnsatisfiedConstraint uc, long index);
+
+	/**
+	 * The text written at the end of the report.
+	 *
+	 * @param total 				the number of unsatisfied constraints written
+	 * @return the footer
+	 */
+	protected abstract String footer(long total);
+
+	/**
+	 * Identify the element in the report.
+	 *
+	 * @param element 				the element
+	 * @return the element identifier
+	 */
+	protected String identify(Object element) {
+		return elementIdentifier.apply(element);
+	}
+
+	/**
+	 * Quote and escape a string so it can be used as a JSON string value.
+	 *
+	 * @param value 				the value
+	 * @return the JSON string, or the JSON null literal if the value is null
+	 */
+	protected static String quote(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				case '\b': sb.append("\\b"); break;
+				case '\f': sb.append("\\f"); break;
+				default:
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int) c));
+					}
+					else {
+						sb.append(c);
+					}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private void append(String text) throws IOException {
+		if (text.isEmpty()) {
+			return;
+		}
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,200 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.epsilon.common.module.ModuleElement;
+import org.eclipse.epsilon.eol.dom.Expression;
+import org.eclipse.epsilon.eol.dom.OperationCallExpression;
+import org.eclipse.epsilon.eol.dom.StringLiteral;
+import org.eclipse.epsilon.evl.dom.Constraint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ConstraintDependencyGraph captures the dependencies between constraints introduced by
+ * {@code satisfies}, {@code satisfiesAll} and {@code satisfiesOne} invocations in their guard,
+ * check and message blocks. Only invocations with string literal arguments can be resolved.
+ * <p>
+ * The graph is used to evaluate constraints in topological waves: all the constraints in a wave
+ * only depend on constraints of previous waves. Constraints that invoke satisfies with a
+ * computed argument, or that are part of a dependency cycle, are placed in the last wave, as are
+ * the constraints that depend on them.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class ConstraintDependencyGraph {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConstraintDependencyGraph.class);
+
+	private static final Set<String> SATISFIES_OPERATIONS = new HashSet<>(
+			Arrays.asList("satisfies", "satisfiesAll", "satisfiesOne"));
+
+	private final Map<Constraint, Set<Constraint>> prerequisites = new LinkedHashMap<>();
+	private final Set<Constraint> unresolved = new HashSet<>();
+
+	/**
+	 * Instantiates a new constraint dependency graph for the given constraints.
+	 *
+	 * @param constraints 			all the constraints of the module
+	 */
+	public ConstraintDependencyGraph(Collection<Constraint> constraints) {
+		Map<String, List<Constraint>> byName = new HashMap<>();
+		for (Constraint c : constraints) {
+			byName.computeIfAbsent(c.getName(), n -> new ArrayList<>()).add(c);
+		}
+		for (Constraint c : constraints) {
+			Set<Constraint> deps = new LinkedHashSet<>();
+			List<ModuleElement> blocks = Arrays.asList(c.getGuardBlock(), c.getCheckBlock(), c.getMessageBlock());
+			for (ModuleElement block : blocks) {
+				if (block != null && !collect(block, c, byName, deps)) {
+					unresolved.add(c);
+				}
+			}
+			prerequisites.put(c, deps);
+		}
+	}
+
+	/**
+	 * Get the constraints the given constraint depends on.
+	 *
+	 * @param constraint 			the constraint
+	 * @return the prerequisites
+	 */
+	public Set<Constraint> getPrerequisites(Constraint constraint) {
+		return Collections.unmodifiableSet(prerequisites.getOrDefault(constraint, Collections.emptySet()));
+	}
+
+	/**
+	 * Get all the constraints that are prerequisites of another constraint.
+	 *
+	 * @return the constraints depended on
+	 */
+	public Set<Constraint> getDependedOn() {
+		Set<Constraint> result = new HashSet<>();
+		prerequisites.values().forEach(result::addAll);
+		return result;
+	}
+
+	/**
+	 * Sort the constraints in topological waves.
+	 *
+	 * @return the waves, in evaluation order
+	 */
+	public List<Set<Constraint>> getWaves() {
+		Map<Constraint, List<Constraint>> dependents = new HashMap<>();
+		for (Map.Entry<Constraint, Set<Constraint>> e : prerequisites.entrySet()) {
+			for (Constraint p : e.getValue()) {
+				dependents.computeIfAbsent(p, k -> new ArrayList<>()).add(e.getKey());
+			}
+		}
+		// Constraints that (transitively) depend on an unresolved one can only run after it
+		Set<Constraint> last = new LinkedHashSet<>(unresolved);
+		Deque<Constraint> toVisit = new ArrayDeque<>(unresolved);
+		while (!toVisit.isEmpty()) {
+			for (Constraint d : dependents.getOrDefault(toVisit.poll(), Collections.emptyList())) {
+				if (last.add(d)) {
+					toVisit.add(d);
+				}
+			}
+		}
+		Map<Constraint, Integer> pending = new HashMap<>();
+		for (Map.Entry<Constraint, Set<Constraint>> e : prerequisites.entrySet()) {
+			if (!last.contains(e.getKey())) {
+				pending.put(e.getKey(), e.getValue().size());
+			}
+		}
+		List<Set<Constraint>> waves = new ArrayList<>();
+		Deque<Constraint> ready = new ArrayDeque<>();
+		pending.forEach((c, n) -> {
+			if (n == 0) {
+				ready.add(c);
+			}
+		});
+		while (!ready.isEmpty()) {
+			Set<Constraint> wave = new LinkedHashSet<>(ready);
+			ready.clear();
+			for (Constraint c : wave) {
+				pending.remove(c);
+				for (Constraint d : dependents.getOrDefault(c, Collections.emptyList())) {
+					Integer n = pending.computeIfPresent(d, (k, v) -> v - 1);
+					if (n != null && n == 0) {
+						ready.add(d);
+					}
+				}
+			}
+			waves.add(wave);
+		}
+		if (!pending.isEmpty()) {
+			logger.warn("Cyclic satisfies() dependencies found, evaluating {} last", pending.keySet());
+			last.addAll(pending.keySet());
+		}
+		if (!last.isEmpty()) {
+			waves.add(last);
+		}
+		return waves;
+	}
+
+	/**
+	 * Collect the constraints referenced by satisfies invocations in the element.
+	 *
+	 * @return false if a satisfies invocation could not be resolved
+	 */
+	private static boolean collect(ModuleElement element, Constraint owner, Map<String, List<Constraint>> byName,
+		Set<Constraint> deps) {
+		boolean resolved = true;
+		if (element instanceof OperationCallExpression) {
+			OperationCallExpression call = (OperationCallExpression) element;
+			if (SATISFIES_OPERATIONS.contains(call.getName())) {
+				for (Expression param : call.getParameterExpressions()) {
+					if (param instanceof StringLiteral) {
+						String name = ((StringLiteral) param).getValue();
+						List<Constraint> candidates = byName.get(name);
+						if (candidates == null) {
+							resolved = false;
+							continue;
+						}
+						deps.add(sameContextOrFirst(candidates, owner));
+					}
+					else {
+						resolved = false;
+					}
+				}
+			}
+		}
+		for (ModuleElement child : element.getChildren()) {
+			resolved &= collect(child, owner, byName, deps);
+		}
+		return resolved;
+	}
+
+	private static Constraint sameContextOrFirst(List<Constraint> candidates, Constraint owner) {
+		for (Constraint c : candidates) {
+			if (c.getConstraintContext() == owner.getConstraintContext()) {
+				return c;
+			}
+		}
+		return candidates.get(0);
+	}
+
+}
@@ -0,0 +1,609 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+import org.eclipse.epsilon.eol.execute.context.concurrent.IEolContextParallel;
+import org.eclipse.epsilon.evl.EvlModule;
+import org.eclipse.epsilon.evl.dom.Constraint;
+import org.eclipse.epsilon.evl.dom.ConstraintContext;
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+import org.eclipse.epsilon.evl.execute.context.IEvlContext;
+import org.eclipse.epsilon.labs.sigma.executors.util.RuleCostModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ConstraintEvaluator replaces the rule processing of an {@link EvlModule} so that the
+ * evaluation honours the {@link EvlExecutionOptions}, including its {@link ConstraintSelection}. The module's pre and post blocks (and
+ * hence the fixer) are executed as usual.
+ * <p>
+ * If the module's context is a parallel context with more than one thread, elements are
+ * checked concurrently using the context's executor service. Once the limit of unsatisfied
+ * constraints is reached, pending jobs are cancelled and running jobs stop before checking
+ * their next constraint.
+ * <p>
+ * With dependency scheduling, constraints are evaluated in the waves computed by the
+ * {@link ConstraintDependencyGraph}: a wave only starts once the previous one has completed, so
+ * the prerequisites of a constraint have been memoised in the constraint trace by the time it
+ * invokes {@code satisfies}, and constraints in the same wave run fully in parallel.
+ * <p>
+ * With guard caching, the result of the context guard and of guards shared by several
+ * constraints of a context are recorded in a {@link GuardCache}, indexed by the position of the
+ * element in the context's extent.
+ * <p>
+ * If a {@link RuleCostModel} is provided, the time spent in each constraint is measured and
+ * recorded in it, and parallel work is ordered longest first according to its historical cost.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class ConstraintEvaluator {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConstraintEvaluator.class);
+
+	private final EvlModule module;
+	private final EvlExecutionOptions options;
+	private final ValidationReportWriter reportWriter;
+	private final RuleCostModel costModel;
+	private final Map<Constraint, Timing> timings = new ConcurrentHashMap<>();
+	private final AtomicInteger unsatisfiedCount = new AtomicInteger();
+	private final AtomicBoolean stop = new AtomicBoolean();
+	private final Queue<UnsatisfiedConstraint> unsatisfied = new ConcurrentLinkedQueue<>();
+
+	ConstraintEvaluator(EvlModule module, EvlExecutionOptions options) {
+		this(module, options, null);
+	}
+
+	/**
+	 * Instantiates a new constraint evaluator that writes each unsatisfied constraint to the
+	 * report writer as soon as it is found.
+	 *
+	 * @param module 				the module
+	 * @param options 				the execution options
+	 * @param reportWriter 			the report writer, can be null
+	 */
+	ConstraintEvaluator(EvlModule module, EvlExecutionOptions options, ValidationReportWriter reportWriter) {
+		this(module, options, reportWriter, null);
+	}
+
+	/**
+	 * Instantiates a new constraint evaluator that schedules parallel work using the cost model,
+	 * and records the measured cost of each constraint in it.
+	 *
+	 * @param module 				the module
+	 * @param options 				the execution options
+	 * @param reportWriter 			the report writer, can be null
+	 * @param costModel 			the cost model, can be null
+	 */
+	ConstraintEvaluator(EvlModule module, EvlExecutionOptions options, ValidationReportWriter reportWriter,
+		RuleCostModel costModel) {
+		this.module = module;
+		this.options = options;
+		this.reportWriter = reportWriter;
+		this.costModel = costModel;
+	}
+
+	/**
+	 * Execute the module, evaluating only the constraints allowed by the options.
+	 *
+	 * @return the unsatisfied constraints of the module's context once the fixer, if any, has run,
+	 * 								as returned by {@link EvlModule#execute()}
+	 * @throws EolRuntimeException if there is an error during evaluation
+	 */
+	Collection<UnsatisfiedConstraint> execute() throws EolRuntimeException {
+		logger.info("Evaluating constraints with {}", options);
+		module.prepareExecution();
+		check();
+		module.postExecution();
+		return module.getContext().getUnsatisfiedConstraints();
+	}
+
+	/**
+	 * Evaluate the constraints allowed by the options, without executing the module's pre and
+	 * post blocks.
+	 *
+	 * @return the unsatisfied constraints, at most {@link EvlExecutionOptions#getMaxUnsatisfied()}
+	 * @throws EolRuntimeException if there is an error during evaluation
+	 */
+	Collection<UnsatisfiedConstraint> check() throws EolRuntimeException {
+		List<List<CheckJob>> waves = createJobs();
+		IEvlContext context = module.getContext();
+		boolean parallel = context instanceof IEolContextParallel && ((IEolContextParallel) context).getParallelism() > 1;
+		for (List<CheckJob> jobs : waves) {
+			if (stop.get()) {
+				break;
+			}
+			if (parallel) {
+				IEolContextParallel parallelContext = (IEolContextParallel) context;
+				if (costModel != null && !costModel.isEmpty()) {
+					jobs = schedule(jobs, parallelContext.getParallelism());
+				}
+				executeParallel(parallelContext, jobs);
+			}
+			else {
+				executeSequential(jobs);
+			}
+		}
+		if (stop.get()) {
+			logger.info("Evaluation stopped after {} unsatisfied constraint(s).", unsatisfied.size());
+		}
+		if (costModel != null) {
+			recordTimings();
+		}
+		return new ArrayList<>(unsatisfied);
+	}
+
+	/**
+	 * Create one job per constraint context and element, grouped in waves. All the jobs of a wave
+	 * are completed before the next wave starts. Without dependency scheduling there is a single
+	 * wave. The extent of a constraint context is only computed if at least one of its
+	 * constraints is selected and no explicit elements were provided.
+	 *
+	 * @return the jobs of each wave
+	 * @throws EolRuntimeException if the elements of a context can not be retrieved
+	 */
+	private List<List<CheckJob>> createJobs() throws EolRuntimeException {
+		IEvlContext context = module.getContext();
+		ConstraintSelection selection = options.getSelection();
+		Optional<Collection<?>> elements = selection.getElements();
+		Map<ConstraintContext, List<Constraint>> selected = new LinkedHashMap<>();
+		Map<ConstraintContext, Collection<?>> extents = new HashMap<>();
+		for (ConstraintContext cc : module.getConstraintContexts()) {
+			if (!selection.selects(cc)) {
+				continue;
+			}
+			List<Constraint> constraints = selectConstraints(cc);
+			if (constraints.isEmpty()) {
+				continue;
+			}
+			selected.put(cc, constraints);
+			if (elements.isPresent()) {
+				List<Object> ofKind = new ArrayList<>();
+				for (Object element : elements.get()) {
+					if (cc.isOfSourceKind(element, context)) {
+						ofKind.add(element);
+					}
+				}
+				extents.put(cc, ofKind);
+			}
+			else {
+				extents.put(cc, cc.getAllOfSourceKind(context));
+			}
+		}
+		Map<ConstraintContext, ContextGuards> guards = new HashMap<>();
+		if (options.isGuardCaching()) {
+			selected.forEach((cc, constraints) -> guards.put(cc, contextGuards(constraints, extents.get(cc).size())));
+		}
+		List<List<CheckJob>> waves = new ArrayList<>();
+		if (!options.isDependencyScheduling()) {
+			List<CheckJob> jobs = new ArrayList<>();
+			selected.forEach((cc, constraints) -> addJobs(cc, constraints, extents.get(cc), guards.get(cc), jobs));
+			waves.add(jobs);
+			return waves;
+		}
+		for (Set<Constraint> wave : dependencyWaves()) {
+			List<CheckJob> jobs = new ArrayList<>();
+			selected.forEach((cc, constraints) -> {
+				List<Constraint> inWave = new ArrayList<>(constraints);
+				inWave.retainAll(wave);
+				addJobs(cc, inWave, extents.get(cc), guards.get(cc), jobs);
+			});
+			if (!jobs.isEmpty()) {
+				waves.add(jobs);
+			}
+		}
+		logger.info("Constraints scheduled in {} wave(s).", waves.size());
+		return waves;
+	}
+
+	private void addJobs(ConstraintContext cc, List<Constraint> constraints, Collection<?> extent,
+		ContextGuards guards, List<CheckJob> jobs) {
+		if (constraints.isEmpty()) {
+			return;
+		}
+		int position = 0;
+		for (Object element : extent) {
+			jobs.add(new CheckJob(cc, constraints, element, guards, position++));
+		}
+	}
+
+	/**
+	 * Assign a guard cache slot to each group of constraints that share the same guard
+	 * expression. Constraints with a unique guard, or whose guard invokes {@code satisfies}, are
+	 * evaluated as usual; only the context guard is cached for them.
+	 *
+	 * @param constraints 			the constraints of the context
+	 * @param size 					the number of elements of the context
+	 * @return the context guards
+	 */
+	private ContextGuards contextGuards(List<Constraint> constraints, int size) {
+		Map<String, List<Constraint>> bySignature = new LinkedHashMap<>();
+		for (Constraint c : constraints) {
+			if (c.getGuardBlock() == null || c.guardBlockUsesSatisfies()) {
+				continue;
+			}
+			String signature = GuardCache.signature(c.getGuardBlock());
+			if (signature != null) {
+				bySignature.computeIfAbsent(signature, k -> new ArrayList<>()).add(c);
+			}
+		}
+		Map<Constraint, Integer> slots = new HashMap<>();
+		int slot = GuardCache.CONTEXT_GUARD + 1;
+		for (List<Constraint> shared : bySignature.values()) {
+			if (shared.size() > 1) {
+				for (Constraint c : shared) {
+					slots.put(c, slot);
+				}
+				slot++;
+			}
+		}
+		return new ContextGuards(slots, new GuardCache(size, slot));
+	}
+
+	/**
+	 * Compute the evaluation waves of all the module's constraints. Constraints that others
+	 * depend on are marked as dependencies so that their results are recorded in the
+	 * constraint trace, and hence not evaluated again by {@code satisfies}.
+	 *
+	 * @return the waves
+	 */
+	private List<Set<Constraint>> dependencyWaves() {
+		List<Constraint> all = new ArrayList<>();
+		for (ConstraintContext cc : module.getConstraintContexts()) {
+			all.addAll(cc.getConstraints());
+		}
+		ConstraintDependencyGraph graph = new ConstraintDependencyGraph(all);
+		graph.getDependedOn().forEach(Constraint::setAsDependency);
+		return graph.getWaves();
+	}
+
+	private List<Constraint> selectConstraints(ConstraintContext cc) throws EolRuntimeException {
+		IEvlContext context = module.getContext();
+		List<Constraint> constraints = new ArrayList<>();
+		for (Constraint c : cc.getConstraints()) {
+			if (options.isSkipCritiques() && c.isCritique()) {
+				continue;
+			}
+			if (options.getSelection().selects(c, context)) {
+				constraints.add(c);
+			}
+		}
+		return constraints;
+	}
+
+	/**
+	 * Order the jobs of a wave by their estimated cost, longest first, so that expensive jobs do
+	 * not end up at the back of the queue. The jobs of hot contexts, i.e. contexts whose
+	 * estimated cost exceeds the fair share of a thread, are split into one job per constraint.
+	 * Constraints without historical data are assumed to have the average cost.
+	 *
+	 * @param jobs 					the jobs of the wave
+	 * @param parallelism 			the number of threads
+	 * @return the scheduled jobs
+	 */
+	private List<CheckJob> schedule(List<CheckJob> jobs, int parallelism) {
+		Map<ConstraintContext, Integer> sizes = new HashMap<>();
+		for (CheckJob job : jobs) {
+			sizes.merge(job.constraintContext, 1, Integer::sum);
+		}
+		Map<Constraint, Double> estimates = new HashMap<>();
+		double known = 0;
+		for (CheckJob job : jobs) {
+			for (Constraint c : job.constraints) {
+				if (!estimates.containsKey(c)) {
+					OptionalDouble estimate = costModel.estimate(c.getName(), sizes.get(job.constraintContext));
+					estimates.put(c, estimate.isPresent() ? estimate.getAsDouble() : Double.NaN);
+					known += estimate.orElse(0);
+				}
+			}
+		}
+		long withData = estimates.values().stream().filter(v -> !v.isNaN()).count();
+		double average = withData == 0 ? 0 : known / withData;
+		estimates.replaceAll((c, v) -> v.isNaN() ? average : v);
+
+		Map<ConstraintContext, Double> contextCosts = new HashMap<>();
+		double total = 0;
+		for (CheckJob job : jobs) {
+			double cost = job.cost(estimates);
+			contextCosts.merge(job.constraintContext, cost, Double::sum);
+			total += cost;
+		}
+		double share = total / parallelism;
+		List<CheckJob> scheduled = new ArrayList<>(jobs.size());
+		for (CheckJob job : jobs) {
+			if (contextCosts.get(job.constraintContext) > share && job.constraints.size() > 1) {
+				for (Constraint c : job.constraints) {
+					scheduled.add(job.split(c));
+				}
+			}
+			else {
+				scheduled.add(job);
+			}
+		}
+		Map<CheckJob, Double> costs = new IdentityHashMap<>();
+		for (CheckJob job : scheduled) {
+			costs.put(job, job.cost(estimates));
+		}
+		scheduled.sort(Comparator.comparing(costs::get, Comparator.reverseOrder()));
+		return scheduled;
+	}
+
+	/**
+	 * Record the measured cost of each constraint in the cost model. Constraints with the same
+	 * name (in different contexts) are aggregated, as rules are identified by name.
+	 */
+	private void recordTimings() {
+		Map<String, long[]> byName = new HashMap<>();
+		timings.forEach((c, t) -> {
+			long[] total = byName.computeIfAbsent(c.getName(), n -> new long[2]);
+			total[0] += t.nanos.sum();
+			total[1] += t.invocations.sum();
+		});
+		byName.forEach((name, total) -> costModel.record(name, total[0], total[1]));
+	}
+
+	private void executeSequential(List<CheckJob> jobs) throws EolRuntimeException {
+		try {
+			for (CheckJob job : jobs) {
+				if (stop.get()) {
+					break;
+				}
+				job.run();
+			}
+		}
+		catch (EvaluationException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void executeParallel(IEolContextParallel context, List<CheckJob> jobs) throws EolRuntimeException {
+		ExecutorService executor = context.beginParallelTask(module);
+		List<Future<?>> futures = new ArrayList<>(jobs.size());
+		try {
+			for (CheckJob job : jobs) {
+				futures.add(executor.submit(job));
+			}
+			for (Future<?> f : futures) {
+				if (stop.get()) {
+					f.cancel(false);
+					continue;
+				}
+				try {
+					f.get();
+				}
+				catch (CancellationException e) {
+					// Cancelled because the limit was reached
+				}
+				catch (ExecutionException e) {
+					futures.forEach(ff -> ff.cancel(false));
+					throw wrap(e.getCause());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					futures.forEach(ff -> ff.cancel(false));
+					throw new EolInternalException(e);
+				}
+			}
+		}
+		finally {
+			context.endParallelTask();
+		}
+	}
+
+	/**
+	 * Record an unsatisfied constraint and signal the evaluation to stop if the limit has
+	 * been reached. Results beyond the limit (e.g. from jobs running in parallel) are dropped,
+	 * also from the unsatisfied constraints of the context.
+	 *
+	 * @param uc the unsatisfied constraint
+	 * @throws EolRuntimeException if the constraint can not be written to the report
+	 */
+	private void report(UnsatisfiedConstraint uc) throws EolRuntimeException {
+		int max = options.getMaxUnsatisfied();
+		int count = unsatisfiedCount.incrementAndGet();
+		if (max == EvlExecutionOptions.UNLIMITED || count <= max) {
+			unsatisfied.add(uc);
+			if (reportWriter != null) {
+				try {
+					reportWriter.write(uc);
+				}
+				catch (IOException e) {
+					throw new EolInternalException(e);
+				}
+			}
+		}
+		else {
+			module.getContext().getUnsatisfiedConstraints().remove(uc);
+		}
+		if ((options.isFailFast() && !uc.getConstraint().isCritique())
+				|| (max != EvlExecutionOptions.UNLIMITED && count >= max)) {
+			stop.set(true);
+		}
+	}
+
+	private static EolRuntimeException wrap(Throwable t) {
+		if (t instanceof EvaluationException) {
+			return ((EvaluationException) t).getCause();
+		}
+		if (t instanceof EolRuntimeException) {
+			return (EolRuntimeException) t;
+		}
+		return new EolInternalException(t);
+	}
+
+	/**
+	 * Check all the constraints of a context against one element.
+	 */
+	private class CheckJob implements Runnable {
+
+		private final ConstraintContext constraintContext;
+		private final List<Constraint> constraints;
+		private final Object element;
+		private final ContextGuards guards;
+		private final int position;
+
+		CheckJob(ConstraintContext constraintContext, List<Constraint> constraints, Object element,
+			ContextGuards guards, int position) {
+			this.constraintContext = constraintContext;
+			this.constraints = constraints;
+			this.element = element;
+			this.guards = guards;
+			this.position = position;
+		}
+
+		@Override
+		public void run() {
+			IEvlContext context = module.getContext();
+			try {
+				if (stop.get() || !shouldBeChecked(context)) {
+					return;
+				}
+				for (Constraint constraint : constraints) {
+					if (stop.get()) {
+						return;
+					}
+					long start = costModel == null ? 0 : System.nanoTime();
+					Optional<UnsatisfiedConstraint> result = execute(constraint, context);
+					if (costModel != null) {
+						timings.computeIfAbsent(constraint, c -> new Timing()).add(System.nanoTime() - start);
+					}
+					if (result.isPresent()) {
+						report(result.get());
+					}
+				}
+			}
+			catch (EolRuntimeException e) {
+				throw new EvaluationException(e);
+			}
+		}
+
+		/**
+		 * The estimated cost of the job, in nanoseconds.
+		 */
+		private double cost(Map<Constraint, Double> estimates) {
+			double cost = 0;
+			for (Constraint c : constraints) {
+				cost += estimates.get(c);
+			}
+			return cost;
+		}
+
+		/**
+		 * Create a job that only checks the given constraint.
+		 */
+		private CheckJob split(Constraint constraint) {
+			return new CheckJob(constraintContext, Collections.singletonList(constraint), element, guards, position);
+		}
+
+		private boolean shouldBeChecked(IEvlContext context) throws EolRuntimeException {
+			if (guards == null) {
+				return constraintContext.shouldBeChecked(element, context);
+			}
+			Boolean result = guards.cache.get(position, GuardCache.CONTEXT_GUARD);
+			if (result == null) {
+				result = constraintContext.shouldBeChecked(element, context);
+				guards.cache.put(position, GuardCache.CONTEXT_GUARD, result);
+			}
+			return result;
+		}
+
+		/**
+		 * Execute the constraint, using the cached result of its guard if it is shared with other
+		 * constraints. This follows {@link Constraint#execute(IEolContext, Object)}.
+		 */
+		private Optional<UnsatisfiedConstraint> execute(Constraint constraint, IEvlContext context)
+			throws EolRuntimeException {
+			Integer slot = guards == null ? null : guards.slots.get(constraint);
+			if (slot == null) {
+				return constraint.execute(context, element);
+			}
+			if (context.shouldShortCircuit(constraint) || constraint.isLazy(context)) {
+				return Optional.empty();
+			}
+			Boolean applies = guards.cache.get(position, slot);
+			if (applies == null) {
+				applies = constraint.appliesTo(element, context);
+				guards.cache.put(position, slot, applies);
+			}
+			return applies ? constraint.check(element, context) : Optional.empty();
+		}
+	}
+
+	/**
+	 * The accumulated execution time of a constraint.
+	 */
+	private static class Timing {
+
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder invocations = new LongAdder();
+
+		void add(long duration) {
+			nanos.add(duration);
+			invocations.increment();
+		}
+	}
+
+	/**
+	 * The guard cache of a constraint context, and the slot of each constraint with a shared guard.
+	 */
+	private static class ContextGuards {
+
+		private final Map<Constraint, Integer> slots;
+		private final GuardCache cache;
+
+		ContextGuards(Map<Constraint, Integer> slots, GuardCache cache) {
+			this.slots = slots;
+			this.cache = cache;
+		}
+	}
+
+	/**
+	 * Unchecked wrapper used to get {@link EolRuntimeException}s out of the jobs.
+	 */
+	private static class EvaluationException extends RuntimeException {
+
+		private static final long serialVersionUID = 4520370402947736108L;
+
+		EvaluationException(EolRuntimeException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized EolRuntimeException getCause() {
+			return (EolRuntimeException) super.getCause();
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.evl.dom.Constraint;
+import org.eclipse.epsilon.evl.dom.ConstraintContext;
+import org.eclipse.epsilon.evl.execute.context.IEvlContext;
+
+/**
+ * The ConstraintSelection restricts an EVL execution to a subset of the constraints in the
+ * script and, optionally, to a subset of the model elements.
+ * <p>
+ * Constraints can be selected by the name of their context (i.e. the context type name), by
+ * their own name or by tag. A constraint is tagged using a {@code @tag} annotation, on the
+ * constraint or on its context; multiple tags can be given as a comma separated list:
+ * <pre>
+ * {@code
+ * context Person {
+ *   @tag naming, critical
+ *   constraint HasName {
+ *     check: self.name.isDefined()
+ *   }
+ * }
+ * }
+ * </pre>
+ * Each non-empty criterion must be satisfied for a constraint to be selected. An empty
+ * criterion selects everything.
+ * <p>
+ * If elements are provided, only those elements are validated, and the extents of the
+ * constraint contexts (i.e. allOfKind) are not computed.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class ConstraintSelection {
+
+	/** The name of the annotation used to tag constraints. */
+	public static final String TAG_ANNOTATION = "tag";
+
+	/** Select all constraints on all elements. */
+	public static final ConstraintSelection ALL = new ConstraintSelection(
+			Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), null);
+
+	private final Set<String> contextNames;
+	private final Set<String> constraintNames;
+	private final Set<String> tags;
+	private final Collection<?> elements;
+
+	/**
+	 * Instantiates a new constraint selection.
+	 *
+	 * @param contextNames 			the names of the constraint contexts to evaluate, empty for all
+	 * @param constraintNames 		the names of the constraints to evaluate, empty for all
+	 * @param tags 					the tags of the constraints to evaluate, empty for all
+	 * @param elements 				the elements to validate, null for all
+	 */
+	public ConstraintSelection(Set<String> contextNames, Set<String> constraintNames, Set<String> tags,
+		Collection<?> elements) {
+		this.contextNames = Collections.unmodifiableSet(new HashSet<>(contextNames));
+		this.constraintNames = Collections.unmodifiableSet(new HashSet<>(constraintNames));
+		this.tags = Collections.unmodifiableSet(new HashSet<>(tags));
+		this.elements = elements == null ? null : Collections.unmodifiableCollection(elements);
+	}
+
+	/**
+	 * Create a copy of this selection that only evaluates the given constraint contexts.
+	 *
+	 * @param names 				the names of the constraint contexts
+	 * @return the new selection
+	 */
+	public ConstraintSelection withContexts(String... names) {
+		return new ConstraintSelection(new HashSet<>(Arrays.asList(names)), constraintNames, tags, elements);
+	}
+
+	/**
+	 * Create a copy of this selection that only evaluates the given constraints.
+	 *
+	 * @param names 				the names of the constraints
+	 * @return the new selection
+	 */
+	public ConstraintSelection withConstraints(String... names) {
+		return new ConstraintSelection(contextNames, new HashSet<>(Arrays.asList(names)), tags, elements);
+	}
+
+	/**
+	 * Create a copy of this selection that only evaluates constraints with any of the given tags.
+	 *
+	 * @param tags 					the tags
+	 * @return the new selection
+	 */
+	public ConstraintSelection withTags(String... tags) {
+		return new ConstraintSelection(contextNames, constraintNames, new HashSet<>(Arrays.asList(tags)), elements);
+	}
+
+	/**
+	 * Create a copy of this selection that only validates the given elements.
+	 *
+	 * @param elements 				the elements
+	 * @return the new selection
+	 */
+	public ConstraintSelection withElements(Collection<?> elements) {
+		return new ConstraintSelection(contextNames, constraintNames, tags, elements);
+	}
+
+	/**
+	 * Gets the selected context names.
+	 *
+	 * @return the context names, empty if all contexts are selected
+	 */
+	public Set<String> getContextNames() {
+		return contextNames;
+	}
+
+	/**
+	 * Gets the selected constraint names.
+	 *
+	 * @return the constraint names, empty if all constraints are selected
+	 */
+	public Set<String> getConstraintNames() {
+		return constraintNames;
+	}
+
+	/**
+	 * Gets the selected tags.
+	 *
+	 * @return the tags, empty if constraints are not selected by tag
+	 */
+	public Set<String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * Gets the elements to validate.
+	 *
+	 * @return the elements, empty if all elements are validated
+	 */
+	public Optional<Collection<?>> getElements() {
+		return Optional.ofNullable(elements);
+	}
+
+	/**
+	 * Checks if this selection evaluates all constraints on all elements.
+	 *
+	 * @return true, if nothing is filtered
+	 */
+	public boolean isAll() {
+		return contextNames.isEmpty() && constraintNames.isEmpty() && tags.isEmpty() && elements == null;
+	}
+
+	/**
+	 * Checks if the constraint context is selected.
+	 *
+	 * @param constraintContext 	the constraint context
+	 * @return true, if selected
+	 */
+	public boolean selects(ConstraintContext constraintContext) {
+		return contextNames.isEmpty() || contextNames.contains(constraintContext.getTypeName());
+	}
+
+	/**
+	 * Checks if the constraint is selected.
+	 *
+	 * @param constraint 			the constraint
+	 * @param context 				the EVL context, used to evaluate the tag annotations
+	 * @return true, if selected
+	 * @throws EolRuntimeException if a tag annotation can not be evaluated
+	 */
+	public boolean selects(Constraint constraint, IEvlContext context) throws EolRuntimeException {
+		if (!selects(constraint.getConstraintContext())) {
+			return false;
+		}
+		if (!(constraintNames.isEmpty() || constraintNames.contains(constraint.getName()))) {
+			return false;
+		}
+		if (tags.isEmpty()) {
+			return true;
+		}
+		Set<String> constraintTags = new HashSet<>();
+		addTags(constraint.getAnnotationsValues(TAG_ANNOTATION, context), constraintTags);
+		addTags(constraint.getConstraintContext().getAnnotationsValues(TAG_ANNOTATION, context), constraintTags);
+		return constraintTags.stream().anyMatch(tags::contains);
+	}
+
+	private void addTags(Collection<Object> values, Set<String> result) {
+		for (Object value : values) {
+			if (value == null) {
+				continue;
+			}
+			for (String tag : value.toString().split(",")) {
+				if (!tag.trim().isEmpty()) {
+					result.add(tag.trim());
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConstraintSelection [contextNames=" + contextNames + ", constraintNames=" + constraintNames
+				+ ", tags=" + tags + ", elements=" + (elements == null ? "all" : elements.size()) + "]";
+	}
+
+}
@@ -0,0 +1,217 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A validation result store that keeps results in a local folder, one file per key. The store
+ * is bounded by the total size of the files; the least recently used files (by modification
+ * time, which is updated on every hit) are deleted first.
+ * <p>
+ * The total size is computed when the store is created and then kept up to date by the store,
+ * so the folder is only listed again when the size goes over the budget. Files are then evicted
+ * until the total size is below 90% of the budget, so eviction does not run again on the next
+ * write.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class DiskValidationResultStore implements ValidationResultStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(DiskValidationResultStore.class);
+
+	private static final String EXTENSION = ".evlcache";
+	private static final int FORMAT_VERSION = 1;
+	/** The fraction of the maximum size that is kept when files are evicted. */
+	private static final double EVICTION_TARGET = 0.9;
+
+	private final Path folder;
+	private final long maxBytes;
+	private long totalBytes;
+
+	/**
+	 * Instantiates a new disk validation result store.
+	 *
+	 * @param folder 				the folder where results are stored, created if needed
+	 * @param maxBytes 				the maximum total size of the stored results
+	 * @throws IOException if the folder can not be created
+	 */
+	public DiskValidationResultStore(Path folder, long maxBytes) throws IOException {
+		this.folder = Files.createDirectories(folder);
+		this.maxBytes = maxBytes;
+		for (Path p : listFiles()) {
+			totalBytes += size(p);
+		}
+		if (totalBytes > maxBytes) {
+			evict();
+		}
+	}
+
+	@Override
+	public synchronized Optional<List<CachedUnsatisfiedConstraint>> get(String key) {
+		Path file = fileFor(key);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != FORMAT_VERSION) {
+				return Optional.empty();
+			}
+			int count = in.readInt();
+			List<CachedUnsatisfiedConstraint> results = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				results.add(new CachedUnsatisfiedConstraint(
+						readString(in), readString(in), readString(in), readString(in), readString(in)));
+			}
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return Optional.of(results);
+		}
+		catch (NoSuchFileException e) {
+			return Optional.empty();
+		}
+		catch (IOException e) {
+			logger.warn("Unable to read cached results from {}", file, e);
+			return Optional.empty();
+		}
+	}
+
+	@Override
+	public synchronized void put(String key, List<CachedUnsatisfiedConstraint> results) {
+		Path file = fileFor(key);
+		try {
+			Path tmp = Files.createTempFile(folder, key, ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(results.size());
+				for (CachedUnsatisfiedConstraint r : results) {
+					writeString(out, r.getContextName());
+					writeString(out, r.getConstraintName());
+					writeString(out, r.getModelName());
+					writeString(out, r.getElementId());
+					writeString(out, r.getMessage());
+				}
+			}
+			long previous = size(file);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			totalBytes += size(file) - previous;
+			if (totalBytes > maxBytes) {
+				evict();
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Unable to write cached results to {}", file, e);
+		}
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		Path file = fileFor(key);
+		try {
+			long size = size(file);
+			if (Files.deleteIfExists(file)) {
+				totalBytes -= size;
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Unable to remove cached results for {}", key, e);
+		}
+	}
+
+	private Path fileFor(String key) {
+		return folder.resolve(key + EXTENSION);
+	}
+
+	/**
+	 * Delete the least recently used files until the total size is below the eviction target.
+	 * The total size is computed again from the folder, in case it was modified by others.
+	 */
+	private void evict() throws IOException {
+		List<Path> files = listFiles();
+		long total = 0;
+		for (Path p : files) {
+			total += size(p);
+		}
+		long target = (long) (maxBytes * EVICTION_TARGET);
+		if (total > target) {
+			files.sort(Comparator.comparing(DiskValidationResultStore::lastModified));
+			for (Path p : files) {
+				if (total <= target) {
+					break;
+				}
+				long size = size(p);
+				if (Files.deleteIfExists(p)) {
+					total -= size;
+				}
+			}
+		}
+		totalBytes = total;
+	}
+
+	private List<Path> listFiles() throws IOException {
+		try (Stream<Path> s = Files.list(folder)) {
+			return s.filter(p -> p.getFileName().toString().endsWith(EXTENSION)).collect(Collectors.toList());
+		}
+	}
+
+	private static long size(Path p) {
+		try {
+			return Files.size(p);
+		}
+		catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static FileTime lastModified(Path p) {
+		try {
+			return Files.getLastModifiedTime(p);
+		}
+		catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
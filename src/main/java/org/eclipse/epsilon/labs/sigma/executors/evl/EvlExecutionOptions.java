@@ -0,0 +1,261 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+/**
+ * The EvlExecutionOptions control how much of an EVL script is evaluated. By default all
+ * constraints (and critiques) are evaluated on all elements, which is the same behaviour as
+ * executing the EVL module directly. A {@link ConstraintSelection} can be used to restrict the
+ * evaluation to some of the constraints and/or elements. Dependency scheduling evaluates the
+ * constraints in the topological order given by their {@code satisfies} invocations (see
+ * {@link ConstraintDependencyGraph}), so prerequisites are always evaluated (and memoised)
+ * before the constraints that depend on them. Guard caching evaluates identical guards (and
+ * the context guard) only once per element.
+ * <p>
+ * Options are immutable, use the {@code with*} methods to derive new options, e.g.:
+ * <pre>
+ * {@code
+ * EvlExecutionOptions options = EvlExecutionOptions.ALL
+ *     .withMaxUnsatisfied(100)
+ *     .withSkipCritiques(true);
+ * }
+ * </pre>
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class EvlExecutionOptions {
+
+	/** Value of {@link #getMaxUnsatisfied()} when no limit is set. */
+	public static final int UNLIMITED = -1;
+
+	/** Evaluate all constraints and critiques. */
+	public static final EvlExecutionOptions ALL = new EvlExecutionOptions(false, UNLIMITED, false);
+
+	/** Stop at the first unsatisfied constraint, critiques are not evaluated. */
+	public static final EvlExecutionOptions FAIL_FAST = new EvlExecutionOptions(true, UNLIMITED, true);
+
+	private final boolean failFast;
+	private final int maxUnsatisfied;
+	private final boolean skipCritiques;
+	private final ConstraintSelection selection;
+	private final boolean dependencyScheduling;
+	private final boolean guardCaching;
+
+	/**
+	 * Instantiates new EVL execution options.
+	 *
+	 * @param failFast 				if true, stop after the first unsatisfied (non critique) constraint
+	 * @param maxUnsatisfied 		stop after this number of unsatisfied constraints, {@link #UNLIMITED} for no limit
+	 * @param skipCritiques 		if true, critiques are not evaluated
+	 */
+	public EvlExecutionOptions(boolean failFast, int maxUnsatisfied, boolean skipCritiques) {
+		this(failFast, maxUnsatisfied, skipCritiques, ConstraintSelection.ALL);
+	}
+
+	/**
+	 * Instantiates new EVL execution options.
+	 *
+	 * @param failFast 				if true, stop after the first unsatisfied (non critique) constraint
+	 * @param maxUnsatisfied 		stop after this number of unsatisfied constraints, {@link #UNLIMITED} for no limit
+	 * @param skipCritiques 		if true, critiques are not evaluated
+	 * @param selection 			the constraints and elements to evaluate
+	 */
+	public EvlExecutionOptions(boolean failFast, int maxUnsatisfied, boolean skipCritiques,
+		ConstraintSelection selection) {
+		this(failFast, maxUnsatisfied, skipCritiques, selection, false);
+	}
+
+	/**
+	 * Instantiates new EVL execution options.
+	 *
+	 * @param failFast 				if true, stop after the first unsatisfied (non critique) constraint
+	 * @param maxUnsatisfied 		stop after this number of unsatisfied constraints, {@link #UNLIMITED} for no limit
+	 * @param skipCritiques 		if true, critiques are not evaluated
+	 * @param selection 			the constraints and elements to evaluate
+	 * @param dependencyScheduling 	if true, constraints are evaluated in dependency order
+	 */
+	public EvlExecutionOptions(boolean failFast, int maxUnsatisfied, boolean skipCritiques,
+		ConstraintSelection selection, boolean dependencyScheduling) {
+		this(failFast, maxUnsatisfied, skipCritiques, selection, dependencyScheduling, false);
+	}
+
+	/**
+	 * Instantiates new EVL execution options.
+	 *
+	 * @param failFast 				if true, stop after the first unsatisfied (non critique) constraint
+	 * @param maxUnsatisfied 		stop after this number of unsatisfied constraints, {@link #UNLIMITED} for no limit
+	 * @param skipCritiques 		if true, critiques are not evaluated
+	 * @param selection 			the constraints and elements to evaluate
+	 * @param dependencyScheduling 	if true, constraints are evaluated in dependency order
+	 * @param guardCaching 			if true, identical guards are evaluated once per element
+	 */
+	public EvlExecutionOptions(boolean failFast, int maxUnsatisfied, boolean skipCritiques,
+		ConstraintSelection selection, boolean dependencyScheduling, boolean guardCaching) {
+		if (maxUnsatisfied < UNLIMITED || maxUnsatisfied == 0) {
+			throw new IllegalArgumentException("The maximum number of unsatisfied constraints must be positive, or UNLIMITED.");
+		}
+		this.failFast = failFast;
+		this.maxUnsatisfied = maxUnsatisfied;
+		this.skipCritiques = skipCritiques;
+		this.selection = selection;
+		this.dependencyScheduling = dependencyScheduling;
+		this.guardCaching = guardCaching;
+	}
+
+	/**
+	 * If true, evaluation stops after the first unsatisfied constraint that is not a critique.
+	 *
+	 * @return true, if fail fast
+	 */
+	public boolean isFailFast() {
+		return failFast;
+	}
+
+	/**
+	 * The number of unsatisfied constraints after which evaluation stops.
+	 *
+	 * @return the max number of unsatisfied constraints, {@link #UNLIMITED} if there is no limit
+	 */
+	public int getMaxUnsatisfied() {
+		return maxUnsatisfied;
+	}
+
+	/**
+	 * If true, critiques are not evaluated.
+	 *
+	 * @return true, if critiques are skipped
+	 */
+	public boolean isSkipCritiques() {
+		return skipCritiques;
+	}
+
+	/**
+	 * The constraints and elements to evaluate.
+	 *
+	 * @return the selection
+	 */
+	public ConstraintSelection getSelection() {
+		return selection;
+	}
+
+	/**
+	 * If true, constraints are evaluated in waves following the {@code satisfies} dependencies
+	 * between them.
+	 *
+	 * @return true, if dependency scheduling is used
+	 */
+	public boolean isDependencyScheduling() {
+		return dependencyScheduling;
+	}
+
+	/**
+	 * If true, the results of the context guard and of identical constraint guards are cached,
+	 * so each is evaluated once per element. Guards are expected to be free of side effects.
+	 *
+	 * @return true, if guard results are cached
+	 */
+	public boolean isGuardCaching() {
+		return guardCaching;
+	}
+
+	/**
+	 * Checks if the evaluation can finish before all constraints are evaluated.
+	 *
+	 * @return true, if either fail fast or a maximum number of unsatisfied constraints is set
+	 */
+	public boolean isLimited() {
+		return failFast || maxUnsatisfied != UNLIMITED;
+	}
+
+	/**
+	 * Checks if these options evaluate the complete script, i.e. the EVL module can be executed
+	 * directly.
+	 *
+	 * @return true, if no option restricts the evaluation
+	 */
+	public boolean isDefault() {
+		return !isLimited() && !skipCritiques && selection.isAll() && !dependencyScheduling
+				&& !guardCaching;
+	}
+
+	/**
+	 * Create a copy of these options with the given fail fast value.
+	 *
+	 * @param failFast 				the fail fast value
+	 * @return the new options
+	 */
+	public EvlExecutionOptions withFailFast(boolean failFast) {
+		return new EvlExecutionOptions(failFast, maxUnsatisfied, skipCritiques, selection, dependencyScheduling,
+				guardCaching);
+	}
+
+	/**
+	 * Create a copy of these options with the given max number of unsatisfied constraints.
+	 *
+	 * @param maxUnsatisfied 		the max number of unsatisfied constraints
+	 * @return the new options
+	 */
+	public EvlExecutionOptions withMaxUnsatisfied(int maxUnsatisfied) {
+		return new EvlExecutionOptions(failFast, maxUnsatisfied, skipCritiques, selection, dependencyScheduling,
+				guardCaching);
+	}
+
+	/**
+	 * Create a copy of these options with the given skip critiques value.
+	 *
+	 * @param skipCritiques 		the skip critiques value
+	 * @return the new options
+	 */
+	public EvlExecutionOptions withSkipCritiques(boolean skipCritiques) {
+		return new EvlExecutionOptions(failFast, maxUnsatisfied, skipCritiques, selection, dependencyScheduling,
+				guardCaching);
+	}
+
+	/**
+	 * Create a copy of these options with the given constraint selection.
+	 *
+	 * @param selection 			the constraint selection
+	 * @return the new options
+	 */
+	public EvlExecutionOptions withSelection(ConstraintSelection selection) {
+		return new EvlExecutionOptions(failFast, maxUnsatisfied, skipCritiques, selection, dependencyScheduling,
+				guardCaching);
+	}
+
+	/**
+	 * Create a copy of these options with the given dependency scheduling value.
+	 *
+	 * @param dependencyScheduling 	the dependency scheduling value
+	 * @return the new options
+	 */
+	public EvlExecutionOptions withDependencyScheduling(boolean dependencyScheduling) {
+		return new EvlExecutionOptions(failFast, maxUnsatisfied, skipCritiques, selection, dependencyScheduling,
+				guardCaching);
+	}
+
+	/**
+	 * Create a copy of these options with the given guard caching value.
+	 *
+	 * @param guardCaching 			the guard caching value
+	 * @return the new options
+	 */
+	public EvlExecutionOptions withGuardCaching(boolean guardCaching) {
+		return new EvlExecutionOptions(failFast, maxUnsatisfied, skipCritiques, selection, dependencyScheduling,
+				guardCaching);
+	}
+
+	@Override
+	public String toString() {
+		return "EvlExecutionOptions [failFast=" + failFast + ", maxUnsatisfied=" + maxUnsatisfied
+				+ ", skipCritiques=" + skipCritiques + ", selection=" + selection + ", dependencyScheduling=" + dependencyScheduling
+				+ ", guardCaching=" + guardCaching + "]";
+	}
+
+}
@@ -9,6 +9,7 @@
 **********************************************************************/
 package org.eclipse.epsilon.labs.sigma.executors.evl;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Collection;
 import java.util.List;
@@ -48,6 +49,18 @@ public interface EvlExecutor extends EpsilonLanguageExecutor<Collection<Unsatisf
      * @param writer the writer
      */
     void printUnsatisfied(Collection<UnsatisfiedConstraint> unsatisfiedConstraints, PrintWriter writer);
+
+    /**
+     * Write the unsatisfied constraints using the specified report writer, e.g. to produce a
+     * JSON Lines or SARIF report.
+     *
+     * @param unsatisfiedConstraints the unsatisfied constraints
+     * @param reportWriter the report writer
+     * @throws IOException if there is an error writing the report
+     * @see ValidationReportWriter
+     */
+    void writeUnsatisfied(Collection<UnsatisfiedConstraint> unsatisfiedConstraints,
+    	ValidationReportWriter reportWriter) throws IOException;
     
 
 	/**
@@ -0,0 +1,174 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.epsilon.eol.models.IModel;
+import org.eclipse.epsilon.eol.models.ModelRepository;
+import org.eclipse.epsilon.evl.IEvlModule;
+import org.eclipse.epsilon.evl.dom.Constraint;
+import org.eclipse.epsilon.evl.dom.ConstraintContext;
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
+import org.eclipse.epsilon.labs.sigma.executors.util.ModelFingerprinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The EvlResultCache allows the {@link SimpleEvlExecutor} to reuse the results of previous
+ * validations. Results are keyed by a hash of the script, the parameters, the execution options
+ * and the fingerprints of all the models (see {@link ModelFingerprinter}).
+ * <p>
+ * Results are stored using the constraint and element ids (see
+ * {@link CachedUnsatisfiedConstraint}), so cached results can only be restored if the models
+ * provide element ids. Fixes are not cached. Validations are not cached when a model can not be
+ * fingerprinted or when the {@link ConstraintSelection} restricts the elements to validate.
+ * Parameters are included in the key using their string representation.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class EvlResultCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(EvlResultCache.class);
+
+	private final ValidationResultStore store;
+	private final ModelFingerprinter fingerprinter;
+
+	/**
+	 * Instantiates a new EVL result cache.
+	 *
+	 * @param store 				the store for the results
+	 * @param fingerprinter 		the fingerprinter used for the models
+	 */
+	public EvlResultCache(ValidationResultStore store, ModelFingerprinter fingerprinter) {
+		this.store = store;
+		this.fingerprinter = fingerprinter;
+	}
+
+	/**
+	 * Compute the key for a validation.
+	 *
+	 * @param scriptHash 			the hash of the script/code
+	 * @param parameters 			the parameters
+	 * @param models 				the models
+	 * @param options 				the execution options
+	 * @return the key, or an empty Optional if the validation can not be cached
+	 */
+	public Optional<String> key(String scriptHash, Map<String, ?> parameters, Collection<IModel> models,
+		EvlExecutionOptions options) {
+		ConstraintSelection selection = options.getSelection();
+		if (scriptHash == null || selection.getElements().isPresent()) {
+			return Optional.empty();
+		}
+		MessageDigest digest = HashUtil.newDigest();
+		HashUtil.update(digest, scriptHash);
+		HashUtil.update(digest, String.valueOf(options.isFailFast()));
+		HashUtil.update(digest, String.valueOf(options.getMaxUnsatisfied()));
+		HashUtil.update(digest, String.valueOf(options.isSkipCritiques()));
+		HashUtil.update(digest, new TreeSet<>(selection.getContextNames()).toString());
+		HashUtil.update(digest, new TreeSet<>(selection.getConstraintNames()).toString());
+		HashUtil.update(digest, new TreeSet<>(selection.getTags()).toString());
+		for (Map.Entry<String, ?> p : new TreeMap<>(parameters).entrySet()) {
+			HashUtil.update(digest, p.getKey());
+			HashUtil.update(digest, String.valueOf(p.getValue()));
+		}
+		List<IModel> sorted = new ArrayList<>(models);
+		sorted.sort(Comparator.comparing(IModel::getName));
+		for (IModel model : sorted) {
+			Optional<String> fingerprint = fingerprinter.fingerprint(model);
+			if (!fingerprint.isPresent()) {
+				logger.info("Model {} can not be fingerprinted, validation results will not be cached.", model.getName());
+				return Optional.empty();
+			}
+			HashUtil.update(digest, model.getName());
+			HashUtil.update(digest, fingerprint.get());
+		}
+		return Optional.of(HashUtil.toHex(digest.digest()));
+	}
+
+	/**
+	 * Look up the results for the key and restore them against the module's constraints and
+	 * models.
+	 *
+	 * @param key 					the key
+	 * @param module 				the module
+	 * @return the unsatisfied constraints, or an empty Optional if there are no results for the
+	 * 								key or they can not be restored
+	 */
+	public Optional<Collection<UnsatisfiedConstraint>> lookup(String key, IEvlModule module) {
+		Optional<List<CachedUnsatisfiedConstraint>> cached = store.get(key);
+		if (!cached.isPresent()) {
+			return Optional.empty();
+		}
+		ModelRepository repository = module.getContext().getModelRepository();
+		List<UnsatisfiedConstraint> result = new ArrayList<>(cached.get().size());
+		for (CachedUnsatisfiedConstraint c : cached.get()) {
+			Constraint constraint = findConstraint(module, c.getContextName(), c.getConstraintName());
+			IModel model = repository.getModelByNameSafe(c.getModelName());
+			Object element = model == null ? null : model.getElementById(c.getElementId());
+			if (constraint == null || element == null) {
+				logger.info("Cached results for {} could not be restored.", key);
+				store.remove(key);
+				return Optional.empty();
+			}
+			UnsatisfiedConstraint uc = new UnsatisfiedConstraint();
+			uc.setConstraint(constraint);
+			uc.setInstance(element);
+			uc.setMessage(c.getMessage());
+			result.add(uc);
+		}
+		return Optional.of(result);
+	}
+
+	/**
+	 * Store the results for the key. Results are not stored if any of the elements has no id.
+	 *
+	 * @param key 					the key
+	 * @param unsatisfiedConstraints the unsatisfied constraints
+	 * @param module 				the module
+	 */
+	public void store(String key, Collection<UnsatisfiedConstraint> unsatisfiedConstraints, IEvlModule module) {
+		ModelRepository repository = module.getContext().getModelRepository();
+		List<CachedUnsatisfiedConstraint> cached = new ArrayList<>(unsatisfiedConstraints.size());
+		for (UnsatisfiedConstraint uc : unsatisfiedConstraints) {
+			IModel model = repository.getOwningModel(uc.getInstance());
+			String id = model == null ? null : model.getElementId(uc.getInstance());
+			if (id == null) {
+				logger.info("Element {} has no id, validation results will not be cached.", uc.getInstance());
+				return;
+			}
+			Constraint constraint = uc.getConstraint();
+			cached.add(new CachedUnsatisfiedConstraint(constraint.getConstraintContext().getTypeName(),
+					constraint.getName(), model.getName(), id, uc.getMessage()));
+		}
+		store.put(key, cached);
+	}
+
+	private static Constraint findConstraint(IEvlModule module, String contextName, String constraintName) {
+		ConstraintContext cc = module.getConstraintContext(contextName);
+		if (cc == null) {
+			return null;
+		}
+		return cc.getConstraints().stream()
+				.filter(c -> c.getName().equals(constraintName))
+				.findFirst()
+				.orElse(null);
+	}
+
+}
@@ -0,0 +1,70 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.evl.execute.FixInstance;
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+
+/**
+ * A FixSelector chooses which of the fixes of an unsatisfied constraint should be applied by
+ * the {@link BatchFixer}, if any.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@FunctionalInterface
+public interface FixSelector {
+
+	/**
+	 * Select the fix to apply.
+	 *
+	 * @param unsatisfiedConstraint the unsatisfied constraint
+	 * @return the fix to apply, or an empty Optional if the constraint should not be fixed
+	 * @throws EolRuntimeException if there is an error evaluating the fixes (e.g. their titles)
+	 */
+	Optional<FixInstance> select(UnsatisfiedConstraint unsatisfiedConstraint) throws EolRuntimeException;
+
+	/**
+	 * A selector that applies the first fix of every unsatisfied constraint.
+	 *
+	 * @return the fix selector
+	 */
+	static FixSelector first() {
+		return uc -> uc.getFixes().stream().findFirst();
+	}
+
+	/**
+	 * A selector that applies, for each constraint name, the fix with the given title. Constraints
+	 * not in the map are not fixed.
+	 *
+	 * @param titlesByConstraint 	the title of the fix to apply, by constraint name
+	 * @return the fix selector
+	 */
+	static FixSelector byTitle(Map<String, String> titlesByConstraint) {
+		Map<String, String> titles = new HashMap<>(titlesByConstraint);
+		return uc -> {
+			String title = titles.get(uc.getConstraint().getName());
+			if (title == null) {
+				return Optional.empty();
+			}
+			for (FixInstance fix : uc.getFixes()) {
+				if (title.equals(fix.getTitle())) {
+					return Optional.of(fix);
+				}
+			}
+			return Optional.empty();
+		};
+	}
+
+}
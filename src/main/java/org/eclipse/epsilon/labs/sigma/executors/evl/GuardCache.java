@@ -0,0 +1,159 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.epsilon.common.module.ModuleElement;
+import org.eclipse.epsilon.eol.dom.ExecutableBlock;
+import org.eclipse.epsilon.eol.dom.ExpressionInBrackets;
+import org.eclipse.epsilon.eol.dom.ExpressionStatement;
+import org.eclipse.epsilon.eol.dom.FeatureCallExpression;
+import org.eclipse.epsilon.eol.dom.FirstOrderOperationCallExpression;
+import org.eclipse.epsilon.eol.dom.LiteralExpression;
+import org.eclipse.epsilon.eol.dom.NameExpression;
+import org.eclipse.epsilon.eol.dom.OperationCallExpression;
+import org.eclipse.epsilon.eol.dom.OperatorExpression;
+import org.eclipse.epsilon.eol.dom.ReturnStatement;
+import org.eclipse.epsilon.eol.dom.StatementBlock;
+
+/**
+ * The GuardCache records the result of guard evaluations for the elements of a constraint
+ * context. Each element position has a fixed number of slots (one per distinct guard), and each
+ * slot uses two bits: whether the guard has been evaluated and its result. Bits are stored in
+ * an {@link AtomicLongArray} so that elements can be checked concurrently.
+ * <p>
+ * Guards are identified by their {@link #signature(ModuleElement) signature}, so constraints
+ * with identical guard expressions share the same slot.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class GuardCache {
+
+	/** The slot used for the guard of the constraint context. */
+	static final int CONTEXT_GUARD = 0;
+
+	private static final int CELLS_PER_WORD = Long.SIZE / 2;
+
+	private final int slots;
+	private final AtomicLongArray bits;
+
+	/**
+	 * Instantiates a new guard cache.
+	 *
+	 * @param elements 				the number of elements of the constraint context
+	 * @param slots 				the number of guards cached per element
+	 * @throws IllegalArgumentException if the cache needs more than {@link Integer#MAX_VALUE} words
+	 */
+	GuardCache(int elements, int slots) {
+		this.slots = slots;
+		long cells = (long) elements * slots;
+		long words = (cells + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+		if (words > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many elements and guards to cache: " + cells);
+		}
+		this.bits = new AtomicLongArray((int) words);
+	}
+
+	/**
+	 * Get the cached result of a guard.
+	 *
+	 * @param position 				the position of the element in the context's extent
+	 * @param slot 					the guard slot
+	 * @return the result, or null if the guard has not been evaluated for the element
+	 */
+	Boolean get(int position, int slot) {
+		long cell = (long) position * slots + slot;
+		long word = bits.get((int) (cell / CELLS_PER_WORD));
+		int shift = (int) (cell % CELLS_PER_WORD) * 2;
+		if ((word & (1L << shift)) == 0) {
+			return null;
+		}
+		return (word & (2L << shift)) != 0;
+	}
+
+	/**
+	 * Record the result of a guard.
+	 *
+	 * @param position 				the position of the element in the context's extent
+	 * @param slot 					the guard slot
+	 * @param value 				the result of the guard
+	 */
+	void put(int position, int slot, boolean value) {
+		long cell = (long) position * slots + slot;
+		int index = (int) (cell / CELLS_PER_WORD);
+		int shift = (int) (cell % CELLS_PER_WORD) * 2;
+		long mask = (value ? 3L : 1L) << shift;
+		long word;
+		do {
+			word = bits.get(index);
+		} while (!bits.compareAndSet(index, word, word | mask));
+	}
+
+	/**
+	 * Compute a structural signature of a guard block. Two guards with the same signature
+	 * evaluate the same expression. Only guards built from names, literals, operators and
+	 * property/operation calls have a signature; for other guards (e.g. guards with statements
+	 * or first order operations) null is returned and their results are not shared.
+	 *
+	 * @param block 				the guard block
+	 * @return the signature, or null
+	 */
+	static String signature(ModuleElement block) {
+		StringBuilder sb = new StringBuilder();
+		return appendSignature(block, sb) ? sb.toString() : null;
+	}
+
+	private static boolean appendSignature(ModuleElement element, StringBuilder sb) {
+		if (element == null) {
+			sb.append("null");
+			return true;
+		}
+		if (element instanceof FirstOrderOperationCallExpression) {
+			return false;
+		}
+		sb.append(element.getClass().getSimpleName());
+		if (element instanceof NameExpression) {
+			sb.append(':').append(((NameExpression) element).getName());
+		}
+		else if (element instanceof LiteralExpression) {
+			Object value = ((LiteralExpression<?>) element).getValue();
+			sb.append(':').append(value == null ? "null" : value.getClass().getSimpleName() + "=" + value);
+		}
+		else if (element instanceof OperatorExpression) {
+			sb.append(':').append(((OperatorExpression) element).getOperator());
+		}
+		else if (element instanceof FeatureCallExpression) {
+			FeatureCallExpression call = (FeatureCallExpression) element;
+			sb.append(':').append(call.getName())
+				.append(call.isArrow() ? "->" : ".")
+				.append(call.isNullSafe() ? "?" : "");
+			if (call instanceof OperationCallExpression) {
+				OperationCallExpression op = (OperationCallExpression) call;
+				sb.append(op.isContextless() ? "!" : "").append(op.getParameterExpressions().size());
+			}
+		}
+		else if (!(element instanceof ExecutableBlock || element instanceof StatementBlock
+				|| element instanceof ExpressionStatement || element instanceof ReturnStatement
+				|| element instanceof ExpressionInBrackets)) {
+			return false;
+		}
+		sb.append('(');
+		for (ModuleElement child : element.getChildren()) {
+			if (!appendSignature(child, sb)) {
+				return false;
+			}
+			sb.append(',');
+		}
+		sb.append(')');
+		return true;
+	}
+
+}
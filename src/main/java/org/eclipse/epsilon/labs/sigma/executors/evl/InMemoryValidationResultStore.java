@@ -0,0 +1,72 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A validation result store that keeps results in memory. The store is bounded by the total
+ * number of cached unsatisfied constraints; least recently used entries are evicted first.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class InMemoryValidationResultStore implements ValidationResultStore {
+
+	private final long maxSize;
+	private final LinkedHashMap<String, List<CachedUnsatisfiedConstraint>> entries =
+			new LinkedHashMap<>(16, 0.75f, true);
+	private long size;
+
+	/**
+	 * Instantiates a new in memory validation result store.
+	 *
+	 * @param maxSize 				the maximum number of unsatisfied constraints to keep
+	 */
+	public InMemoryValidationResultStore(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public synchronized Optional<List<CachedUnsatisfiedConstraint>> get(String key) {
+		return Optional.ofNullable(entries.get(key));
+	}
+
+	@Override
+	public synchronized void put(String key, List<CachedUnsatisfiedConstraint> results) {
+		// Entries are counted as one, so valid models are also cached
+		long entrySize = results.size() + 1;
+		if (entrySize > maxSize) {
+			return;
+		}
+		remove(key);
+		entries.put(key, Collections.unmodifiableList(results));
+		size += entrySize;
+		Iterator<Map.Entry<String, List<CachedUnsatisfiedConstraint>>> it = entries.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<String, List<CachedUnsatisfiedConstraint>> eldest = it.next();
+			size -= eldest.getValue().size() + 1;
+			it.remove();
+		}
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		List<CachedUnsatisfiedConstraint> old = entries.remove(key);
+		if (old != null) {
+			size -= old.size() + 1;
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Function;
+
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+
+/**
+ * A report writer that writes one JSON object per unsatisfied constraint, one per line
+ * (see <a href="http://jsonlines.org/">JSON Lines</a>). Each object has the constraint name,
+ * the constraint context, whether the constraint is a critique, the message and the element.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class JsonLinesReportWriter extends ChannelReportWriter {
+
+	/**
+	 * Instantiates a new JSON Lines report writer.
+	 *
+	 * @param channel 				the channel to write to
+	 */
+	public JsonLinesReportWriter(WritableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE, String::valueOf);
+	}
+
+	/**
+	 * Instantiates a new JSON Lines report writer.
+	 *
+	 * @param channel 				the channel to write to
+	 * @param bufferSize 			the size of the buffer, in bytes
+	 * @param elementIdentifier 	the function used to identify the elements in the report
+	 */
+	public JsonLinesReportWriter(WritableByteChannel channel, int bufferSize,
+		Function<Object, String> elementIdentifier) {
+		super(channel, bufferSize, elementIdentifier);
+	}
+
+	@Override
+	protected String header() {
+		return "";
+	}
+
+	@Override
+	protected String entry(UnsatisfiedConstraint uc, long index) {
+		return new StringBuilder()
+				.append("{\"constraint\":").append(quote(uc.getConstraint().getName()))
+				.append(",\"context\":").append(quote(uc.getConstraint().getConstraintContext().getTypeName()))
+				.append(",\"critique\":").append(uc.getConstraint().isCritique())
+				.append(",\"message\":").append(quote(uc.getMessage()))
+				.append(",\"element\":").append(quote(identify(uc.getInstance())))
+				.append("}\n")
+				.toString();
+	}
+
+	@Override
+	protected String footer(long total) {
+		return "";
+	}
+
+}
@@ -0,0 +1,80 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Function;
+
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+
+/**
+ * A report writer that writes a <a href="https://sarifweb.azurewebsites.net/">SARIF</a> 2.1.0
+ * log with a single run. Each unsatisfied constraint is a result whose rule id is the constraint
+ * name, with level "error" for constraints and "warning" for critiques. The element is reported
+ * as a logical location.
+ * <p>
+ * The results are written as they arrive, the document is only complete after {@link #end()}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class SarifReportWriter extends ChannelReportWriter {
+
+	private static final String SCHEMA = "https://schemastore.azurewebsites.net/schemas/json/sarif-2.1.0.json";
+
+	private final String toolName;
+
+	/**
+	 * Instantiates a new SARIF report writer.
+	 *
+	 * @param channel 				the channel to write to
+	 */
+	public SarifReportWriter(WritableByteChannel channel) {
+		this(channel, "Epsilon EVL", DEFAULT_BUFFER_SIZE, String::valueOf);
+	}
+
+	/**
+	 * Instantiates a new SARIF report writer.
+	 *
+	 * @param channel 				the channel to write to
+	 * @param toolName 				the name of the tool reported in the run
+	 * @param bufferSize 			the size of the buffer, in bytes
+	 * @param elementIdentifier 	the function used to identify the elements in the report
+	 */
+	public SarifReportWriter(WritableByteChannel channel, String toolName, int bufferSize,
+		Function<Object, String> elementIdentifier) {
+		super(channel, bufferSize, elementIdentifier);
+		this.toolName = toolName;
+	}
+
+	@Override
+	protected String header() {
+		return "{\"$schema\":" + quote(SCHEMA) + ",\"version\":\"2.1.0\",\"runs\":[{\"tool\":{\"driver\":{\"name\":"
+				+ quote(toolName) + "}},\"results\":[\n";
+	}
+
+	@Override
+	protected String entry(UnsatisfiedConstraint uc, long index) {
+		return new StringBuilder()
+				.append(index == 0 ? "" : ",\n")
+				.append("{\"ruleId\":").append(quote(uc.getConstraint().getName()))
+				.append(",\"level\":").append(uc.getConstraint().isCritique() ? "\"warning\"" : "\"error\"")
+				.append(",\"message\":{\"text\":").append(quote(uc.getMessage())).append('}')
+				.append(",\"locations\":[{\"logicalLocations\":[{\"fullyQualifiedName\":")
+				.append(quote(identify(uc.getInstance())))
+				.append(",\"kind\":\"element\"}]}]}")
+				.toString();
+	}
+
+	@Override
+	protected String footer(long total) {
+		return "\n]}]}\n";
+	}
+
+}
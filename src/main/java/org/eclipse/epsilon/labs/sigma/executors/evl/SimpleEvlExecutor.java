@@ -10,16 +10,17 @@
 package org.eclipse.epsilon.labs.sigma.executors.evl;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import org.eclipse.epsilon.common.parse.problem.ParseProblem;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 import org.eclipse.epsilon.eol.models.IModel;
 import org.eclipse.epsilon.eol.types.IToolNativeTypeDelegate;
@@ -33,6 +34,8 @@ import org.eclipse.epsilon.evl.dom.ConstraintContext;
 import org.eclipse.epsilon.evl.execute.CommandLineFixer;
 import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
 import org.eclipse.epsilon.labs.sigma.executors.ModuleWrap;
+import org.eclipse.epsilon.labs.sigma.executors.util.HashUtil;
+import org.eclipse.epsilon.labs.sigma.executors.util.RuleCostModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,26 +48,32 @@ public class SimpleEvlExecutor implements EvlExecutor {
 
 	private static final Logger logger = LoggerFactory.getLogger(SimpleEvlExecutor.class);
 	private final IEvlModule module;
+	private final EvlExecutionOptions options;
 	private ModuleWrap delegate;
+	private ValidationReportWriter reportWriter;
+	private EvlResultCache resultCache;
+	private RuleCostModel costModel;
+	private String scriptCode;
+	private String scriptHash;
+	private final Map<String, Object> parameters = new HashMap<>();
 	
 	/**
-	 * Instantiates a new simple EVL executor that uses an {@link EvlModule} as its module and
-	 * a {@link CommandLineFixer} as a constraint fixer.
-	 * @see EvlModule
+	 * Instantiates a new simple EVL executor that uses an {@link EvlModule} as its module, without
+	 * a constraint fixer.
 	 * @see EvlModule
 	 */
 	public SimpleEvlExecutor() {
-		this(new EvlModule(), new CommandLineFixer());
+		this(new EvlModule(), null);
     }
     
 	/**
 	 * Instantiates a new simple EVL executor that uses an {@link EvlModuleParallelElements} as its
-	 * module, with the provided number of threads.
+	 * module, without a constraint fixer, with the provided number of threads.
 	 *
 	 * @param parallelism 			the parallelism to use
 	 */
 	public SimpleEvlExecutor(int parallelism) {
-		this(new EvlModuleParallelElements(parallelism), new CommandLineFixer());
+		this(new EvlModuleParallelElements(parallelism), null);
     }
 	
 	/**
@@ -88,26 +97,140 @@ public class SimpleEvlExecutor implements EvlExecutor {
 	public SimpleEvlExecutor(int parallelism, IEvlFixer evlFixer) {
 		this(new EvlModuleParallelElements(parallelism), evlFixer);
     }
+
+	/**
+	 * Instantiates a new simple EVL executor that uses an {@link EvlModule} as its module, without
+	 * a constraint fixer. Only the constraints allowed by the provided {@link EvlExecutionOptions}
+	 * are evaluated.
+	 *
+	 * @param options 				the execution options
+	 */
+	public SimpleEvlExecutor(EvlExecutionOptions options) {
+		this(new EvlModule(), null, options);
+	}
+
+	/**
+	 * Instantiates a new simple EVL executor that uses an {@link EvlModuleParallelElements} as its
+	 * module, without a constraint fixer, with the provided number of threads. Only the
+	 * constraints allowed by the provided {@link EvlExecutionOptions} are evaluated.
+	 *
+	 * @param parallelism 			the parallelism to use
+	 * @param options 				the execution options
+	 */
+	public SimpleEvlExecutor(int parallelism, EvlExecutionOptions options) {
+		this(new EvlModuleParallelElements(parallelism), null, options);
+	}
     
 	/**
 	 * Instantiates a new simple EVL executor that uses the provided {@link IEvlModule} module and
-	 * the provided {@link IEvlFixer} as a constraint fixer.
+	 * the provided {@link IEvlFixer} as a constraint fixer. The fixer is only used if the module
+	 * does not have one already. Use a {@link BatchFixer} for non interactive fixing, or a
+	 * {@link CommandLineFixer} to print the unsatisfied constraints and choose their fixes.
 	 *
 	 * @param mdl 					the module
-	 * @param evlFixer 				the fixer
+	 * @param evlFixer 				the fixer, or null for no fixer
 	 */
 	public SimpleEvlExecutor(IEvlModule mdl, IEvlFixer evlFixer) {
+		this(mdl, evlFixer, EvlExecutionOptions.ALL);
+	}
+
+	/**
+	 * Instantiates a new simple EVL executor that uses the provided {@link IEvlModule} module and
+	 * the provided {@link IEvlFixer} as a constraint fixer. Only the constraints allowed by the
+	 * provided {@link EvlExecutionOptions} are evaluated. Options other than
+	 * {@link EvlExecutionOptions#ALL} are only supported for modules that extend {@link EvlModule}.
+	 *
+	 * @param mdl 					the module
+	 * @param evlFixer 				the fixer, or null for no fixer
+	 * @param options 				the execution options
+	 */
+	public SimpleEvlExecutor(IEvlModule mdl, IEvlFixer evlFixer, EvlExecutionOptions options) {
 		logger.info("Creating the EvlExecutor");
 		module = mdl;
+		this.options = options;
 		delegate = new ModuleWrap(module);
 		if (module.getUnsatisfiedConstraintFixer() == null) {
-			
+			module.setUnsatisfiedConstraintFixer(evlFixer);
 		}
 	}
     
 	@Override
 	public Collection<UnsatisfiedConstraint> execute() throws EolRuntimeException {
-		return module.execute();
+		if (resultCache == null) {
+			return evaluate();
+		}
+		Optional<String> key = resultCache.key(scriptHash(), parameters,
+				module.getContext().getModelRepository().getModels(), options);
+		if (key.isPresent()) {
+			Optional<Collection<UnsatisfiedConstraint>> cached = resultCache.lookup(key.get(), module);
+			if (cached.isPresent()) {
+				logger.info("Using cached validation results, the EVL module will not be executed.");
+				if (reportWriter != null) {
+					try {
+						reportWriter.writeAll(cached.get());
+					}
+					catch (IOException e) {
+						throw new EolInternalException(e);
+					}
+				}
+				return cached.get();
+			}
+		}
+		Collection<UnsatisfiedConstraint> result = evaluate();
+		if (key.isPresent()) {
+			resultCache.store(key.get(), result, module);
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluate the constraints, honouring the execution options and streaming to the report
+	 * writer, if any.
+	 *
+	 * @return the unsatisfied constraints
+	 * @throws EolRuntimeException if there is an error during evaluation
+	 */
+	private Collection<UnsatisfiedConstraint> evaluate() throws EolRuntimeException {
+		if (options.isDefault() && reportWriter == null && costModel == null) {
+			return module.execute();
+		}
+		if (!(module instanceof EvlModule)) {
+			logger.warn("Execution options, report streaming and cost scheduling are only supported for EvlModule modules, executing all constraints.");
+			return module.execute();
+		}
+		if (reportWriter == null) {
+			return new ConstraintEvaluator((EvlModule) module, options, null, costModel).execute();
+		}
+		try {
+			reportWriter.begin();
+			try {
+				return new ConstraintEvaluator((EvlModule) module, options, reportWriter, costModel).execute();
+			}
+			finally {
+				reportWriter.end();
+			}
+		}
+		catch (IOException e) {
+			throw new EolInternalException(e);
+		}
+	}
+	
+	/**
+	 * The hash of the parsed script and of the modules it imports, computed once per parse.
+	 *
+	 * @return the hash of the script, or null if the script was not parsed by this executor
+	 * @throws EolRuntimeException if the script or an imported module can not be read
+	 */
+	private String scriptHash() throws EolRuntimeException {
+		if (scriptHash == null) {
+			try {
+				scriptHash = HashUtil.hash(module, scriptCode);
+			}
+			catch (IOException e) {
+				throw new EolInternalException(e);
+			}
+		}
+		return scriptHash;
 	}
 	
 	@Override
@@ -132,11 +255,15 @@ public class SimpleEvlExecutor implements EvlExecutor {
 
 	@Override
 	public boolean parse(File file) throws Exception {
+		scriptCode = null;
+		scriptHash = null;
 		return delegate.parse(file);
 	}
 
 	@Override
 	public boolean parse(String code) throws Exception {
+		scriptCode = code;
+		scriptHash = null;
 		return delegate.parse(code);
 	}
 
@@ -152,6 +279,7 @@ public class SimpleEvlExecutor implements EvlExecutor {
 
 	@Override
 	public void addParamters(Map<String, ?> parameters) {
+		this.parameters.putAll(parameters);
 		delegate.addParamters(parameters);
 	}
 
@@ -190,17 +318,6 @@ public class SimpleEvlExecutor implements EvlExecutor {
 	public void logUnsatisfied(Collection<UnsatisfiedConstraint> unsatisfiedConstraints) {
 		int numUnsatisfied = unsatisfiedConstraints.size();
     	if (numUnsatisfied > 0) {
-    		// Separate critiques from constraints
-    		List<UnsatisfiedConstraint> consraints = new ArrayList<>();
-    		List<UnsatisfiedConstraint> critiques = new ArrayList<>();
-    		unsatisfiedConstraints.stream()
-    				.forEach(uc -> {
-    					if (uc.getConstraint().isCritique()) {
-    						critiques.add(uc);
-    					} else {
-    						consraints.add(uc);}
-    					}
-    				);
 			logger.warn(String.format("There %s %s unsatisfied Constraint(s).",
 					numUnsatisfied > 1 ? "were" : "was",
 					numUnsatisfied));
@@ -227,29 +344,21 @@ public class SimpleEvlExecutor implements EvlExecutor {
 	public void printUnsatisfied(Collection<UnsatisfiedConstraint> unsatisfiedConstraints, PrintWriter writer) {
 		int numUnsatisfied = unsatisfiedConstraints.size();
     	if (numUnsatisfied > 0) {
-    		// Separate critiques from constraints
-    		List<UnsatisfiedConstraint> consraints = new ArrayList<>();
-    		List<UnsatisfiedConstraint> critiques = new ArrayList<>();
-    		unsatisfiedConstraints.stream()
-    				.forEach(uc -> {
-    					if (uc.getConstraint().isCritique()) {
-    						critiques.add(uc);
-    					} else {
-    						consraints.add(uc);
-    					}
-    				});
-    		Optional<String> maxWidth = unsatisfiedConstraints.stream()
-    				.map(uc -> uc.getConstraint().getName())
-    				.max(Comparator.comparingInt(String::length));
-    		int tabDivision = maxWidth.orElse("        ").length();
+    		// Constraints and critiques are printed in two passes, to avoid copying the results
+    		int tabDivision = 0;
+    		for (UnsatisfiedConstraint uc : unsatisfiedConstraints) {
+    			tabDivision = Math.max(tabDivision, uc.getConstraint().getName().length());
+    		}
 			String msg = "Unsatisfied Contraints";
 			String division = new String(new char[msg.length()]).replace("\0", "=");
 			writer.println();
 			writer.println(division);
 			writer.println(msg);
 			writer.println(division);
-			for (UnsatisfiedConstraint uc : consraints) {
-				writer.format("\u16D6 %-"+tabDivision+"s %s%n", uc.getConstraint().getName(), uc.getMessage());
+			for (UnsatisfiedConstraint uc : unsatisfiedConstraints) {
+				if (!uc.getConstraint().isCritique()) {
+					writer.format("\u16D6 %-"+tabDivision+"s %s%n", uc.getConstraint().getName(), uc.getMessage());
+				}
 			}
 			writer.println(division);
 			msg = "Unsatisfied Critiques";
@@ -258,8 +367,10 @@ public class SimpleEvlExecutor implements EvlExecutor {
 			writer.println(division);
 			writer.println(msg);
 			writer.println(division);
-			for (UnsatisfiedConstraint uc : critiques) {
-				writer.format("\u16B9 %-"+tabDivision+"s %s%n", uc.getConstraint().getName(), uc.getMessage());
+			for (UnsatisfiedConstraint uc : unsatisfiedConstraints) {
+				if (uc.getConstraint().isCritique()) {
+					writer.format("\u16B9 %-"+tabDivision+"s %s%n", uc.getConstraint().getName(), uc.getMessage());
+				}
 			}
 		}
 		else {
@@ -272,4 +383,61 @@ public class SimpleEvlExecutor implements EvlExecutor {
 		}
 	}
 
+	@Override
+	public void writeUnsatisfied(Collection<UnsatisfiedConstraint> unsatisfiedConstraints,
+		ValidationReportWriter reportWriter) throws IOException {
+		reportWriter.writeAll(unsatisfiedConstraints);
+	}
+
+	/**
+	 * Set a report writer to stream the unsatisfied constraints as they are found during
+	 * execution. The report is started before the constraints are evaluated and ended after,
+	 * but the writer is not closed. Streaming requires a module that extends {@link EvlModule}.
+	 *
+	 * @param reportWriter 			the report writer, null to disable streaming
+	 */
+	public void setReportWriter(ValidationReportWriter reportWriter) {
+		this.reportWriter = reportWriter;
+	}
+
+	/**
+	 * Set a cache for the validation results. If the script, parameters, options and models are
+	 * the same as those of a cached validation, the cached results are returned and the module
+	 * is not executed. In that case {@link #getUnsatisfiedConstraints()} will be empty.
+	 *
+	 * @param resultCache 			the result cache, null to disable caching
+	 * @see EvlResultCache
+	 */
+	public void setResultCache(EvlResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Set a cost model to schedule the evaluation of the constraints. When using a parallel
+	 * module, the historical cost of each constraint is used to evaluate the most expensive
+	 * work first, and the work of hot contexts is split per constraint. The measured cost of
+	 * each constraint is recorded in the model, which can be saved for later executions.
+	 * Cost scheduling requires a module that extends {@link EvlModule}.
+	 *
+	 * @param costModel 			the cost model, null to disable cost scheduling
+	 * @see RuleCostModel#load(java.nio.file.Path)
+	 */
+	public void setCostModel(RuleCostModel costModel) {
+		this.costModel = costModel;
+	}
+
+	/**
+	 * Get the width needed to print the names of all the constraints in the script, e.g. to
+	 * create a {@link TextReportWriter}.
+	 *
+	 * @return the length of the longest constraint name
+	 */
+	public int getMaxConstraintNameLength() {
+		int width = 0;
+		for (Constraint c : module.getConstraints()) {
+			width = Math.max(width, c.getName().length());
+		}
+		return width;
+	}
+
 }
@@ -0,0 +1,89 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Function;
+
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+
+/**
+ * A report writer that uses the human readable format of
+ * {@link EvlExecutor#printUnsatisfied(java.util.Collection)}. Since results are written as they
+ * arrive, constraints and critiques are not grouped, they are distinguished by their prefix
+ * symbol. The width of the name column is fixed at construction, e.g. to the length of the
+ * longest constraint name in the script.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class TextReportWriter extends ChannelReportWriter {
+
+	private static final String NL = System.lineSeparator();
+
+	private final int nameWidth;
+
+	/**
+	 * Instantiates a new text report writer.
+	 *
+	 * @param channel 				the channel to write to
+	 * @param nameWidth 			the width of the constraint name column
+	 */
+	public TextReportWriter(WritableByteChannel channel, int nameWidth) {
+		this(channel, nameWidth, DEFAULT_BUFFER_SIZE, String::valueOf);
+	}
+
+	/**
+	 * Instantiates a new text report writer.
+	 *
+	 * @param channel 				the channel to write to
+	 * @param nameWidth 			the width of the constraint name column
+	 * @param bufferSize 			the size of the buffer, in bytes
+	 * @param elementIdentifier 	the function used to identify the elements in the report
+	 */
+	public TextReportWriter(WritableByteChannel channel, int nameWidth, int bufferSize,
+		Function<Object, String> elementIdentifier) {
+		super(channel, bufferSize, elementIdentifier);
+		this.nameWidth = Math.max(1, nameWidth);
+	}
+
+	@Override
+	protected String header() {
+		return "";
+	}
+
+	@Override
+	protected String entry(UnsatisfiedConstraint uc, long index) {
+		String line = String.format("%s %-" + nameWidth + "s %s%s",
+				uc.getConstraint().isCritique() ? "\u16B9" : "\u16D6",
+				uc.getConstraint().getName(),
+				uc.getMessage(),
+				NL);
+		return index == 0 ? section("Unsatisfied Contraints") + line : line;
+	}
+
+	@Override
+	protected String footer(long total) {
+		if (total == 0) {
+			return section("All constraints have been satisfied");
+		}
+		return division("Unsatisfied Contraints") + NL
+				+ String.format("%d unsatisfied constraint(s)%s", total, NL);
+	}
+
+	private static String section(String msg) {
+		String division = division(msg);
+		return NL + division + NL + msg + NL + division + NL;
+	}
+
+	private static String division(String msg) {
+		return new String(new char[msg.length()]).replace("\0", "=");
+	}
+
+}
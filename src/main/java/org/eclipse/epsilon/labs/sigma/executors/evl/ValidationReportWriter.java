@@ -0,0 +1,68 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+import org.eclipse.epsilon.evl.execute.UnsatisfiedConstraint;
+
+/**
+ * The ValidationReportWriter API allows unsatisfied constraints to be written one at a time, so
+ * that validation results can be streamed as they are found (see
+ * {@link SimpleEvlExecutor#setReportWriter(ValidationReportWriter)}) or written after execution
+ * (see {@link EvlExecutor#writeUnsatisfied(Collection, ValidationReportWriter)}) without keeping
+ * additional copies of the results.
+ * <p>
+ * Implementations must be thread safe, as unsatisfied constraints can be reported from several
+ * threads when using a parallel module.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public interface ValidationReportWriter extends Closeable {
+
+	/**
+	 * Start the report. Must be invoked before any unsatisfied constraint is written.
+	 *
+	 * @throws IOException if there is an error writing the report
+	 */
+	void begin() throws IOException;
+
+	/**
+	 * Write an unsatisfied constraint to the report.
+	 *
+	 * @param unsatisfiedConstraint the unsatisfied constraint
+	 * @throws IOException if there is an error writing the report
+	 */
+	void write(UnsatisfiedConstraint unsatisfiedConstraint) throws IOException;
+
+	/**
+	 * Finish the report and flush any buffered output. The underlying output is not closed.
+	 *
+	 * @throws IOException if there is an error writing the report
+	 */
+	void end() throws IOException;
+
+	/**
+	 * Write a complete report for the given unsatisfied constraints.
+	 *
+	 * @param unsatisfiedConstraints the unsatisfied constraints
+	 * @throws IOException if there is an error writing the report
+	 */
+	default void writeAll(Collection<UnsatisfiedConstraint> unsatisfiedConstraints) throws IOException {
+		begin();
+		for (UnsatisfiedConstraint uc : unsatisfiedConstraints) {
+			write(uc);
+		}
+		end();
+	}
+
+}
@@ -0,0 +1,48 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.evl;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A ValidationResultStore keeps validation results by key. Stores are expected to bound their
+ * size and evict old entries as needed, so a result that was put might no longer be available.
+ * Implementations must be thread safe.
+ *
+ * @see EvlResultCache
+ * @author Horacio Hoyos Rodriguez
+ */
+public interface ValidationResultStore {
+
+	/**
+	 * Get the results stored for the key.
+	 *
+	 * @param key 					the key
+	 * @return the results, or an empty Optional if there are no results for the key
+	 */
+	Optional<List<CachedUnsatisfiedConstraint>> get(String key);
+
+	/**
+	 * Store the results for the key.
+	 *
+	 * @param key 					the key
+	 * @param results 				the results
+	 */
+	void put(String key, List<CachedUnsatisfiedConstraint> results);
+
+	/**
+	 * Remove the results for the key, if any.
+	 *
+	 * @param key 					the key
+	 */
+	void remove(String key);
+
+}
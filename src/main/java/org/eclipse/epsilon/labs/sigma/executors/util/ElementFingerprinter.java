@@ -0,0 +1,36 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.util;
+
+import java.util.Optional;
+
+/**
+ * An ElementFingerprinter computes a fingerprint of a model element, such that two versions of
+ * an element with the same fingerprint can be considered to have the same contents. Fingerprints
+ * are used to detect which elements changed between executions.
+ * <p>
+ * The fingerprint should cover all the features of the element that are used by the script,
+ * e.g. the attributes of the element and the ids of the elements it references.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@FunctionalInterface
+public interface ElementFingerprinter {
+
+	/**
+	 * Compute the fingerprint of the element.
+	 *
+	 * @param element 				the element
+	 * @return the fingerprint, or an empty Optional if the element can not be fingerprinted (in
+	 * 								which case it is always considered changed)
+	 */
+	Optional<String> fingerprint(Object element);
+
+}
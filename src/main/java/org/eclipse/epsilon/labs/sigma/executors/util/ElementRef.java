@@ -0,0 +1,101 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.util;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import org.eclipse.epsilon.eol.models.IModel;
+import org.eclipse.epsilon.eol.models.ModelRepository;
+
+/**
+ * A model independent reference to a model element, made of the name of the model that owns the
+ * element and the element's id. References can be persisted and resolved in later executions,
+ * as long as the models assign stable ids to their elements.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class ElementRef {
+
+	private final String modelName;
+	private final String elementId;
+
+	/**
+	 * Instantiates a new element reference.
+	 *
+	 * @param modelName 			the name of the model that owns the element
+	 * @param elementId 			the element id
+	 */
+	public ElementRef(String modelName, String elementId) {
+		this.modelName = modelName;
+		this.elementId = elementId;
+	}
+
+	/**
+	 * Create a reference to the element, using the model that owns it in the repository.
+	 *
+	 * @param element 				the element
+	 * @param repository 			the model repository
+	 * @return the reference, empty if the element is not owned by a model or has no id
+	 */
+	public static Optional<ElementRef> of(Object element, ModelRepository repository) {
+		IModel model = repository.getOwningModel(element);
+		if (model == null) {
+			return Optional.empty();
+		}
+		String id = model.getElementId(element);
+		return id == null ? Optional.empty() : Optional.of(new ElementRef(model.getName(), id));
+	}
+
+	/**
+	 * Find the referenced element in the repository.
+	 *
+	 * @param repository 			the model repository
+	 * @return the element, empty if the model or the element no longer exist
+	 */
+	public Optional<Object> resolve(ModelRepository repository) {
+		if (modelName == null || elementId == null) {
+			return Optional.empty();
+		}
+		IModel model = repository.getModelByNameSafe(modelName);
+		return model == null ? Optional.empty() : Optional.ofNullable(model.getElementById(elementId));
+	}
+
+	public String getModelName() {
+		return modelName;
+	}
+
+	public String getElementId() {
+		return elementId;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(modelName, elementId);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ElementRef)) {
+			return false;
+		}
+		ElementRef other = (ElementRef) obj;
+		return Objects.equals(modelName, other.modelName) && Objects.equals(elementId, other.elementId);
+	}
+
+	@Override
+	public String toString() {
+		return modelName + "#" + elementId;
+	}
+
+}
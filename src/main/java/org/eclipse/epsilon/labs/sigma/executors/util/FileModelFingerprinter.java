@@ -0,0 +1,58 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.epsilon.eol.models.IModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A model fingerprinter that hashes the file each model was loaded from. The files are provided
+ * by model name. Models without a file can not be fingerprinted.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class FileModelFingerprinter implements ModelFingerprinter {
+
+	private static final Logger logger = LoggerFactory.getLogger(FileModelFingerprinter.class);
+
+	private final Map<String, Path> modelFiles;
+
+	/**
+	 * Instantiates a new file model fingerprinter.
+	 *
+	 * @param modelFiles 			the files of the models, by model name
+	 */
+	public FileModelFingerprinter(Map<String, Path> modelFiles) {
+		this.modelFiles = Collections.unmodifiableMap(new HashMap<>(modelFiles));
+	}
+
+	@Override
+	public Optional<String> fingerprint(IModel model) {
+		Path file = modelFiles.get(model.getName());
+		if (file == null) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(HashUtil.hash(file));
+		} catch (IOException e) {
+			logger.warn("Unable to fingerprint model {} from file {}", model.getName(), file, e);
+			return Optional.empty();
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.epsilon.common.module.IModule;
+import org.eclipse.epsilon.eol.IEolModule;
+import org.eclipse.epsilon.eol.dom.Import;
+
+/**
+ * The Hash util provides utility methods for computing content hashes (SHA-256) of strings,
+ * files and Epsilon modules.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class HashUtil {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private HashUtil() { }
+
+	/**
+	 * Create a new SHA-256 message digest.
+	 *
+	 * @return the message digest
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Update the digest with the UTF-8 bytes of the string, followed by a separator so that
+	 * consecutive strings can not be confused.
+	 *
+	 * @param digest 				the digest
+	 * @param value 				the value
+	 * @return the digest
+	 */
+	public static MessageDigest update(MessageDigest digest, String value) {
+		digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		return digest;
+	}
+
+	/**
+	 * Update the digest with the contents of the file.
+	 *
+	 * @param digest 				the digest
+	 * @param file 					the file
+	 * @return the digest
+	 * @throws IOException if the file can not be read
+	 */
+	public static MessageDigest update(MessageDigest digest, Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		return digest;
+	}
+
+	/**
+	 * Compute the SHA-256 hash of the string.
+	 *
+	 * @param value 				the value
+	 * @return the hex encoded hash
+	 */
+	public static String hash(String value) {
+		return toHex(update(newDigest(), value).digest());
+	}
+
+	/**
+	 * Compute the SHA-256 hash of the file contents.
+	 *
+	 * @param file 					the file
+	 * @return the hex encoded hash
+	 * @throws IOException if the file can not be read
+	 */
+	public static String hash(Path file) throws IOException {
+		return toHex(update(newDigest(), file).digest());
+	}
+
+	/**
+	 * Compute the SHA-256 hash of the source of a parsed module and of the modules it imports,
+	 * recursively, so that a change to any of the imported modules changes the hash.
+	 *
+	 * @param module 				the parsed module
+	 * @param code 					the code of the module, or null if it was parsed from a file
+	 * @return the hex encoded hash, or null if the code is null and the module has no source
+	 * @throws IOException if the source of a module can not be read
+	 */
+	public static String hash(IModule module, String code) throws IOException {
+		if (code == null && module.getSourceUri() == null) {
+			return null;
+		}
+		MessageDigest digest = newDigest();
+		if (code != null) {
+			update(digest, code);
+		}
+		else {
+			update(digest, module.getSourceUri());
+		}
+		Set<URI> visited = new HashSet<>();
+		if (module.getSourceUri() != null) {
+			visited.add(module.getSourceUri());
+		}
+		updateImports(digest, module, visited);
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Hex encode the bytes.
+	 *
+	 * @param bytes 				the bytes
+	 * @return the hex string
+	 */
+	public static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	private static void updateImports(MessageDigest digest, IModule module, Set<URI> visited) throws IOException {
+		if (!(module instanceof IEolModule)) {
+			return;
+		}
+		for (Import i : ((IEolModule) module).getImports()) {
+			IModule imported = i.getImportedModule();
+			if (imported == null || imported.getSourceUri() == null) {
+				// Unresolved imports are reported as parse problems
+				continue;
+			}
+			URI uri = imported.getSourceUri();
+			update(digest, uri.toString());
+			if (visited.add(uri)) {
+				update(digest, uri);
+				updateImports(digest, imported, visited);
+			}
+		}
+	}
+
+	private static void update(MessageDigest digest, URI source) throws IOException {
+		if (source == null) {
+			return;
+		}
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = source.toURL().openStream()) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		digest.update((byte) 0);
+	}
+}
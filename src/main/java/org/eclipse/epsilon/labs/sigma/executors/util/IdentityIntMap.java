@@ -0,0 +1,121 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.util;
+
+/**
+ * An open addressing map, with linear probing, from objects (compared by identity) to
+ * non-negative ints. Keys and values are kept in two arrays, so an entry uses two array slots
+ * instead of an entry object. The map is not thread safe.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public final class IdentityIntMap {
+
+	/** The value returned for keys that are not in the map. */
+	public static final int ABSENT = -1;
+
+	private Object[] keys;
+	private int[] values;
+	private int size;
+
+	/**
+	 * Instantiates a new identity int map.
+	 */
+	public IdentityIntMap() {
+		this(16);
+	}
+
+	/**
+	 * Instantiates a new identity int map.
+	 *
+	 * @param expectedSize 			the expected number of entries
+	 */
+	public IdentityIntMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+		keys = new Object[capacity];
+		values = new int[capacity];
+	}
+
+	/**
+	 * Associate the value with the key.
+	 *
+	 * @param key 					the key, not null
+	 * @param value 				the value
+	 * @return the previous value, or {@link #ABSENT}
+	 */
+	public int put(Object key, int value) {
+		if ((size + 1) * 2 > keys.length) {
+			resize();
+		}
+		int i = slot(key, keys.length);
+		while (keys[i] != null) {
+			if (keys[i] == key) {
+				int previous = values[i];
+				values[i] = value;
+				return previous;
+			}
+			i = (i + 1) & (keys.length - 1);
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		return ABSENT;
+	}
+
+	/**
+	 * Get the value associated with the key.
+	 *
+	 * @param key 					the key
+	 * @return the value, or {@link #ABSENT}
+	 */
+	public int get(Object key) {
+		Object[] k = keys;
+		int i = slot(key, k.length);
+		while (k[i] != null) {
+			if (k[i] == key) {
+				return values[i];
+			}
+			i = (i + 1) & (k.length - 1);
+		}
+		return ABSENT;
+	}
+
+	/**
+	 * The number of entries.
+	 *
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void resize() {
+		Object[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new Object[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != null) {
+				int i = slot(oldKeys[j], keys.length);
+				while (keys[i] != null) {
+					i = (i + 1) & (keys.length - 1);
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int slot(Object key, int length) {
+		int h = System.identityHashCode(key) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (length - 1);
+	}
+
+}
@@ -0,0 +1,35 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.util;
+
+import java.util.Optional;
+
+import org.eclipse.epsilon.eol.models.IModel;
+
+/**
+ * A ModelFingerprinter computes a fingerprint of the contents of a model, such that two models
+ * with the same fingerprint can be considered to have the same contents. Fingerprints are used
+ * to decide if cached execution results can be reused.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@FunctionalInterface
+public interface ModelFingerprinter {
+
+	/**
+	 * Compute the fingerprint of the model.
+	 *
+	 * @param model 				the model
+	 * @return the fingerprint, or an empty Optional if the model can not be fingerprinted (in
+	 * 								which case results should not be cached)
+	 */
+	Optional<String> fingerprint(IModel model);
+
+}
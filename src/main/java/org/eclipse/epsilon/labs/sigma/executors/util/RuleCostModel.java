@@ -0,0 +1,167 @@
+/*********************************************************************
+* Copyright (c) 2019 The University of York.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+**********************************************************************/
+package org.eclipse.epsilon.labs.sigma.executors.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The RuleCostModel keeps the historical execution time of rules, so that the work of later
+ * executions can be scheduled according to its expected cost. Costs can be recorded from an
+ * {@link ExecutionTimeData} (i.e. from the module's {@link org.eclipse.epsilon.erl.execute.RuleProfiler
+ * RuleProfiler}) or directly by an executor, and saved and loaded between runs.
+ * <p>
+ * For each rule the model stores the total execution time and, if known, the number of times
+ * the rule was invoked. When the number of invocations is not known (e.g. when recorded from
+ * profiling data) the per invocation cost is estimated assuming the rule was invoked once per
+ * element.
+ * <p>
+ * New measurements are blended with the previous ones: the previous totals are halved before
+ * adding the new ones, so the cost per invocation is an exponential moving average weighted by
+ * the number of invocations, and a run that only invoked a rule a few times (e.g. a limited
+ * run) barely changes its cost. If only one of the measurements has a known number of
+ * invocations, the new measurement replaces the previous one.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RuleCostModel {
+
+	/** The weight of the previous measurements when a new one is recorded. */
+	private static final double HISTORY_WEIGHT = 0.5;
+
+	private final Map<String, long[]> costs = new ConcurrentHashMap<>();
+
+	/**
+	 * Load a cost model from a file previously written with {@link #save(Path)}. If the file
+	 * does not exist, an empty model is returned.
+	 *
+	 * @param file 					the file
+	 * @return the cost model
+	 * @throws IOException if the file can not be read
+	 */
+	public static RuleCostModel load(Path file) throws IOException {
+		RuleCostModel model = new RuleCostModel();
+		if (!Files.exists(file)) {
+			return model;
+		}
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		for (String rule : properties.stringPropertyNames()) {
+			String[] values = properties.getProperty(rule).split(",");
+			try {
+				model.record(rule, Long.parseLong(values[0].trim()),
+						values.length > 1 ? Long.parseLong(values[1].trim()) : 0);
+			}
+			catch (NumberFormatException e) {
+				// Ignore malformed entries, the rule will be profiled again
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * Save the cost model to a file. The file is replaced atomically, if supported by the file
+	 * system.
+	 *
+	 * @param file 					the file
+	 * @throws IOException if the file can not be written
+	 */
+	public void save(Path file) throws IOException {
+		Properties properties = new Properties();
+		costs.forEach((rule, cost) -> properties.setProperty(rule, cost[0] + "," + cost[1]));
+		Path parent = file.toAbsolutePath().getParent();
+		Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			properties.store(writer, "Rule execution times: total nanoseconds, invocations");
+		}
+		try {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Record the execution time of a rule, blending it with the previous measurements.
+	 *
+	 * @param rule 					the name of the rule
+	 * @param nanos 				the total execution time, in nanoseconds
+	 * @param invocations 			the number of times the rule was invoked, 0 if not known
+	 */
+	public void record(String rule, long nanos, long invocations) {
+		costs.merge(rule, new long[] {nanos, invocations}, RuleCostModel::blend);
+	}
+
+	/**
+	 * Record the execution times of the rules profiled in the execution time data.
+	 *
+	 * @param timeData 				the execution time data
+	 */
+	public void record(ExecutionTimeData timeData) {
+		Iterator<Map.Entry<String, Duration>> it = timeData.getRulesDurations();
+		while (it.hasNext()) {
+			Map.Entry<String, Duration> entry = it.next();
+			record(entry.getKey(), entry.getValue().toNanos(), 0);
+		}
+	}
+
+	/**
+	 * Estimate the cost of one invocation of a rule.
+	 *
+	 * @param rule 					the name of the rule
+	 * @param elements 				the number of elements the rule will be invoked on, used if the
+	 * 								number of recorded invocations is not known
+	 * @return the estimated cost in nanoseconds, empty if there is no data for the rule
+	 */
+	public OptionalDouble estimate(String rule, int elements) {
+		long[] cost = costs.get(rule);
+		if (cost == null) {
+			return OptionalDouble.empty();
+		}
+		long invocations = cost[1] > 0 ? cost[1] : Math.max(1, elements);
+		return OptionalDouble.of((double) cost[0] / invocations);
+	}
+
+	/**
+	 * Checks if the model has no data.
+	 *
+	 * @return true, if empty
+	 */
+	public boolean isEmpty() {
+		return costs.isEmpty();
+	}
+
+	private static long[] blend(long[] previous, long[] latest) {
+		if ((previous[1] > 0) != (latest[1] > 0)) {
+			return latest;
+		}
+		if (latest[1] > 0) {
+			return new long[] {Math.round(previous[0] * HISTORY_WEIGHT) + latest[0],
+					Math.round(previous[1] * HISTORY_WEIGHT) + latest[1]};
+		}
+		// Without invocations the totals are averaged, as they are estimated per element
+		return new long[] {Math.round(previous[0] * HISTORY_WEIGHT + latest[0] * (1 - HISTORY_WEIGHT)), 0};
+	}
+
+}